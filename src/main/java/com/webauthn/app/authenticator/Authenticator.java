@@ -4,11 +4,13 @@ import java.util.Optional;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
-import jakarta.persistence.Lob;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 
 import com.webauthn.app.user.AppUser;
 import com.yubico.webauthn.RegistrationResult;
@@ -20,6 +22,8 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_authenticator_credential_id", columnNames = "credentialId"))
+@EntityListeners(AuthenticatorCacheListener.class)
 @Getter
 @NoArgsConstructor
 public class Authenticator {
@@ -31,19 +35,18 @@ public class Authenticator {
     @Column
     private String name;
 
-    @Lob
-    @Column(nullable = false)
+    // WebAuthn 規範 credential id 最長 1023 bytes
+    @Column(nullable = false, length = 1023)
     private ByteArray credentialId;
 
-    @Lob
-    @Column(nullable = false)
+    // COSE 公鑰：EC2 / EdDSA 約 100 bytes，RSA 4096 約 550 bytes
+    @Column(nullable = false, length = 1024)
     private ByteArray publicKey;
 
     @Column(nullable = false)
     private Long count;
 
-    @Lob
-    @Column(nullable = true)
+    @Column(nullable = true, length = 16)
     private ByteArray aaguid;
 
     @ManyToOne
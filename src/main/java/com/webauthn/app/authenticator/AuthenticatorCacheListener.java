@@ -0,0 +1,42 @@
+package com.webauthn.app.authenticator;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+import com.webauthn.app.infrastructure.cache.RegisteredCredentialCache;
+import com.yubico.webauthn.data.ByteArray;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Authenticator 異動時讓 RegisteredCredentialCache 對應的 credentialId 失效
+ * 1.flush 當下先失效一次
+ * 2.交易結束後再失效一次，避免 commit 前其他 thread 讀到舊資料又放回快取
+ */
+@Component
+public class AuthenticatorCacheListener {
+    private final RegisteredCredentialCache credentialCache;
+
+    public AuthenticatorCacheListener(RegisteredCredentialCache credentialCache) {
+        this.credentialCache = credentialCache;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Authenticator authenticator) {
+        ByteArray credentialId = authenticator.getCredentialId();
+        credentialCache.invalidate(credentialId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    credentialCache.invalidate(credentialId);
+                }
+            });
+        }
+    }
+}
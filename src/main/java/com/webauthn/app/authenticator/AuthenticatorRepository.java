@@ -6,7 +6,9 @@ import java.util.Optional;
 import com.webauthn.app.user.AppUser;
 import com.yubico.webauthn.data.ByteArray;
 
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -14,4 +16,17 @@ public interface AuthenticatorRepository extends CrudRepository<Authenticator, L
     Optional<Authenticator> findByCredentialId(ByteArray credentialId);
     List<Authenticator> findAllByUser (AppUser user);
     List<Authenticator> findAllByCredentialId(ByteArray credentialId);
+
+    /**
+     * 建立註冊 excludeCredentials / 登入 allowCredentials 用，只取 credentialId
+     */
+    @Query("select a.credentialId from Authenticator a join a.user u where u.username = :username")
+    List<ByteArray> findCredentialIdsByUsername(@Param("username") String username);
+
+    /**
+     * lookup / lookupAll 用，一次 join 取出驗證所需欄位
+     */
+    @Query("select new com.webauthn.app.authenticator.CredentialProjection(a.credentialId, a.publicKey, a.count, u.handle) "
+            + "from Authenticator a join a.user u where a.credentialId = :credentialId")
+    List<CredentialProjection> findCredentialsByCredentialId(@Param("credentialId") ByteArray credentialId);
 }
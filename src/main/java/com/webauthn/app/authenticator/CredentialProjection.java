@@ -0,0 +1,28 @@
+package com.webauthn.app.authenticator;
+
+import com.yubico.webauthn.RegisteredCredential;
+import com.yubico.webauthn.data.ByteArray;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 登入驗證只需要的欄位，由 AuthenticatorRepository 以單一 join 查詢取得，不載入 Authenticator / AppUser entity
+ */
+@Getter
+@AllArgsConstructor
+public class CredentialProjection {
+    private final ByteArray credentialId;
+    private final ByteArray publicKey;
+    private final Long count;
+    private final ByteArray userHandle;
+
+    public RegisteredCredential toRegisteredCredential() {
+        return RegisteredCredential.builder()
+                .credentialId(credentialId)
+                .userHandle(userHandle)
+                .publicKeyCose(publicKey)
+                .signatureCount(count)
+                .build();
+    }
+}
@@ -0,0 +1,228 @@
+package com.webauthn.app.configuration;
+
+import java.time.Duration;
+
+import com.webauthn.app.infrastructure.retry.RetryPolicy;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * keycloak.yml 中 Keycloak Admin API 的連線設定（角色設定由 DefaultRoleStrategy 讀取）
+ */
+@Configuration
+@ConfigurationProperties(prefix = "keycloak")
+@Getter
+@Setter
+public class KeycloakProperties {
+
+    private String serverUrl;
+    private String realm;
+    private String clientId;
+    private String clientSecret;
+    private Admin admin = new Admin();
+    private Http http = new Http();
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+    private Bulkhead bulkhead = new Bulkhead();
+    private Retry retry = new Retry();
+    /**
+     * finishauth 呼叫 Keycloak 的方式：true 為非阻塞（Mono 串接，不占用 servlet thread），false 為阻塞
+     */
+    private boolean nonBlocking = true;
+    private RoleCache roleCache = new RoleCache();
+    private UserIdCache userIdCache = new UserIdCache();
+    private Outbox outbox = new Outbox();
+    private Bulk bulk = new Bulk();
+
+    @Getter
+    @Setter
+    public static class Admin {
+        private String username;
+        private String password;
+    }
+
+    /**
+     * 呼叫 Keycloak 的連線池與 timeout 設定
+     */
+    @Getter
+    @Setter
+    public static class Http {
+        private int maxConnections = 50;
+        /**
+         * 等待取得連線的請求上限，超過時立即失敗
+         */
+        private int pendingAcquireMaxCount = 200;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(2);
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+        /**
+         * 背景清除閒置 / 過期連線的間隔
+         */
+        private Duration evictionInterval = Duration.ofSeconds(30);
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        /**
+         * 送出請求後等待回應 header 的時間
+         */
+        private Duration responseTimeout = Duration.ofSeconds(5);
+        private Duration readTimeout = Duration.ofSeconds(5);
+        private Duration writeTimeout = Duration.ofSeconds(5);
+        /**
+         * 單次呼叫的上限，含取得連線
+         */
+        private Duration callTimeout = Duration.ofSeconds(10);
+        private boolean keepAlive = true;
+        /**
+         * https 以 ALPN 協商 HTTP/2，http 以 h2c upgrade
+         */
+        private boolean http2 = false;
+    }
+
+    /**
+     * Keycloak 呼叫的 circuit breaker，以最近 window-size 次呼叫計算失敗率與慢呼叫比例
+     */
+    @Getter
+    @Setter
+    public static class CircuitBreaker {
+        private int windowSize = 50;
+        /**
+         * 視窗內至少有幾次呼叫才計算比例
+         */
+        private int minimumCalls = 10;
+        /**
+         * 失敗（5xx、timeout、連線錯誤）比例，百分比
+         */
+        private double failureRateThreshold = 50;
+        private Duration slowCallThreshold = Duration.ofSeconds(3);
+        /**
+         * 超過 slow-call-threshold 的呼叫比例，百分比
+         */
+        private double slowCallRateThreshold = 80;
+        private Duration waitDurationInOpenState = Duration.ofSeconds(30);
+        /**
+         * half-open 時放行的試探呼叫數，全部成功才關閉
+         */
+        private int halfOpenCalls = 3;
+    }
+
+    /**
+     * 同時進行中的 Keycloak 呼叫上限，超過時立即拒絕
+     */
+    @Getter
+    @Setter
+    public static class Bulkhead {
+        private int maxConcurrentCalls = 20;
+    }
+
+    /**
+     * 建立 Keycloak 帳號失敗時的重試（RetryEngine）
+     */
+    @Getter
+    @Setter
+    public static class Retry {
+        /**
+         * 含第一次呼叫
+         */
+        private int maxAttempts = 3;
+        private Duration initialBackoff = Duration.ofSeconds(1);
+        private Duration maxBackoff = Duration.ofSeconds(10);
+        private RetryPolicy.Jitter jitter = RetryPolicy.Jitter.FULL;
+        /**
+         * 從第一次呼叫起算的總時間上限
+         */
+        private Duration maxElapsed = Duration.ofSeconds(15);
+        /**
+         * 全域重試流量上限，正常呼叫數的百分比
+         */
+        private double budgetPercent = 10;
+        /**
+         * 低流量時仍允許的重試次數
+         */
+        private double budgetBurst = 10;
+    }
+
+    /**
+     * realm role representation 快取設定
+     */
+    @Getter
+    @Setter
+    public static class RoleCache {
+        /**
+         * 關閉時每次指派角色都逐一查詢 /roles/{name}
+         */
+        private boolean enabled = true;
+        private Duration ttl = Duration.ofMinutes(10);
+        /**
+         * 背景更新間隔，需小於 ttl，請求才不會遇到過期
+         */
+        private Duration refreshInterval = Duration.ofMinutes(5);
+    }
+
+    /**
+     * username → Keycloak userId 查詢結果快取
+     */
+    @Getter
+    @Setter
+    public static class UserIdCache {
+        private boolean enabled = true;
+        private Duration ttl = Duration.ofMinutes(10);
+        /**
+         * 查無此人的結果保留時間，其他節點建立帳號後最多延遲這麼久才查得到
+         */
+        private Duration negativeTtl = Duration.ofSeconds(30);
+        private int maxEntries = 10000;
+    }
+
+    /**
+     * 非同步建立 Keycloak 帳號（transactional outbox）設定
+     */
+    @Getter
+    @Setter
+    public static class Outbox {
+        /**
+         * 啟用時 finishauth 只寫入 Authenticator 與 outbox 後立即回應，由背景 worker 建立 Keycloak 帳號
+         */
+        private boolean enabled = false;
+        /**
+         * 啟動時建立 keycloak_outbox 表
+         */
+        private boolean initializeSchema = true;
+        /**
+         * 每批取出的筆數
+         */
+        private int batchSize = 50;
+        /**
+         * 同時處理的筆數
+         */
+        private int workers = 8;
+        private Duration pollInterval = Duration.ofSeconds(1);
+        /**
+         * 超過次數後停止重試，狀態改為 PROVISIONING_FAILED
+         */
+        private int maxAttempts = 10;
+        private Duration initialBackoff = Duration.ofSeconds(1);
+        private Duration maxBackoff = Duration.ofMinutes(5);
+        /**
+         * 取出後的鎖定時間，節點中途停止時過期後由其他節點接手
+         */
+        private Duration lockTimeout = Duration.ofMinutes(1);
+    }
+
+    /**
+     * 批次建立 Keycloak 帳號（partial import）設定
+     */
+    @Getter
+    @Setter
+    public static class Bulk {
+        /**
+         * 每次 partial import 的用戶數，同時也是寫回 keycloakUserId 的 JDBC batch 大小
+         */
+        private int chunkSize = 500;
+        /**
+         * 同時進行的 partial import 請求數
+         */
+        private int concurrency = 2;
+    }
+}
@@ -1,5 +1,6 @@
 package com.webauthn.app.configuration;
 
+import java.time.Duration;
 import java.util.Set;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -17,5 +18,148 @@ public class WebAuthProperties {
     private String hostName;
     private String display;
     private Set<String> origin;
+    private Ceremony ceremony = new Ceremony();
+    private CredentialCache credentialCache = new CredentialCache();
+    private SignatureCounter signatureCounter = new SignatureCounter();
+    private UsernameIndex usernameIndex = new UsernameIndex();
+    private IdentityCache identityCache = new IdentityCache();
+    private Reactive reactive = new Reactive();
 
-}
\ No newline at end of file
+    /**
+     * 註冊 / 登入 ceremony 暫存設定
+     */
+    @Getter
+    @Setter
+    public static class Ceremony {
+        /**
+         * ceremony timeout，同時作為暫存 challenge 的 TTL
+         */
+        private Duration timeout = Duration.ofMinutes(5);
+        /**
+         * 暫存 challenge 的最大筆數，超過時淘汰最快到期的資料
+         */
+        private int maxEntries = 100_000;
+        /**
+         * 暫存實作：memory（單機）或 jdbc（多節點共用）
+         */
+        private String store = "memory";
+        private Jdbc jdbc = new Jdbc();
+        private Sealed sealed = new Sealed();
+    }
+
+    @Getter
+    @Setter
+    public static class Jdbc {
+        /**
+         * 啟動時建立 ceremony_state 表
+         */
+        private boolean initializeSchema = true;
+        /**
+         * 每批清除的過期筆數
+         */
+        private int cleanupBatchSize = 500;
+        /**
+         * 清除間隔（ISO-8601，如 PT1M）
+         */
+        private Duration cleanupInterval = Duration.ofMinutes(1);
+    }
+
+    @Getter
+    @Setter
+    public static class Sealed {
+        /**
+         * 啟用無狀態模式：ceremony 狀態加密後交由前端帶回，伺服器不暫存
+         */
+        private boolean enabled = false;
+        /**
+         * 金鑰衍生用 secret（base64，至少 32 bytes），所有節點需一致；未設定時隨機產生（僅限單機）
+         */
+        private String secret;
+        /**
+         * 金鑰輪替週期，不可小於 timeout
+         */
+        private Duration keyRotation = Duration.ofHours(1);
+    }
+
+    /**
+     * 登入時 RegisteredCredential 的快取設定
+     */
+    @Getter
+    @Setter
+    public static class CredentialCache {
+        private boolean enabled = true;
+        /**
+         * 快取存活時間；異動時會立即失效，TTL 只是保險
+         */
+        private Duration ttl = Duration.ofHours(1);
+        private int maxEntries = 100_000;
+    }
+
+    /**
+     * 登入後 signature counter 的延遲寫回設定
+     */
+    @Getter
+    @Setter
+    public static class SignatureCounter {
+        /**
+         * 累積到此筆數即觸發寫回，同時也是 JDBC batch 大小
+         */
+        private int batchSize = 500;
+        /**
+         * 定期寫回間隔（ISO-8601，如 PT1S）
+         */
+        private Duration flushInterval = Duration.ofSeconds(1);
+    }
+
+    /**
+     * 註冊時帳號是否存在的 Bloom filter 設定
+     */
+    @Getter
+    @Setter
+    public static class UsernameIndex {
+        private boolean enabled = true;
+        /**
+         * 預期用戶數，實際用戶數超過時以兩倍重建
+         */
+        private long expectedUsers = 1_000_000;
+        /**
+         * 達預期用戶數時的誤判率
+         */
+        private double falsePositiveProbability = 0.01;
+        /**
+         * 檢查是否需要重建的間隔
+         */
+        private Duration rebuildCheckInterval = Duration.ofMinutes(1);
+    }
+
+    /**
+     * username 與 user handle 雙向對照快取設定
+     */
+    @Getter
+    @Setter
+    public static class IdentityCache {
+        private boolean enabled = true;
+        private Duration ttl = Duration.ofHours(1);
+        private int maxEntries = 100_000;
+        /**
+         * 啟動後預先載入（最多 max-entries 筆）
+         */
+        private boolean preload = false;
+    }
+
+    /**
+     * WebFlux 端點（reactive profile）的阻塞工作設定
+     */
+    @Getter
+    @Setter
+    public static class Reactive {
+        /**
+         * 執行 JPA、ceremony 暫存等阻塞工作的 thread 上限，與 DB 連線池大小一致即可
+         */
+        private int blockingThreads = 10;
+        /**
+         * 等待 thread 的工作上限，超過時請求立即失敗
+         */
+        private int blockingQueueSize = 1000;
+    }
+}
@@ -0,0 +1,22 @@
+package com.webauthn.app.exception;
+
+/**
+ * Keycloak circuit breaker 開啟或 bulkhead 已滿，呼叫未送出即被拒絕
+ */
+public class KeycloakUnavailableException extends RuntimeException {
+    public KeycloakUnavailableException(String message) {
+        super(message);
+    }
+
+    /**
+     * 錯誤常被包成 RuntimeException，往下找 cause
+     */
+    public static boolean isCause(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof KeycloakUnavailableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,25 @@
+package com.webauthn.app.infrastructure.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 快取統計快照
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class CacheStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long putCount;
+    private final long expirationCount;
+    private final long evictionCount;
+    private final int size;
+
+    public double hitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 1.0 : (double) hitCount / total;
+    }
+}
@@ -0,0 +1,281 @@
+package com.webauthn.app.infrastructure.cache;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * 具 TTL 與容量上限的快取
+ * 1.每筆資料各自帶過期時間，讀取時發現過期即視為 miss
+ * 2.過期清理使用 timer wheel：寫入時順手推進指標，只處理到期的 bucket，不掃整個 map
+ *   一般讀寫不需取得 lock，只有推進指標或超過容量時才由單一 thread 處理
+ * 3.超過容量時優先淘汰最快到期的資料
+ * 4.統計 hit / miss / put / expiration / eviction
+ */
+public class ExpiringCache<K, V> {
+    private static final int WHEEL_SIZE = 512;
+
+    private final ConcurrentHashMap<K, Node<K, V>> map = new ConcurrentHashMap<>();
+    @SuppressWarnings("unchecked")
+    private final Queue<Node<K, V>>[] wheel = new Queue[WHEEL_SIZE];
+    private final ReentrantLock sweepLock = new ReentrantLock();
+    private final Duration defaultTtl;
+    private final int maxSize;
+    private final long tickNanos;
+    private final LongSupplier ticker;
+
+    private volatile long cursorTick;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    // wheel 中的節點數（含已被 take / remove 的過期節點）
+    private final LongAdder wheelNodes = new LongAdder();
+    private final long compactThreshold;
+
+    public ExpiringCache(Duration defaultTtl, int maxSize) {
+        this(defaultTtl, maxSize, System::nanoTime);
+    }
+
+    ExpiringCache(Duration defaultTtl, int maxSize, LongSupplier ticker) {
+        if (defaultTtl.isNegative() || defaultTtl.isZero()) {
+            throw new IllegalArgumentException("defaultTtl must be positive");
+        }
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.defaultTtl = defaultTtl;
+        this.maxSize = maxSize;
+        // 預設 TTL 約佔半圈，較長的 TTL 會在輪到時重新排入
+        this.tickNanos = Math.max(defaultTtl.toNanos() / (WHEEL_SIZE / 2), Duration.ofMillis(1).toNanos());
+        this.ticker = ticker;
+        this.compactThreshold = Math.max(2L * maxSize, 1024);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.cursorTick = ticker.getAsLong() / tickNanos;
+    }
+
+    public void put(K key, V value) {
+        put(key, value, defaultTtl);
+    }
+
+    public void put(K key, V value, Duration ttl) {
+        long now = ticker.getAsLong();
+        Node<K, V> node = new Node<>(key, value, now + ttl.toNanos());
+        map.put(key, node);
+        puts.increment();
+        schedule(node);
+        afterWrite(now);
+    }
+
+    /**
+     * 僅在 key 不存在（或已過期）時寫入
+     * @return true 表示寫入成功
+     */
+    public boolean putIfAbsent(K key, V value, Duration ttl) {
+        long now = ticker.getAsLong();
+        Node<K, V> node = new Node<>(key, value, now + ttl.toNanos());
+        Node<K, V> result = map.merge(key, node, (existing, candidate) -> existing.isExpired(now) ? candidate : existing);
+        if (result != node) {
+            return false;
+        }
+        puts.increment();
+        schedule(node);
+        afterWrite(now);
+        return true;
+    }
+
+    public V get(K key) {
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        if (node.isExpired(ticker.getAsLong())) {
+            if (map.remove(key, node)) {
+                expirations.increment();
+            }
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return node.value;
+    }
+
+    /**
+     * 取出並移除，適用於只能使用一次的 challenge
+     */
+    public V take(K key) {
+        Node<K, V> node = map.remove(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        if (node.isExpired(ticker.getAsLong())) {
+            expirations.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return node.value;
+    }
+
+    public void remove(K key) {
+        map.remove(key);
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * 主動推進 timer wheel，清除已到期的資料
+     */
+    public void cleanUp() {
+        sweepLock.lock();
+        try {
+            expire(ticker.getAsLong());
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    /**
+     * wheel 中的節點數（含已失效者），供測試確認 wheel 不會無限增長
+     */
+    long scheduledNodes() {
+        return wheelNodes.sum();
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), puts.sum(), expirations.sum(), evictions.sum(), map.size());
+    }
+
+    private void afterWrite(long now) {
+        boolean overflow = map.size() > maxSize;
+        boolean compactDue = wheelNodes.sum() > compactThreshold;
+        if (!overflow && !compactDue && now / tickNanos <= cursorTick) {
+            return;
+        }
+        if (overflow) {
+            // 超過上限一定要處理，不能因為別的 thread 正在清理就略過
+            sweepLock.lock();
+        } else if (!sweepLock.tryLock()) {
+            return;
+        }
+        try {
+            expire(now);
+            if (compactDue) {
+                purgeStale();
+            }
+            evictOverflow();
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    private void schedule(Node<K, V> node) {
+        long cursor = cursorTick;
+        long tick = Math.max(ceilDiv(node.expiresAt, tickNanos), cursor + 1);
+        // 超過一圈的先放在最遠的 bucket，輪到時再重新排
+        tick = Math.min(tick, cursor + WHEEL_SIZE - 1);
+        wheel[bucketIndex(tick)].add(node);
+        wheelNodes.increment();
+    }
+
+    private void expire(long now) {
+        long nowTick = now / tickNanos;
+        long cursor = cursorTick;
+        // 落後超過一圈時，每個 bucket 處理一次即可
+        long steps = Math.min(nowTick - cursor, WHEEL_SIZE);
+        for (long i = 1; i <= steps; i++) {
+            Queue<Node<K, V>> bucket = wheel[bucketIndex(cursor + i)];
+            int pending = bucket.size();
+            for (int n = 0; n < pending; n++) {
+                Node<K, V> node = bucket.poll();
+                if (node == null) {
+                    break;
+                }
+                wheelNodes.decrement();
+                if (map.get(node.key) != node) {
+                    continue; // 已被覆寫或移除
+                }
+                if (node.isExpired(now)) {
+                    if (map.remove(node.key, node)) {
+                        expirations.increment();
+                    }
+                } else {
+                    cursorTick = cursor + i;
+                    schedule(node);
+                }
+            }
+        }
+        if (nowTick > cursor) {
+            cursorTick = nowTick;
+        }
+    }
+
+    private void evictOverflow() {
+        long cursor = cursorTick;
+        for (int i = 1; i <= WHEEL_SIZE && map.size() > maxSize; i++) {
+            Queue<Node<K, V>> bucket = wheel[bucketIndex(cursor + i)];
+            Node<K, V> node;
+            while (map.size() > maxSize && (node = bucket.poll()) != null) {
+                wheelNodes.decrement();
+                if (map.remove(node.key, node)) {
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * take / remove 不會從 wheel 移除節點，大量短命資料時定期清掉，避免 wheel 無限增長
+     */
+    private void purgeStale() {
+        // 以開始時的節點數為上限，避免一直追著其他 thread 新加入的節點
+        long budget = wheelNodes.sum();
+        for (int i = 0; i < WHEEL_SIZE && budget > 0; i++) {
+            Iterator<Node<K, V>> nodes = wheel[i].iterator();
+            while (nodes.hasNext() && budget-- > 0) {
+                Node<K, V> node = nodes.next();
+                if (map.get(node.key) != node) {
+                    nodes.remove();
+                    wheelNodes.decrement();
+                }
+            }
+        }
+    }
+
+    private static int bucketIndex(long tick) {
+        return (int) Math.floorMod(tick, (long) WHEEL_SIZE);
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+
+    private static final class Node<K, V> {
+        private final K key;
+        private final V value;
+        private final long expiresAt;
+
+        private Node(K key, V value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
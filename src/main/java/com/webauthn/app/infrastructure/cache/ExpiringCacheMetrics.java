@@ -0,0 +1,57 @@
+package com.webauthn.app.infrastructure.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+
+/**
+ * 將 ExpiringCache 的統計綁定到 Micrometer
+ * 除了標準的 cache.gets / cache.puts / cache.evictions / cache.size，另外提供 cache.expirations 與 cache.hit.ratio
+ */
+public class ExpiringCacheMetrics extends CacheMeterBinder<ExpiringCache<?, ?>> {
+    private final ExpiringCache<?, ?> cache;
+
+    public ExpiringCacheMetrics(ExpiringCache<?, ?> cache, String cacheName, Iterable<Tag> tags) {
+        super(cache, cacheName, tags);
+        this.cache = cache;
+    }
+
+    @Override
+    protected Long size() {
+        return (long) cache.size();
+    }
+
+    @Override
+    protected long hitCount() {
+        return cache.stats().getHitCount();
+    }
+
+    @Override
+    protected Long missCount() {
+        return cache.stats().getMissCount();
+    }
+
+    @Override
+    protected Long evictionCount() {
+        return cache.stats().getEvictionCount();
+    }
+
+    @Override
+    protected long putCount() {
+        return cache.stats().getPutCount();
+    }
+
+    @Override
+    protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+        FunctionCounter.builder("cache.expirations", cache, c -> c.stats().getExpirationCount())
+                .tags(getTagsWithCacheName())
+                .description("The number of entries removed because their TTL elapsed")
+                .register(registry);
+        Gauge.builder("cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .tags(getTagsWithCacheName())
+                .description("Hits divided by total lookups since start")
+                .register(registry);
+    }
+}
@@ -0,0 +1,76 @@
+package com.webauthn.app.infrastructure.cache;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.webauthn.app.configuration.WebAuthProperties;
+import com.yubico.webauthn.RegisteredCredential;
+import com.yubico.webauthn.data.ByteArray;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * 登入時 lookup / lookupAll 的 read-through 快取，以 credentialId 為 key
+ * 1.只快取查得到的 credential，不存在的 id 不佔快取，避免被隨機 id 灌爆
+ * 2.Authenticator 新增、更新、刪除時由 AuthenticatorCacheListener 精準失效
+ * 3.載入期間若有失效發生，載入結果不留在快取，避免把舊資料放回去
+ * 4.authn.credential-cache.enabled=false 時直接查 DB
+ */
+@Component
+public class RegisteredCredentialCache implements MeterBinder {
+    private final ExpiringCache<ByteArray, List<RegisteredCredential>> cache;
+    private final boolean enabled;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public RegisteredCredentialCache(WebAuthProperties properties) {
+        WebAuthProperties.CredentialCache config = properties.getCredentialCache();
+        this.cache = new ExpiringCache<>(config.getTtl(), config.getMaxEntries());
+        this.enabled = config.isEnabled();
+    }
+
+    /**
+     * @param loader 快取未命中時從 DB 載入同一 credentialId 的所有 credential
+     */
+    public List<RegisteredCredential> get(ByteArray credentialId, Function<ByteArray, List<RegisteredCredential>> loader) {
+        if (!enabled) {
+            return loader.apply(credentialId);
+        }
+        List<RegisteredCredential> cached = cache.get(credentialId);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = invalidations.get();
+        List<RegisteredCredential> loaded = List.copyOf(loader.apply(credentialId));
+        if (!loaded.isEmpty()) {
+            cache.put(credentialId, loaded);
+            // 先放入再檢查：與 invalidate 的「先遞增再移除」搭配，任何交錯下都不會留下舊資料
+            if (invalidations.get() != generation) {
+                cache.remove(credentialId);
+            }
+        }
+        return loaded;
+    }
+
+    public void invalidate(ByteArray credentialId) {
+        invalidations.incrementAndGet();
+        cache.remove(credentialId);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new ExpiringCacheMetrics(cache, "webauthn.credentials", Tags.empty()).bindTo(registry);
+    }
+}
@@ -0,0 +1,121 @@
+package com.webauthn.app.infrastructure.cache;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.webauthn.app.configuration.WebAuthProperties;
+import com.yubico.webauthn.data.ByteArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * username 與 user handle 的雙向對照快取，供 CredentialRepository callback 使用
+ * 1.兩者建立後不會變動，只需在刪除用戶時兩個方向一起失效
+ * 2.查不到的用戶回傳 Optional.empty()，不快取
+ * 3.載入期間若有失效發生，載入結果不留在快取
+ * 4.authn.identity-cache.preload=true 時啟動後預先載入
+ */
+@Component
+public class UserIdentityCache implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(UserIdentityCache.class);
+
+    private final ExpiringCache<String, ByteArray> handleByUsername;
+    private final ExpiringCache<ByteArray, String> usernameByHandle;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final boolean preload;
+    private final int maxEntries;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public UserIdentityCache(JdbcTemplate jdbcTemplate, WebAuthProperties properties) {
+        WebAuthProperties.IdentityCache config = properties.getIdentityCache();
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = config.isEnabled();
+        this.preload = config.isPreload();
+        this.maxEntries = config.getMaxEntries();
+        this.handleByUsername = new ExpiringCache<>(config.getTtl(), maxEntries);
+        this.usernameByHandle = new ExpiringCache<>(config.getTtl(), maxEntries);
+    }
+
+    public Optional<ByteArray> getHandle(String username, Function<String, Optional<ByteArray>> loader) {
+        if (!enabled) {
+            return loader.apply(username);
+        }
+        ByteArray cached = handleByUsername.get(username);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long generation = invalidations.get();
+        Optional<ByteArray> loaded = loader.apply(username);
+        loaded.ifPresent(handle -> putIfCurrent(username, handle, generation));
+        return loaded;
+    }
+
+    public Optional<String> getUsername(ByteArray handle, Function<ByteArray, Optional<String>> loader) {
+        if (!enabled) {
+            return loader.apply(handle);
+        }
+        String cached = usernameByHandle.get(handle);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long generation = invalidations.get();
+        Optional<String> loaded = loader.apply(handle);
+        loaded.ifPresent(username -> putIfCurrent(username, handle, generation));
+        return loaded;
+    }
+
+    public void put(String username, ByteArray handle) {
+        if (enabled) {
+            handleByUsername.put(username, handle);
+            usernameByHandle.put(handle, username);
+        }
+    }
+
+    public void invalidate(String username, ByteArray handle) {
+        invalidations.incrementAndGet();
+        handleByUsername.remove(username);
+        usernameByHandle.remove(handle);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void preload() {
+        if (!enabled || !preload) {
+            return;
+        }
+        long generation = invalidations.get();
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement("SELECT username, handle FROM app_user FETCH FIRST ? ROWS ONLY");
+            statement.setInt(1, maxEntries);
+            return statement;
+        }, rs -> {
+            putIfCurrent(rs.getString(1), new ByteArray(rs.getBytes(2)), generation);
+        });
+        log.info("Preloaded {} user identities", handleByUsername.size());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new ExpiringCacheMetrics(handleByUsername, "webauthn.identity.handle-by-username", Tags.empty()).bindTo(registry);
+        new ExpiringCacheMetrics(usernameByHandle, "webauthn.identity.username-by-handle", Tags.empty()).bindTo(registry);
+    }
+
+    // 先放入再檢查，與 invalidate 的「先遞增再移除」搭配，不會留下已刪除用戶的對照
+    private void putIfCurrent(String username, ByteArray handle, long generation) {
+        put(username, handle);
+        if (invalidations.get() != generation) {
+            handleByUsername.remove(username);
+            usernameByHandle.remove(handle);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.webauthn.app.infrastructure.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import com.webauthn.app.configuration.WebAuthProperties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * 註冊時判斷帳號是否已存在的負向索引
+ * 1.啟動時由 app_user 建立 Bloom filter，新增用戶時由 AppUserChangeListener 加入
+ * 2.filter 判定不存在即回傳，不查 DB；可能存在時才查 DB
+ * 3.Bloom filter 無法刪除，刪除累積到一定比例或筆數超過容量時重建
+ * 4.建立完成前一律查 DB
+ */
+@Component
+public class UsernameIndex implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(UsernameIndex.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final long expectedUsers;
+    private final double falsePositiveProbability;
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+
+    private volatile BloomFilter filter;
+    private volatile BloomFilter building;
+    private volatile long capacity;
+    private final AtomicLong insertions = new AtomicLong();
+    private final AtomicLong deletions = new AtomicLong();
+
+    private final LongAdder definitelyFree = new LongAdder();
+    private final LongAdder databaseHits = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    public UsernameIndex(JdbcTemplate jdbcTemplate, WebAuthProperties properties) {
+        WebAuthProperties.UsernameIndex config = properties.getUsernameIndex();
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = config.isEnabled();
+        this.expectedUsers = config.getExpectedUsers();
+        this.falsePositiveProbability = config.getFalsePositiveProbability();
+    }
+
+    /**
+     * @param loader 可能存在時查 DB
+     * @return 不存在時為 null
+     */
+    public <T> T findIfPresent(String username, Function<String, T> loader) {
+        BloomFilter current = filter;
+        if (current == null) {
+            return loader.apply(username);
+        }
+        if (!current.mightContain(username)) {
+            definitelyFree.increment();
+            return null;
+        }
+        T found = loader.apply(username);
+        if (found == null) {
+            falsePositives.increment();
+        } else {
+            databaseHits.increment();
+        }
+        return found;
+    }
+
+    public void added(String username) {
+        BloomFilter current = filter;
+        if (current != null) {
+            current.put(username);
+        }
+        // 重建期間新增的帳號也要放進新的 filter
+        BloomFilter next = building;
+        if (next != null) {
+            next.put(username);
+        }
+        insertions.incrementAndGet();
+    }
+
+    public void removed(String username) {
+        deletions.incrementAndGet();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 刪除超過 1/10 或筆數超過容量時重建，維持誤判率
+     */
+    @Scheduled(fixedDelayString = "${authn.username-index.rebuild-check-interval:PT1M}")
+    public void rebuildIfStale() {
+        if (filter == null) {
+            return;
+        }
+        long inserted = insertions.get();
+        if (deletions.get() * 10 > inserted || inserted > capacity) {
+            rebuild();
+        }
+    }
+
+    public void rebuild() {
+        if (!rebuildLock.tryLock()) {
+            return;
+        }
+        try {
+            Long users = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM app_user", Long.class);
+            long size = Math.max(expectedUsers, users == null ? 0 : users * 2);
+            BloomFilter next = new BloomFilter(size, falsePositiveProbability);
+            building = next;
+            insertions.set(0);
+            deletions.set(0);
+            jdbcTemplate.query("SELECT username FROM app_user", rs -> {
+                next.put(rs.getString(1));
+                insertions.incrementAndGet();
+            });
+            capacity = size;
+            filter = next;
+            building = null;
+            log.info("Username index rebuilt with {} users, {} KiB", insertions.get(), next.memoryBytes() / 1024);
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("webauthn.username.index.lookups", definitelyFree, LongAdder::sum)
+                .tag("result", "definitely_free")
+                .register(registry);
+        FunctionCounter.builder("webauthn.username.index.lookups", databaseHits, LongAdder::sum)
+                .tag("result", "exists")
+                .register(registry);
+        FunctionCounter.builder("webauthn.username.index.lookups", falsePositives, LongAdder::sum)
+                .tag("result", "false_positive")
+                .register(registry);
+        Gauge.builder("webauthn.username.index.false.positive.rate", this, UsernameIndex::observedFalsePositiveRate)
+                .description("Lookups for free usernames that still had to query the database")
+                .register(registry);
+        Gauge.builder("webauthn.username.index.expected.false.positive.rate", this,
+                        index -> index.filter == null ? Double.NaN : index.filter.expectedFalsePositiveProbability())
+                .register(registry);
+        Gauge.builder("webauthn.username.index.memory", this, index -> index.filter == null ? 0 : index.filter.memoryBytes())
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * 實際誤判率：查詢不存在的帳號中，仍需查 DB 的比例
+     */
+    public double observedFalsePositiveRate() {
+        long misses = falsePositives.sum();
+        long free = definitelyFree.sum() + misses;
+        return free == 0 ? 0 : (double) misses / free;
+    }
+}
@@ -1,24 +1,97 @@
 package com.webauthn.app.infrastructure.cache;
 
-import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.webauthn.app.configuration.WebAuthProperties;
+import com.webauthn.app.infrastructure.ceremony.CeremonyStateStore;
+import com.webauthn.app.infrastructure.ceremony.CeremonyTokenSealer;
+import com.webauthn.app.infrastructure.ceremony.CeremonyType;
+import com.webauthn.app.infrastructure.ceremony.RegistrationCeremonyState;
+import com.yubico.internal.util.JacksonCodecs;
+import com.yubico.webauthn.AssertionRequest;
 import org.springframework.stereotype.Component;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
 
+/**
+ * 暫存註冊中的 RegistrationCeremonyState 與登入中的 AssertionRequest
+ * TTL 與 ceremony timeout 一致，放棄的 ceremony 會自動過期，不會無限累積
+ * 1.一般模式：存放在 CeremonyStateStore，多節點時任一節點都能完成 ceremony
+ * 2.無狀態模式（authn.ceremony.sealed.enabled）：加密成 ceremonyToken 交給前端，完成時帶回，伺服器不暫存
+ */
 @Component
 public class WebAuthnRequestCache {
-    private final Map<String, PublicKeyCredentialCreationOptions> cache = new ConcurrentHashMap<>();
+    // toJson() / fromJson() 每次都會建立新的 ObjectMapper，序列化成本遠高於存取本身，這裡共用一個
+    private static final ObjectMapper JSON = JacksonCodecs.json();
 
-    public void put(String username, PublicKeyCredentialCreationOptions options) {
-        cache.put(username, options);
+    private final CeremonyStateStore store;
+    private final CeremonyTokenSealer sealer;
+    private final Duration ttl;
+
+    public WebAuthnRequestCache(CeremonyStateStore store, Optional<CeremonyTokenSealer> sealer, WebAuthProperties properties) {
+        this.store = store;
+        this.sealer = sealer.orElse(null);
+        this.ttl = properties.getCeremony().getTimeout();
+    }
+
+    /**
+     * @return 無狀態模式下的 ceremonyToken，一般模式為 null
+     */
+    public String put(String username, RegistrationCeremonyState state) {
+        return save(CeremonyType.REGISTRATION, username, state.toBytes());
     }
 
-    public PublicKeyCredentialCreationOptions get(String username) {
-        return cache.get(username);
+    /**
+     * @param ceremonyToken 無狀態模式下前端帶回的 token，一般模式忽略
+     */
+    public RegistrationCeremonyState get(String username, String ceremonyToken) {
+        Optional<byte[]> state = sealer != null
+                ? sealer.unseal(CeremonyType.REGISTRATION, username, ceremonyToken)
+                : store.find(CeremonyType.REGISTRATION, username);
+        return state.map(RegistrationCeremonyState::fromBytes).orElse(null);
     }
 
     public void remove(String username) {
-        cache.remove(username);
+        if (sealer == null) {
+            store.remove(CeremonyType.REGISTRATION, username);
+        }
+    }
+
+    /**
+     * @return 無狀態模式下的 ceremonyToken，一般模式為 null
+     */
+    public String putAssertion(String key, AssertionRequest request) {
+        try {
+            return save(CeremonyType.ASSERTION, key, JSON.writeValueAsBytes(request));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialize assertion request", e);
+        }
+    }
+
+    /**
+     * 取出並移除登入 challenge，同一個 challenge 只能驗證一次
+     */
+    public AssertionRequest takeAssertion(String key, String ceremonyToken) {
+        Optional<byte[]> state = sealer != null
+                ? sealer.unseal(CeremonyType.ASSERTION, key, ceremonyToken)
+                : store.take(CeremonyType.ASSERTION, key);
+        return state
+                .map(bytes -> {
+                    try {
+                        return JSON.readValue(bytes, AssertionRequest.class);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Failed to deserialize assertion request", e);
+                    }
+                })
+                .orElse(null);
+    }
+
+    private String save(CeremonyType type, String key, byte[] state) {
+        if (sealer != null) {
+            return sealer.seal(type, key, state, ttl);
+        }
+        store.save(type, key, state, ttl);
+        return null;
     }
 }
@@ -0,0 +1,35 @@
+package com.webauthn.app.infrastructure.ceremony;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Ceremony 暫存狀態 SPI
+ * 註冊 / 登入開始時寫入，完成時取出；實作可為單機記憶體或多節點共用的儲存
+ * 由 authn.ceremony.store 選擇實作（memory / jdbc）
+ */
+public interface CeremonyStateStore {
+
+    /**
+     * 寫入狀態，相同 key 會覆蓋
+     */
+    void save(CeremonyType type, String key, byte[] state, Duration ttl);
+
+    /**
+     * key 不存在或已過期時才寫入，多個節點同時寫入相同 key 只有一個會成功
+     * @return 是否寫入
+     */
+    boolean putIfAbsent(CeremonyType type, String key, byte[] state, Duration ttl);
+
+    /**
+     * 讀取未過期的狀態
+     */
+    Optional<byte[]> find(CeremonyType type, String key);
+
+    /**
+     * 讀取並移除，確保同一份狀態只會被一個節點取得
+     */
+    Optional<byte[]> take(CeremonyType type, String key);
+
+    void remove(CeremonyType type, String key);
+}
@@ -0,0 +1,226 @@
+package com.webauthn.app.infrastructure.ceremony;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Optional;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.webauthn.app.configuration.WebAuthProperties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * 無狀態模式：把 ceremony 狀態加密後交給前端保管，完成時再解回來
+ * 1.AES-256-GCM，AAD 綁定 ceremony 種類與 key（username / requestId），token 不能挪用到別的用戶
+ * 2.金鑰由 secret 依時間 epoch 衍生，定期輪替；只接受目前與前一個 epoch，所有節點設定相同 secret 即可互通
+ * 3.token 內含過期時間；IV 同時作為一次性 nonce，用過即記錄，防止 replay
+ * 4.nonce 記在 CeremonyStateStore（putIfAbsent），store=jdbc 時所有節點共用，同一 token 只能使用一次；
+ *   store=memory 只記在本節點，多節點部署時需搭配 sticky session，與一般模式相同
+ *
+ * token 格式：version(1) | epoch(8) | iv(12) | AES-GCM(expiresAt(8) | payload) + tag(16)
+ */
+@Component
+@ConditionalOnProperty(prefix = "authn.ceremony.sealed", name = "enabled", havingValue = "true")
+public class CeremonyTokenSealer {
+    private static final Logger log = LoggerFactory.getLogger(CeremonyTokenSealer.class);
+    private static final byte VERSION = 1;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    private static final int HEADER_LENGTH = 1 + Long.BYTES + IV_LENGTH;
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final byte[] USED = new byte[0];
+
+    private final SecureRandom random = new SecureRandom();
+    private final byte[] secret;
+    private final long rotationMillis;
+    private final Clock clock;
+    private final CeremonyStateStore usedNonces;
+
+    private volatile EpochKey currentKey;
+
+    @Autowired
+    public CeremonyTokenSealer(WebAuthProperties properties, CeremonyStateStore store) {
+        this(resolveSecret(properties.getCeremony().getSealed().getSecret()),
+                properties.getCeremony().getSealed().getKeyRotation(),
+                properties.getCeremony().getTimeout(),
+                store,
+                Clock.systemUTC());
+        if ("memory".equals(properties.getCeremony().getStore()) && properties.getCeremony().getSealed().getSecret() != null) {
+            log.warn("authn.ceremony.store=memory: used ceremony tokens are only recorded on this node, use store=jdbc when tokens are shared across nodes");
+        }
+    }
+
+    CeremonyTokenSealer(byte[] secret, Duration keyRotation, Duration ttl, CeremonyStateStore usedNonces, Clock clock) {
+        if (keyRotation.compareTo(ttl) < 0) {
+            // 只接受前一個 epoch，輪替週期小於 TTL 會讓尚未過期的 token 解不開
+            throw new IllegalArgumentException("key-rotation must not be shorter than the ceremony timeout");
+        }
+        this.secret = secret;
+        this.rotationMillis = keyRotation.toMillis();
+        this.clock = clock;
+        this.usedNonces = usedNonces;
+    }
+
+    /**
+     * 加密 ceremony 狀態
+     * @return base64url token
+     */
+    public String seal(CeremonyType type, String key, byte[] payload, Duration ttl) {
+        long now = clock.millis();
+        EpochKey epochKey = keyFor(now / rotationMillis);
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH)
+                .put(VERSION)
+                .putLong(epochKey.epoch)
+                .put(iv);
+        byte[] plaintext = ByteBuffer.allocate(Long.BYTES + payload.length)
+                .putLong(now + ttl.toMillis())
+                .put(payload)
+                .array();
+        try {
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.ENCRYPT_MODE, epochKey.key, new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(header.array());
+            cipher.updateAAD(aad(type, key));
+            byte[] ciphertext = cipher.doFinal(plaintext);
+
+            byte[] token = ByteBuffer.allocate(HEADER_LENGTH + ciphertext.length)
+                    .put(header.array())
+                    .put(ciphertext)
+                    .array();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to seal ceremony state", e);
+        }
+    }
+
+    /**
+     * 驗證並解密，成功後 nonce 即作廢
+     * @return 驗證失敗、過期或已使用過時為 empty
+     */
+    public Optional<byte[]> unseal(CeremonyType type, String key, String token) {
+        if (token == null || token.isEmpty()) {
+            return Optional.empty();
+        }
+        byte[] raw;
+        try {
+            raw = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            log.debug("Malformed ceremony token for {}", key);
+            return Optional.empty();
+        }
+        if (raw.length < HEADER_LENGTH + Long.BYTES + TAG_BITS / 8 || raw[0] != VERSION) {
+            return Optional.empty();
+        }
+
+        long now = clock.millis();
+        ByteBuffer buffer = ByteBuffer.wrap(raw);
+        buffer.get();
+        long epoch = buffer.getLong();
+        long currentEpoch = now / rotationMillis;
+        if (epoch != currentEpoch && epoch != currentEpoch - 1) {
+            return Optional.empty();
+        }
+        byte[] iv = new byte[IV_LENGTH];
+        buffer.get(iv);
+
+        byte[] plaintext;
+        try {
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.DECRYPT_MODE, keyFor(epoch).key, new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(raw, 0, HEADER_LENGTH);
+            cipher.updateAAD(aad(type, key));
+            plaintext = cipher.doFinal(raw, HEADER_LENGTH, raw.length - HEADER_LENGTH);
+        } catch (GeneralSecurityException e) {
+            log.debug("Ceremony token authentication failed for {}", key);
+            return Optional.empty();
+        }
+
+        ByteBuffer content = ByteBuffer.wrap(plaintext);
+        long expiresAt = content.getLong();
+        long remaining = expiresAt - now;
+        if (remaining <= 0) {
+            return Optional.empty();
+        }
+        // nonce 只需記到 token 過期為止
+        String nonce = Base64.getUrlEncoder().withoutPadding().encodeToString(iv);
+        if (!usedNonces.putIfAbsent(CeremonyType.SEALED_NONCE, nonce, USED, Duration.ofMillis(remaining))) {
+            log.warn("Replayed ceremony token rejected for {}", key);
+            return Optional.empty();
+        }
+        byte[] payload = new byte[content.remaining()];
+        content.get(payload);
+        return Optional.of(payload);
+    }
+
+    private EpochKey keyFor(long epoch) {
+        EpochKey cached = currentKey;
+        if (cached != null && cached.epoch == epoch) {
+            return cached;
+        }
+        EpochKey derived = new EpochKey(epoch, deriveKey(epoch));
+        if (cached == null || epoch > cached.epoch) {
+            currentKey = derived;
+        }
+        return derived;
+    }
+
+    private SecretKeySpec deriveKey(long epoch) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            mac.update("webauthn-ceremony-key".getBytes(StandardCharsets.US_ASCII));
+            mac.update(ByteBuffer.allocate(Long.BYTES).putLong(epoch).array());
+            return new SecretKeySpec(mac.doFinal(), "AES");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to derive ceremony key", e);
+        }
+    }
+
+    private static byte[] aad(CeremonyType type, String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(1 + keyBytes.length)
+                .put((byte) type.getCode())
+                .put(keyBytes)
+                .array();
+    }
+
+    private static byte[] resolveSecret(String configured) {
+        if (configured == null || configured.isBlank()) {
+            log.warn("authn.ceremony.sealed.secret is not set, using a random secret; tokens will not be accepted by other nodes or after restart");
+            byte[] generated = new byte[32];
+            new SecureRandom().nextBytes(generated);
+            return generated;
+        }
+        byte[] decoded = Base64.getDecoder().decode(configured);
+        if (decoded.length < 32) {
+            throw new IllegalArgumentException("authn.ceremony.sealed.secret must be at least 32 bytes (base64)");
+        }
+        return decoded;
+    }
+
+    private static final class EpochKey {
+        private final long epoch;
+        private final SecretKeySpec key;
+
+        private EpochKey(long epoch, SecretKeySpec key) {
+            this.epoch = epoch;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.webauthn.app.infrastructure.ceremony;
+
+/**
+ * Ceremony 種類，code 用於資料表中的精簡欄位
+ */
+public enum CeremonyType {
+    REGISTRATION(1),
+    ASSERTION(2),
+    /**
+     * 無狀態模式已使用過的 ceremonyToken nonce，payload 為空
+     */
+    SEALED_NONCE(3);
+
+    private final int code;
+
+    CeremonyType(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+}
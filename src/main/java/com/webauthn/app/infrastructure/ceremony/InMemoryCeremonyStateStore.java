@@ -0,0 +1,58 @@
+package com.webauthn.app.infrastructure.ceremony;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+
+import com.webauthn.app.configuration.WebAuthProperties;
+import com.webauthn.app.infrastructure.cache.CacheStats;
+import com.webauthn.app.infrastructure.cache.ExpiringCache;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * 單機記憶體實作（預設），多節點部署時需搭配 sticky session
+ */
+@Component
+@ConditionalOnProperty(prefix = "authn.ceremony", name = "store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryCeremonyStateStore implements CeremonyStateStore {
+    private final Map<CeremonyType, ExpiringCache<String, byte[]>> caches = new EnumMap<>(CeremonyType.class);
+
+    public InMemoryCeremonyStateStore(WebAuthProperties properties) {
+        WebAuthProperties.Ceremony ceremony = properties.getCeremony();
+        for (CeremonyType type : CeremonyType.values()) {
+            caches.put(type, new ExpiringCache<>(ceremony.getTimeout(), ceremony.getMaxEntries()));
+        }
+    }
+
+    @Override
+    public void save(CeremonyType type, String key, byte[] state, Duration ttl) {
+        caches.get(type).put(key, state, ttl);
+    }
+
+    @Override
+    public boolean putIfAbsent(CeremonyType type, String key, byte[] state, Duration ttl) {
+        return caches.get(type).putIfAbsent(key, state, ttl);
+    }
+
+    @Override
+    public Optional<byte[]> find(CeremonyType type, String key) {
+        return Optional.ofNullable(caches.get(type).get(key));
+    }
+
+    @Override
+    public Optional<byte[]> take(CeremonyType type, String key) {
+        return Optional.ofNullable(caches.get(type).take(key));
+    }
+
+    @Override
+    public void remove(CeremonyType type, String key) {
+        caches.get(type).remove(key);
+    }
+
+    public CacheStats stats(CeremonyType type) {
+        return caches.get(type).stats();
+    }
+}
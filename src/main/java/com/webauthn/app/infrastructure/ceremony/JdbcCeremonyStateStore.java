@@ -0,0 +1,139 @@
+package com.webauthn.app.infrastructure.ceremony;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import com.webauthn.app.configuration.WebAuthProperties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * JDBC 實作，多個節點共用同一張 ceremony_state 表
+ * 任一節點開始的 ceremony 都可以在另一個節點完成，不需要 sticky session
+ */
+@Component
+@ConditionalOnProperty(prefix = "authn.ceremony", name = "store", havingValue = "jdbc")
+public class JdbcCeremonyStateStore implements CeremonyStateStore {
+    private static final Logger log = LoggerFactory.getLogger(JdbcCeremonyStateStore.class);
+
+    private static final String UPDATE =
+            "UPDATE ceremony_state SET payload = ?, expires_at = ? WHERE ceremony_type = ? AND state_key = ?";
+    private static final String INSERT =
+            "INSERT INTO ceremony_state (ceremony_type, state_key, payload, expires_at) VALUES (?, ?, ?, ?)";
+    // 主鍵已存在時，只有過期的資料可以被取代
+    private static final String REPLACE_EXPIRED =
+            "UPDATE ceremony_state SET payload = ?, expires_at = ? WHERE ceremony_type = ? AND state_key = ? AND expires_at <= ?";
+    private static final String SELECT =
+            "SELECT payload FROM ceremony_state WHERE ceremony_type = ? AND state_key = ? AND expires_at > ?";
+    private static final String DELETE =
+            "DELETE FROM ceremony_state WHERE ceremony_type = ? AND state_key = ?";
+    // 分批刪除，避免一次鎖住大量資料
+    private static final String DELETE_EXPIRED =
+            "DELETE FROM ceremony_state WHERE expires_at <= ? AND (ceremony_type, state_key) IN ("
+                    + "SELECT ceremony_type, state_key FROM ceremony_state WHERE expires_at <= ? FETCH FIRST ? ROWS ONLY)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Clock clock;
+    private final int cleanupBatchSize;
+
+    @Autowired
+    public JdbcCeremonyStateStore(JdbcTemplate jdbcTemplate, WebAuthProperties properties) {
+        this(jdbcTemplate, Clock.systemUTC(), properties.getCeremony().getJdbc().getCleanupBatchSize());
+        if (properties.getCeremony().getJdbc().isInitializeSchema()) {
+            initializeSchema();
+        }
+    }
+
+    JdbcCeremonyStateStore(JdbcTemplate jdbcTemplate, Clock clock, int cleanupBatchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clock = clock;
+        this.cleanupBatchSize = cleanupBatchSize;
+    }
+
+    /**
+     * 建立 ceremony_state 表（H2 語法，其他資料庫請自行建立）
+     */
+    public void initializeSchema() {
+        new ResourceDatabasePopulator(new ClassPathResource("schema/ceremony-state.sql"))
+                .execute(jdbcTemplate.getDataSource());
+    }
+
+    @Override
+    public void save(CeremonyType type, String key, byte[] state, Duration ttl) {
+        long expiresAt = clock.millis() + ttl.toMillis();
+        if (jdbcTemplate.update(UPDATE, state, expiresAt, type.getCode(), key) > 0) {
+            return;
+        }
+        try {
+            jdbcTemplate.update(INSERT, type.getCode(), key, state, expiresAt);
+        } catch (DuplicateKeyException e) {
+            // 另一個節點同時寫入相同 key，以後寫入者為準
+            jdbcTemplate.update(UPDATE, state, expiresAt, type.getCode(), key);
+        }
+    }
+
+    @Override
+    public boolean putIfAbsent(CeremonyType type, String key, byte[] state, Duration ttl) {
+        long now = clock.millis();
+        long expiresAt = now + ttl.toMillis();
+        try {
+            jdbcTemplate.update(INSERT, type.getCode(), key, state, expiresAt);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return jdbcTemplate.update(REPLACE_EXPIRED, state, expiresAt, type.getCode(), key, now) == 1;
+        }
+    }
+
+    @Override
+    public Optional<byte[]> find(CeremonyType type, String key) {
+        List<byte[]> rows = jdbcTemplate.query(SELECT, (rs, rowNum) -> rs.getBytes(1),
+                type.getCode(), key, clock.millis());
+        return rows.stream().findFirst();
+    }
+
+    @Override
+    public Optional<byte[]> take(CeremonyType type, String key) {
+        Optional<byte[]> state = find(type, key);
+        if (state.isEmpty()) {
+            return state;
+        }
+        // 只有真正刪除到資料的節點才算取得，避免同一個 challenge 被使用兩次
+        return jdbcTemplate.update(DELETE, type.getCode(), key) == 1 ? state : Optional.empty();
+    }
+
+    @Override
+    public void remove(CeremonyType type, String key) {
+        jdbcTemplate.update(DELETE, type.getCode(), key);
+    }
+
+    /**
+     * 批次清除過期資料，靠 expires_at 索引定位，不掃整張表
+     * @return 刪除筆數
+     */
+    @Scheduled(fixedDelayString = "${authn.ceremony.jdbc.cleanup-interval:PT1M}")
+    public int purgeExpired() {
+        long now = clock.millis();
+        int total = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(DELETE_EXPIRED, now, now, cleanupBatchSize);
+            total += deleted;
+        } while (deleted >= cleanupBatchSize);
+
+        if (total > 0) {
+            log.debug("Purged {} expired ceremony states", total);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,82 @@
+package com.webauthn.app.infrastructure.ceremony;
+
+import java.nio.ByteBuffer;
+
+import com.yubico.webauthn.data.ByteArray;
+
+import lombok.Getter;
+
+/**
+ * 註冊 ceremony 的精簡暫存格式
+ * 只保存重建 PublicKeyCredentialCreationOptions 所需的最少資料，其餘由 RP 設定與 user 資料重建
+ *
+ * 格式：version(1) | profileId(1) | challengeLength(1) | challenge | userHandleLength(1) | userHandle
+ * 32 bytes challenge + 32 bytes handle 共 68 bytes
+ */
+@Getter
+public class RegistrationCeremonyState {
+    private static final byte VERSION = 1;
+
+    private final int profileId;
+    private final ByteArray challenge;
+    private final ByteArray userHandle;
+
+    public RegistrationCeremonyState(int profileId, ByteArray challenge, ByteArray userHandle) {
+        if (profileId < 0 || profileId > 0xFF) {
+            throw new IllegalArgumentException("profileId must fit in one byte");
+        }
+        if (challenge.size() > 0xFF || userHandle.size() > 0xFF) {
+            throw new IllegalArgumentException("challenge and user handle must not exceed 255 bytes");
+        }
+        this.profileId = profileId;
+        this.challenge = challenge;
+        this.userHandle = userHandle;
+    }
+
+    public byte[] toBytes() {
+        byte[] challengeBytes = challenge.getBytes();
+        byte[] handleBytes = userHandle.getBytes();
+        return ByteBuffer.allocate(4 + challengeBytes.length + handleBytes.length)
+                .put(VERSION)
+                .put((byte) profileId)
+                .put((byte) challengeBytes.length)
+                .put(challengeBytes)
+                .put((byte) handleBytes.length)
+                .put(handleBytes)
+                .array();
+    }
+
+    /**
+     * @throws IllegalArgumentException 資料為空、長度不符（截斷或多出資料）或版本不支援
+     */
+    public static RegistrationCeremonyState fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length < 4) {
+            throw new IllegalArgumentException("Malformed registration state: too short");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported registration state version: " + version);
+        }
+        int profileId = Byte.toUnsignedInt(buffer.get());
+        byte[] challenge = readField(buffer);
+        byte[] userHandle = readField(buffer);
+        if (buffer.hasRemaining()) {
+            throw new IllegalArgumentException("Malformed registration state: trailing bytes");
+        }
+        return new RegistrationCeremonyState(profileId, new ByteArray(challenge), new ByteArray(userHandle));
+    }
+
+    private static byte[] readField(ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) {
+            throw new IllegalArgumentException("Malformed registration state: truncated");
+        }
+        int length = Byte.toUnsignedInt(buffer.get());
+        if (buffer.remaining() < length) {
+            throw new IllegalArgumentException("Malformed registration state: truncated");
+        }
+        byte[] field = new byte[length];
+        buffer.get(field);
+        return field;
+    }
+}
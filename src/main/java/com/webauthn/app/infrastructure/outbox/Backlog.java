@@ -0,0 +1,19 @@
+package com.webauthn.app.infrastructure.outbox;
+
+import java.time.Duration;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * outbox 積壓狀況
+ */
+@Getter
+@AllArgsConstructor
+public class Backlog {
+    private final long pending;
+    /**
+     * 最舊一筆未完成資料至今的時間
+     */
+    private final Duration lag;
+}
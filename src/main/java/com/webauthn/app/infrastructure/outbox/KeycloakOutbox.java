@@ -0,0 +1,153 @@
+package com.webauthn.app.infrastructure.outbox;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import com.webauthn.app.configuration.KeycloakProperties;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Component;
+
+/**
+ * 待建立 Keycloak 帳號的 outbox（keycloak_outbox 表）
+ * 1.enqueue 必須在寫入 Authenticator 的同一個 transaction 內呼叫
+ * 2.claim 以條件式 UPDATE 鎖定，多個節點同時取出時每筆只會被一個節點處理
+ * 3.失敗時依指數退避重新排程，超過上限後停止（next_attempt_at 設為 NULL）
+ */
+@Component
+@ConditionalOnProperty(prefix = "keycloak.outbox", name = "enabled", havingValue = "true")
+public class KeycloakOutbox {
+    private static final String INSERT =
+            "INSERT INTO keycloak_outbox (user_id, username, attempts, created_at, next_attempt_at) VALUES (?, ?, 0, ?, ?)";
+    private static final String SELECT_DUE =
+            "SELECT user_id, username, attempts, created_at FROM keycloak_outbox"
+                    + " WHERE next_attempt_at <= ? AND (locked_until IS NULL OR locked_until < ?)"
+                    + " ORDER BY next_attempt_at FETCH FIRST ? ROWS ONLY";
+    private static final String CLAIM =
+            "UPDATE keycloak_outbox SET locked_until = ? WHERE user_id = ? AND (locked_until IS NULL OR locked_until < ?)";
+    private static final String DELETE =
+            "DELETE FROM keycloak_outbox WHERE user_id = ?";
+    private static final String RESCHEDULE =
+            "UPDATE keycloak_outbox SET attempts = ?, next_attempt_at = ?, locked_until = NULL, last_error = ? WHERE user_id = ?";
+    private static final String RELEASE =
+            "UPDATE keycloak_outbox SET locked_until = NULL WHERE user_id = ?";
+    private static final String SELECT_ONE =
+            "SELECT attempts, next_attempt_at, last_error FROM keycloak_outbox WHERE user_id = ?";
+    private static final String SELECT_BACKLOG =
+            "SELECT COUNT(*), MIN(created_at) FROM keycloak_outbox WHERE next_attempt_at IS NOT NULL";
+    private static final String COUNT_PARKED =
+            "SELECT COUNT(*) FROM keycloak_outbox WHERE next_attempt_at IS NULL";
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Clock clock;
+    private final KeycloakProperties.Outbox properties;
+
+    @Autowired
+    public KeycloakOutbox(JdbcTemplate jdbcTemplate, KeycloakProperties properties) {
+        this(jdbcTemplate, Clock.systemUTC(), properties.getOutbox());
+        if (this.properties.isInitializeSchema()) {
+            initializeSchema();
+        }
+    }
+
+    KeycloakOutbox(JdbcTemplate jdbcTemplate, Clock clock, KeycloakProperties.Outbox properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clock = clock;
+        this.properties = properties;
+    }
+
+    /**
+     * 建立 keycloak_outbox 表（H2 語法，其他資料庫請自行建立）
+     */
+    public void initializeSchema() {
+        new ResourceDatabasePopulator(new ClassPathResource("schema/keycloak-outbox.sql"))
+                .execute(jdbcTemplate.getDataSource());
+    }
+
+    public void enqueue(long userId, String username) {
+        long now = clock.millis();
+        jdbcTemplate.update(INSERT, userId, username, now, now);
+    }
+
+    /**
+     * 取出到期的資料並鎖定 lock-timeout
+     */
+    public List<OutboxTask> claim(int limit) {
+        long now = clock.millis();
+        long lockedUntil = now + properties.getLockTimeout().toMillis();
+        List<OutboxTask> due = jdbcTemplate.query(SELECT_DUE, (rs, rowNum) -> new OutboxTask(
+                rs.getLong(1), rs.getString(2), rs.getInt(3), rs.getLong(4)), now, now, limit);
+        List<OutboxTask> claimed = new ArrayList<>(due.size());
+        for (OutboxTask task : due) {
+            if (jdbcTemplate.update(CLAIM, lockedUntil, task.getUserId(), now) == 1) {
+                claimed.add(task);
+            }
+        }
+        return claimed;
+    }
+
+    public void complete(long userId) {
+        jdbcTemplate.update(DELETE, userId);
+    }
+
+    /**
+     * 記錄失敗並依指數退避重新排程
+     * @return false 表示已超過重試上限，不再排程
+     */
+    public boolean retryLater(OutboxTask task, String error) {
+        int attempts = task.getAttempts() + 1;
+        Long nextAttemptAt = attempts >= properties.getMaxAttempts() ? null : clock.millis() + backoff(attempts).toMillis();
+        jdbcTemplate.update(RESCHEDULE, attempts, nextAttemptAt, truncate(error), task.getUserId());
+        return nextAttemptAt != null;
+    }
+
+    /**
+     * 解除鎖定，不計入重試次數；用於沒有實際呼叫到 Keycloak 的失敗（circuit breaker / bulkhead 拒絕）
+     */
+    public void release(OutboxTask task) {
+        jdbcTemplate.update(RELEASE, task.getUserId());
+    }
+
+    public Optional<OutboxStatus> find(long userId) {
+        return jdbcTemplate.query(SELECT_ONE, (rs, rowNum) -> new OutboxStatus(
+                        rs.getInt(1), (Long) rs.getObject(2), rs.getString(3)), userId)
+                .stream()
+                .findFirst();
+    }
+
+    /**
+     * @return 尚未完成的筆數與最舊一筆的延遲
+     */
+    public Backlog backlog() {
+        return jdbcTemplate.queryForObject(SELECT_BACKLOG, (rs, rowNum) -> {
+            long oldest = rs.getLong(2);
+            Duration lag = rs.wasNull() ? Duration.ZERO : Duration.ofMillis(Math.max(clock.millis() - oldest, 0));
+            return new Backlog(rs.getLong(1), lag);
+        });
+    }
+
+    public long parked() {
+        Long count = jdbcTemplate.queryForObject(COUNT_PARKED, Long.class);
+        return count == null ? 0 : count;
+    }
+
+    private Duration backoff(int attempts) {
+        Duration delay = properties.getInitialBackoff().multipliedBy(1L << Math.min(attempts - 1, 30));
+        return delay.compareTo(properties.getMaxBackoff()) > 0 ? properties.getMaxBackoff() : delay;
+    }
+
+    private static String truncate(String error) {
+        if (error == null || error.length() <= MAX_ERROR_LENGTH) {
+            return error;
+        }
+        return error.substring(0, MAX_ERROR_LENGTH);
+    }
+}
@@ -0,0 +1,18 @@
+package com.webauthn.app.infrastructure.outbox;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * outbox 中單一用戶的處理狀態
+ */
+@Getter
+@AllArgsConstructor
+public class OutboxStatus {
+    private final int attempts;
+    /**
+     * 下次重試時間（epoch millis），null 表示已停止重試
+     */
+    private final Long nextAttemptAt;
+    private final String lastError;
+}
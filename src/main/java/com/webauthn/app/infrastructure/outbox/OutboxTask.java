@@ -0,0 +1,16 @@
+package com.webauthn.app.infrastructure.outbox;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 一筆待建立 Keycloak 帳號的資料
+ */
+@Getter
+@AllArgsConstructor
+public class OutboxTask {
+    private final long userId;
+    private final String username;
+    private final int attempts;
+    private final long createdAt;
+}
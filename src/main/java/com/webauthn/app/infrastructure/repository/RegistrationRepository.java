@@ -5,8 +5,11 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
-import com.webauthn.app.authenticator.Authenticator;
 import com.webauthn.app.authenticator.AuthenticatorRepository;
+import com.webauthn.app.authenticator.CredentialProjection;
+import com.webauthn.app.infrastructure.cache.RegisteredCredentialCache;
+import com.webauthn.app.infrastructure.cache.UserIdentityCache;
+import com.webauthn.app.infrastructure.cache.UsernameIndex;
 import com.webauthn.app.user.AppUser;
 import com.webauthn.app.user.UserRepository;
 import com.yubico.webauthn.CredentialRepository;
@@ -16,7 +19,9 @@ import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 
 @Repository
@@ -26,60 +31,76 @@ public class RegistrationRepository implements CredentialRepository {
     private UserRepository userRepo;
     @Autowired
     private AuthenticatorRepository authRepository;
+    @Autowired
+    @Getter(AccessLevel.NONE)
+    private RegisteredCredentialCache credentialCache;
+    @Autowired
+    @Getter(AccessLevel.NONE)
+    private SignatureCounterWriter signatureCounterWriter;
+    @Autowired
+    @Getter(AccessLevel.NONE)
+    private UsernameIndex usernameIndex;
+    @Autowired
+    @Getter(AccessLevel.NONE)
+    private UserIdentityCache identityCache;
 
     @Override
     public Set<PublicKeyCredentialDescriptor> getCredentialIdsForUsername(String username) {
-        AppUser user = userRepo.findByUsername(username);
-        List<Authenticator> auth = authRepository.findAllByUser(user);
-        return auth.stream()
-                .map(
-                        credential ->
-                                PublicKeyCredentialDescriptor.builder()
-                                        .id(credential.getCredentialId())
-                                        .build())
+        return authRepository.findCredentialIdsByUsername(username).stream()
+                .map(credentialId -> PublicKeyCredentialDescriptor.builder()
+                        .id(credentialId)
+                        .build())
                 .collect(Collectors.toSet());
     }
 
     @Override
     public Optional<ByteArray> getUserHandleForUsername(String username) {
-        AppUser user = userRepo.findByUsername(username);
         //1.不透明的位元組陣列，不會洩露用戶名等敏感資訊
         //2.認證器(如 YubiKey)內部使用這個 handle 來識別用戶，而非用戶名
-        return Optional.of(user.getHandle());
+        return identityCache.getHandle(username, userRepo::findHandleByUsername);
     }
 
     @Override
     public Optional<String> getUsernameForUserHandle(ByteArray userHandle) {
-        AppUser user = userRepo.findByHandle(userHandle);
-        return Optional.of(user.getUsername());
+        return identityCache.getUsername(userHandle, userRepo::findUsernameByHandle);
     }
 
     @Override
     public Optional<RegisteredCredential> lookup(ByteArray credentialId, ByteArray userHandle) {
-        Optional<Authenticator> auth = authRepository.findByCredentialId(credentialId);
-        return auth.map(
-                credential ->
-                        RegisteredCredential.builder()
-                                .credentialId(credential.getCredentialId())
-                                .userHandle(credential.getUser().getHandle())
-                                .publicKeyCose(credential.getPublicKey())
-                                .signatureCount(credential.getCount())
-                                .build()
-        );
+        return credentialCache.get(credentialId, this::loadCredentials).stream()
+                .filter(credential -> credential.getUserHandle().equals(userHandle))
+                .findFirst()
+                .map(signatureCounterWriter::apply);
     }
 
     @Override
     public Set<RegisteredCredential> lookupAll(ByteArray credentialId) {
-        List<Authenticator> auth = authRepository.findAllByCredentialId(credentialId);
-        return auth.stream()
-                .map(
-                        credential ->
-                                RegisteredCredential.builder()
-                                        .credentialId(credential.getCredentialId())
-                                        .userHandle(credential.getUser().getHandle())
-                                        .publicKeyCose(credential.getPublicKey())
-                                        .signatureCount(credential.getCount())
-                                        .build())
+        return credentialCache.get(credentialId, this::loadCredentials).stream()
+                .map(signatureCounterWriter::apply)
                 .collect(Collectors.toSet());
     }
+
+    /**
+     * 註冊前檢查帳號是否已存在，UsernameIndex 確定不存在時不查 DB
+     * @return 不存在時為 null
+     */
+    public AppUser findExistingUser(String username) {
+        return usernameIndex.findIfPresent(username, userRepo::findByUsername);
+    }
+
+    /**
+     * 刪除用戶與其所有 Authenticator
+     * 逐筆刪除 Authenticator 才會觸發 AuthenticatorCacheListener 讓快取失效
+     */
+    @Transactional
+    public void deleteUser(AppUser user) {
+        authRepository.deleteAll(authRepository.findAllByUser(user));
+        userRepo.delete(user);
+    }
+
+    private List<RegisteredCredential> loadCredentials(ByteArray credentialId) {
+        return authRepository.findCredentialsByCredentialId(credentialId).stream()
+                .map(CredentialProjection::toRegisteredCredential)
+                .collect(Collectors.toList());
+    }
 }
\ No newline at end of file
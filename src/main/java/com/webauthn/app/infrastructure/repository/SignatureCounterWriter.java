@@ -0,0 +1,175 @@
+package com.webauthn.app.infrastructure.repository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import jakarta.annotation.PreDestroy;
+
+import com.webauthn.app.configuration.WebAuthProperties;
+import com.webauthn.app.infrastructure.cache.ExpiringCache;
+import com.webauthn.app.infrastructure.cache.RegisteredCredentialCache;
+import com.yubico.webauthn.RegisteredCredential;
+import com.yubico.webauthn.data.ByteArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * 登入成功後的 signature counter 延遲寫回
+ * 1.同一 credential 多次登入只保留最大值，flush 時合併成一筆 UPDATE，且 SQL 只會往上調
+ * 2.累積筆數達 batch-size 或每隔 flush-interval 以 JDBC batch 寫回，關閉時再寫一次
+ * 3.尚未寫回的值由 lookup 疊加在 DB / 快取的值上，驗證時一定看到最新的 counter
+ * 4.寫回後的值再保留 FLUSHED_RETENTION：flush 使快取失效前就讀到舊值的 lookup，apply 時仍能補上
+ */
+@Component
+public class SignatureCounterWriter implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(SignatureCounterWriter.class);
+
+    private static final String UPDATE = "UPDATE authenticator SET count = ? WHERE credential_id = ? AND count < ?";
+    // 遠大於一次 lookup（含 DB 載入）的時間
+    private static final Duration FLUSHED_RETENTION = Duration.ofMinutes(1);
+
+    private final ConcurrentHashMap<ByteArray, Long> pending = new ConcurrentHashMap<>();
+    // 已寫回的 counter，只在 flushLock 內寫入
+    private final ExpiringCache<ByteArray, Long> flushed;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ExecutorService flushExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "signature-counter-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final JdbcTemplate jdbcTemplate;
+    private final RegisteredCredentialCache credentialCache;
+    private final int batchSize;
+
+    public SignatureCounterWriter(JdbcTemplate jdbcTemplate, RegisteredCredentialCache credentialCache, WebAuthProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.credentialCache = credentialCache;
+        this.batchSize = properties.getSignatureCounter().getBatchSize();
+        this.flushed = new ExpiringCache<>(FLUSHED_RETENTION, properties.getCredentialCache().getMaxEntries());
+    }
+
+    /**
+     * 記錄登入後的 counter；不支援 counter 的 authenticator 固定回傳 0，不需寫回
+     */
+    public void record(ByteArray credentialId, long signatureCount) {
+        if (signatureCount <= 0) {
+            return;
+        }
+        pending.merge(credentialId, signatureCount, Math::max);
+        if (pending.size() >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            flushExecutor.execute(() -> {
+                try {
+                    flush();
+                } finally {
+                    flushScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * 疊加尚未寫回與剛寫回的 counter
+     * 先讀 pending 再讀 flushed，與 flush 的「先放入 flushed 再移除 pending」搭配，任何交錯下至少看到其中之一
+     */
+    public RegisteredCredential apply(RegisteredCredential credential) {
+        ByteArray credentialId = credential.getCredentialId();
+        long count = Math.max(orZero(pending.get(credentialId)), orZero(flushed.get(credentialId)));
+        if (count <= credential.getSignatureCount()) {
+            return credential;
+        }
+        return credential.toBuilder().signatureCount(count).build();
+    }
+
+    /**
+     * 寫回目前累積的 counter
+     * @return 實際更新的筆數
+     */
+    @Scheduled(fixedDelayString = "${authn.signature-counter.flush-interval:PT1S}")
+    public int flush() {
+        flushLock.lock();
+        try {
+            List<Map.Entry<ByteArray, Long>> snapshot = new ArrayList<>(pending.size());
+            pending.forEach((credentialId, count) -> snapshot.add(Map.entry(credentialId, count)));
+            int updated = 0;
+            for (int from = 0; from < snapshot.size(); from += batchSize) {
+                List<Map.Entry<ByteArray, Long>> batch = snapshot.subList(from, Math.min(from + batchSize, snapshot.size()));
+                updated += write(batch);
+                // 先讓快取失效、記入 flushed，再移除 pending（值已被新的登入覆蓋時保留）
+                for (Map.Entry<ByteArray, Long> entry : batch) {
+                    credentialCache.invalidate(entry.getKey());
+                    if (entry.getValue() > orZero(flushed.get(entry.getKey()))) {
+                        flushed.put(entry.getKey(), entry.getValue());
+                    }
+                    pending.remove(entry.getKey(), entry.getValue());
+                }
+            }
+            return updated;
+        } catch (DataAccessException e) {
+            // 保留 pending，下次再寫
+            log.warn("Failed to flush {} signature counters: {}", pending.size(), e.getMessage());
+            return 0;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        flushExecutor.shutdown();
+        flushExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        int updated = flush();
+        if (!pending.isEmpty()) {
+            log.warn("{} signature counters were not persisted on shutdown", pending.size());
+        } else if (updated > 0) {
+            log.info("Persisted {} signature counters on shutdown", updated);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("webauthn.signature.counter.pending", pending, Map::size)
+                .description("Signature counters recorded but not yet written to the database")
+                .register(registry);
+    }
+
+    private static long orZero(Long count) {
+        return count == null ? 0 : count;
+    }
+
+    private int write(List<Map.Entry<ByteArray, Long>> batch) {
+        int[][] results = jdbcTemplate.batchUpdate(UPDATE, batch, batch.size(), (ps, entry) -> {
+            ps.setLong(1, entry.getValue());
+            ps.setBytes(2, entry.getKey().getBytes());
+            ps.setLong(3, entry.getValue());
+        });
+        int updated = 0;
+        for (int[] result : results) {
+            for (int count : result) {
+                updated += Math.max(count, 0);
+            }
+        }
+        return updated;
+    }
+}
@@ -0,0 +1,56 @@
+package com.webauthn.app.infrastructure.retry;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 全域重試額度：每次正常呼叫存入 percent / 100 個 token，每次重試取出 1 個，不足時不重試
+ * 重試流量因此不超過正常流量的 percent；burst 為額度上限，也是啟動時的初始額度，讓低流量時仍可重試
+ */
+public class RetryBudget {
+    private final double ratio;
+    private final double burst;
+    // 每次呼叫都會經過，以 ReentrantLock 而非 synchronized 保護，避免 virtual thread 被 pin 住
+    private final ReentrantLock lock = new ReentrantLock();
+    private double balance;
+
+    /**
+     * @param percent 重試流量佔正常流量的百分比
+     * @param burst 額度上限
+     */
+    public RetryBudget(double percent, double burst) {
+        this.ratio = percent / 100.0;
+        this.burst = burst;
+        this.balance = burst;
+    }
+
+    void onCall() {
+        lock.lock();
+        try {
+            balance = Math.min(burst, balance + ratio);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean tryRetry() {
+        lock.lock();
+        try {
+            if (balance < 1) {
+                return false;
+            }
+            balance -= 1;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double balance() {
+        lock.lock();
+        try {
+            return balance;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
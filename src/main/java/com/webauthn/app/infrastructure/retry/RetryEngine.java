@@ -0,0 +1,143 @@
+package com.webauthn.app.infrastructure.retry;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.webauthn.app.configuration.KeycloakProperties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+/**
+ * 共用的重試引擎
+ * 1.等待以 Reactor timer 排程，不以 Thread.sleep 占用 thread；同步呼叫端只在 execute 等待最終結果
+ * 2.退避加上 jitter，Keycloak 恢復時重試分散開來，不會同時湧入
+ * 3.RetryPolicy.retryOn 判斷錯誤是否可重試，超過 max-attempts、max-elapsed 或 RetryBudget 用盡時丟出最後一次的錯誤
+ * 4.每個 operation 的呼叫、重試、放棄次數以 retry.* 公開，tag 為 operation
+ */
+@Component
+public class RetryEngine implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(RetryEngine.class);
+
+    private final RetryBudget budget;
+    private final Map<String, OperationStats> operations = new ConcurrentHashMap<>();
+    private volatile MeterRegistry registry;
+
+    @Autowired
+    public RetryEngine(KeycloakProperties properties) {
+        this(new RetryBudget(properties.getRetry().getBudgetPercent(), properties.getRetry().getBudgetBurst()));
+    }
+
+    public RetryEngine(RetryBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * 非阻塞版本，每次重試重新訂閱 call
+     */
+    public <T> Mono<T> retry(String operation, RetryPolicy policy, Mono<T> call) {
+        OperationStats stats = stats(operation);
+        return Mono.defer(() -> {
+            stats.calls.increment();
+            budget.onCall();
+            long start = System.nanoTime();
+            AtomicReference<Duration> previousDelay = new AtomicReference<>(policy.getInitialBackoff());
+            return call.retryWhen(Retry.from(signals -> signals.<Object>concatMap(signal -> {
+                Throwable failure = signal.failure();
+                int retry = (int) signal.totalRetries() + 1;
+                if (!policy.getRetryOn().test(failure)) {
+                    return Mono.error(failure);
+                }
+                Duration delay = policy.nextDelay(retry, previousDelay.get());
+                Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+                if (retry >= policy.getMaxAttempts() || elapsed.plus(delay).compareTo(policy.getMaxElapsed()) > 0) {
+                    stats.exhausted.increment();
+                    log.error("{} failed after {} attempts in {} ms", operation, retry, elapsed.toMillis());
+                    return Mono.error(failure);
+                }
+                if (!budget.tryRetry()) {
+                    stats.budgetRejected.increment();
+                    log.warn("{} failed (attempt {}), retry budget exhausted: {}", operation, retry, failure.getMessage());
+                    return Mono.error(failure);
+                }
+                previousDelay.set(delay);
+                stats.retries.increment();
+                log.warn("{} failed (attempt {}/{}): {}. Retrying in {} ms",
+                        operation, retry, policy.getMaxAttempts(), failure.getMessage(), delay.toMillis());
+                return Mono.delay(delay);
+            })));
+        });
+    }
+
+    /**
+     * 同步版本，action 在 boundedElastic 執行，重試等待期間不占用任何 thread
+     */
+    public <T> T execute(String operation, RetryPolicy policy, Supplier<T> action) {
+        return retry(operation, policy, Mono.fromSupplier(action).subscribeOn(Schedulers.boundedElastic())).block();
+    }
+
+    private OperationStats stats(String operation) {
+        return operations.computeIfAbsent(operation, name -> {
+            OperationStats stats = new OperationStats(name);
+            MeterRegistry current = registry;
+            if (current != null) {
+                stats.register(current);
+            }
+            return stats;
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        operations.values().forEach(stats -> stats.register(registry));
+        Gauge.builder("retry.budget.balance", budget, RetryBudget::balance)
+                .description("Retries currently allowed by the global retry budget")
+                .register(registry);
+    }
+
+    private static final class OperationStats {
+        private final String operation;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder exhausted = new LongAdder();
+        private final LongAdder budgetRejected = new LongAdder();
+
+        private OperationStats(String operation) {
+            this.operation = operation;
+        }
+
+        private void register(MeterRegistry registry) {
+            FunctionCounter.builder("retry.calls", calls, LongAdder::sum)
+                    .tag("operation", operation)
+                    .description("Calls made through the retry engine, excluding retries")
+                    .register(registry);
+            FunctionCounter.builder("retry.retries", retries, LongAdder::sum)
+                    .tag("operation", operation)
+                    .register(registry);
+            FunctionCounter.builder("retry.exhausted", exhausted, LongAdder::sum)
+                    .tag("operation", operation)
+                    .description("Calls that failed after max-attempts or max-elapsed")
+                    .register(registry);
+            FunctionCounter.builder("retry.budget.rejected", budgetRejected, LongAdder::sum)
+                    .tag("operation", operation)
+                    .description("Retries skipped because the global retry budget was exhausted")
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.webauthn.app.infrastructure.retry;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * 單一操作的重試規則：次數、退避、jitter、總時間上限與哪些錯誤可以重試
+ */
+@Getter
+@Builder
+public class RetryPolicy {
+    public enum Jitter {
+        /**
+         * 純指數退避，所有呼叫端同時重試，只適合單一呼叫端
+         */
+        NONE,
+        /**
+         * 0 ~ 指數退避值之間隨機
+         */
+        FULL,
+        /**
+         * initial-backoff ~ 上次等待時間 × 3 之間隨機，不超過 max-backoff
+         */
+        DECORRELATED
+    }
+
+    /**
+     * 含第一次呼叫
+     */
+    @Builder.Default
+    private final int maxAttempts = 3;
+    @Builder.Default
+    private final Duration initialBackoff = Duration.ofSeconds(1);
+    @Builder.Default
+    private final Duration maxBackoff = Duration.ofSeconds(10);
+    @Builder.Default
+    private final Jitter jitter = Jitter.FULL;
+    /**
+     * 從第一次呼叫起算，下一次重試會超過時不再重試
+     */
+    @Builder.Default
+    private final Duration maxElapsed = Duration.ofSeconds(30);
+    @Builder.Default
+    private final Predicate<Throwable> retryOn = e -> true;
+
+    /**
+     * @param retry 第幾次重試（1 起算）
+     * @param previous 上一次的等待時間，第一次重試為 initial-backoff
+     */
+    Duration nextDelay(int retry, Duration previous) {
+        long base = initialBackoff.toMillis();
+        long cap = maxBackoff.toMillis();
+        long exponential = Math.min(cap, base << Math.min(retry - 1, 30));
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long millis = switch (jitter) {
+            case NONE -> exponential;
+            case FULL -> random.nextLong(exponential + 1);
+            case DECORRELATED -> Math.min(cap, random.nextLong(base, Math.max(previous.toMillis() * 3, base) + 1));
+        };
+        return Duration.ofMillis(millis);
+    }
+}
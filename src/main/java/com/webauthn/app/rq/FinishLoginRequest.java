@@ -12,4 +12,15 @@ public class FinishLoginRequest {
 
     @NotBlank
     private String username;
+
+    /**
+     * /login 回傳的 requestId
+     */
+    @NotBlank
+    private String requestId;
+
+    /**
+     * 無狀態模式下 /login 回傳的 ceremonyToken
+     */
+    private String ceremonyToken;
 }
@@ -17,13 +17,18 @@ public class FinishRegisrationRequest {
 
     private PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> credential;
 
+    @Schema(title = "ceremony token", description = "無狀態模式下 /register 回傳的 ceremonyToken")
+    private String ceremonyToken;
+
     @JsonCreator
     public FinishRegisrationRequest(@JsonProperty("username") String username,
                                     @JsonProperty("credname") String credname,
-                                    @JsonProperty("credential") PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> credential) {
+                                    @JsonProperty("credential") PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> credential,
+                                    @JsonProperty("ceremonyToken") String ceremonyToken) {
         this.username = username;
         this.credname = credname;
         this.credential = credential;
+        this.ceremonyToken = ceremonyToken;
     }
 
 }
@@ -14,11 +14,17 @@ public class CredentialCreateResponse {
      */
     private Long userId;
 
+    /**
+     * 無狀態模式下的加密 ceremony 狀態，finishauth 時需原封不動帶回
+     */
+    private String ceremonyToken;
+
     // 工廠方法：把原本的 registration 物件包成 CredentialCreateResponse
-    public static CredentialCreateResponse from(PublicKeyCredentialCreationOptions registration, Long userId) {
+    public static CredentialCreateResponse from(PublicKeyCredentialCreationOptions registration, Long userId, String ceremonyToken) {
         return CredentialCreateResponse.builder()
                 .publicKey(registration)
                 .userId(userId)
+                .ceremonyToken(ceremonyToken)
                 .build();
     }
 }
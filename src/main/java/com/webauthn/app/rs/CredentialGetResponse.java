@@ -9,6 +9,16 @@ public class CredentialGetResponse {
 
     private PublicKeyCredentialRequestOptions publicKey;
 
+    /**
+     * 此次登入的識別碼，welcome 時需帶回
+     */
+    private String requestId;
+
+    /**
+     * 無狀態模式下的加密 ceremony 狀態，welcome 時需原封不動帶回
+     */
+    private String ceremonyToken;
+
     @Data
     public static class PublicKeyCredentialRequestOptions {
         private String challenge;
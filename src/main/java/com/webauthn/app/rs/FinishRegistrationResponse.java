@@ -29,6 +29,17 @@ public class FinishRegistrationResponse {
                 .build();
     }
 
+    /**
+     * outbox 模式：WebAuthn 已完成，Keycloak 帳號在背景建立中
+     */
+    public static FinishRegistrationResponse provisioning(String username) {
+        return FinishRegistrationResponse.builder()
+                .registerSuccess(true)
+                .message("註冊成功，帳號建立中")
+                .username(username)
+                .build();
+    }
+
     public static FinishRegistrationResponse failure(String message) {
         return FinishRegistrationResponse.builder()
                 .registerSuccess(false)
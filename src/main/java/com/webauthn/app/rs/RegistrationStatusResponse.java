@@ -0,0 +1,31 @@
+package com.webauthn.app.rs;
+
+import com.webauthn.app.user.RegistrationStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RegistrationStatusResponse {
+    @Schema(title = "用戶名")
+    private String username;
+
+    @Schema(title = "註冊狀態", description = "PENDING、PROVISIONING、PROVISIONING_FAILED、COMPLETED")
+    private RegistrationStatus registrationStatus;
+
+    @Schema(title = "建立 Keycloak 帳號的失敗次數", description = "僅 outbox 模式且尚未完成時有值")
+    private Integer provisioningAttempts;
+
+    @Schema(title = "下次重試時間", description = "null 表示不會再重試")
+    private Instant nextAttemptAt;
+
+    @Schema(title = "最後一次失敗原因")
+    private String lastError;
+}
@@ -0,0 +1,133 @@
+package com.webauthn.app.service;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/**
+ * Keycloak admin token 管理
+ * 1.同時只有一個 token 請求在進行，其他呼叫共用結果，token 到期時不會同時打爆 token endpoint
+ * 2.取得 token 後排程在到期前背景更新，請求使用中的 token 直到新 token 取得，不需等待
+ * 3.背景更新失敗時在到期前重試，仍失敗則由下一個請求同步取得
+ */
+class AdminTokenManager implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(AdminTokenManager.class);
+    // 最多提前 30 秒更新；壽命很短的 token 提前 1/4 壽命
+    private static final Duration MAX_REFRESH_AHEAD = Duration.ofSeconds(30);
+    private static final Duration MAX_RETRY_DELAY = Duration.ofSeconds(5);
+    private static final Duration MIN_RETRY_DELAY = Duration.ofMillis(100);
+
+    private final Supplier<Mono<IssuedToken>> fetcher;
+    private final SingleFlight<Token> refreshing = new SingleFlight<>();
+
+    private volatile Token current;
+    private volatile Disposable scheduledRefresh;
+    private volatile boolean closed;
+
+    AdminTokenManager(Supplier<Mono<IssuedToken>> fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * 有效 token 直接回傳；沒有或已過期時等待（共用）一次更新
+     */
+    Mono<String> token() {
+        Token token = current;
+        if (token != null && !token.isExpired()) {
+            return Mono.just(token.value);
+        }
+        return refresh().map(refreshed -> refreshed.value);
+    }
+
+    Mono<Token> refresh() {
+        return refreshing.execute(() -> {
+            long requestedAt = System.nanoTime();
+            // 以送出請求的時間計算到期，網路延遲只會讓 token 提早被視為過期
+            return fetcher.get()
+                    .map(issued -> new Token(issued.value, requestedAt, issued.lifetime))
+                    .doOnNext(this::install);
+        });
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Disposable scheduled = scheduledRefresh;
+        if (scheduled != null) {
+            scheduled.dispose();
+        }
+    }
+
+    private void install(Token token) {
+        current = token;
+        scheduleRefresh(token.refreshDelay());
+    }
+
+    private void scheduleRefresh(Duration delay) {
+        if (closed) {
+            return;
+        }
+        Disposable previous = scheduledRefresh;
+        scheduledRefresh = Mono.delay(delay)
+                .flatMap(tick -> refresh())
+                .subscribe(null, this::onBackgroundRefreshFailure);
+        if (previous != null) {
+            previous.dispose();
+        }
+    }
+
+    private void onBackgroundRefreshFailure(Throwable e) {
+        Token token = current;
+        Duration retryDelay = token == null ? Duration.ZERO : token.remaining().dividedBy(2);
+        if (retryDelay.compareTo(MIN_RETRY_DELAY) < 0) {
+            log.warn("Background admin token refresh failed, next request will fetch a new token: {}", e.getMessage());
+            return;
+        }
+        retryDelay = retryDelay.compareTo(MAX_RETRY_DELAY) > 0 ? MAX_RETRY_DELAY : retryDelay;
+        log.warn("Background admin token refresh failed, retrying in {} ms: {}", retryDelay.toMillis(), e.getMessage());
+        scheduleRefresh(retryDelay);
+    }
+
+    /**
+     * token endpoint 的回應
+     */
+    static final class IssuedToken {
+        private final String value;
+        private final Duration lifetime;
+
+        IssuedToken(String value, Duration lifetime) {
+            this.value = value;
+            this.lifetime = lifetime;
+        }
+    }
+
+    static final class Token {
+        private final String value;
+        private final long expiresAt;
+        private final long refreshAt;
+
+        private Token(String value, long requestedAt, Duration lifetime) {
+            this.value = value;
+            this.expiresAt = requestedAt + lifetime.toNanos();
+            Duration ahead = lifetime.dividedBy(4);
+            this.refreshAt = expiresAt - Math.min(ahead.toNanos(), MAX_REFRESH_AHEAD.toNanos());
+        }
+
+        private boolean isExpired() {
+            return System.nanoTime() - expiresAt >= 0;
+        }
+
+        private Duration remaining() {
+            return Duration.ofNanos(Math.max(expiresAt - System.nanoTime(), 0));
+        }
+
+        private Duration refreshDelay() {
+            return Duration.ofNanos(Math.max(refreshAt - System.nanoTime(), 0));
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.webauthn.app.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.webauthn.app.configuration.KeycloakProperties;
+import com.webauthn.app.infrastructure.retry.RetryEngine;
+import com.webauthn.app.infrastructure.retry.RetryPolicy;
+import com.webauthn.app.strategy.RoleStrategy;
+import com.webauthn.app.user.AppUser;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * 批次建立 Keycloak 帳號（搬移 / 補建既有用戶）
+ * 1.每 chunk-size 個用戶送一次 realm partial import，連同 RoleStrategy 的預設角色一起建立，同時最多 concurrency 個請求
+ * 2.Keycloak 已有同名帳號時略過（SKIPPED），沿用回應中的既有 id
+ * 3.partial import 整批為單一 transaction，被 400 / 409 拒絕時對半拆開重送，只有真正有問題的用戶記為失敗
+ *   401 / 403 / 404 等認證或設定錯誤拆開也不會成功，整個 chunk 直接記為失敗；429 依 keycloak.retry 退避後重送
+ * 4.取得的 id 以 JDBC batch 寫回 app_user.keycloak_user_id，每個 chunk 一次
+ */
+@Service
+public class BulkKeycloakProvisioner {
+    private static final Logger log = LoggerFactory.getLogger(BulkKeycloakProvisioner.class);
+
+    private static final String UPDATE_KEYCLOAK_USER_ID = "UPDATE app_user SET keycloak_user_id = ? WHERE id = ?";
+
+    private final ReactiveKeycloakService keycloakService;
+    private final RoleStrategy roleStrategy;
+    private final JdbcTemplate jdbcTemplate;
+    private final RetryEngine retryEngine;
+    private final RetryPolicy throttledRetry;
+    private final int chunkSize;
+    private final int concurrency;
+
+    public BulkKeycloakProvisioner(ReactiveKeycloakService keycloakService, RoleStrategy roleStrategy, JdbcTemplate jdbcTemplate,
+                                   RetryEngine retryEngine, KeycloakProperties properties) {
+        this.keycloakService = keycloakService;
+        this.roleStrategy = roleStrategy;
+        this.jdbcTemplate = jdbcTemplate;
+        this.retryEngine = retryEngine;
+        this.throttledRetry = RetryPolicy.builder()
+                .maxAttempts(properties.getRetry().getMaxAttempts())
+                .initialBackoff(properties.getRetry().getInitialBackoff())
+                .maxBackoff(properties.getRetry().getMaxBackoff())
+                .jitter(properties.getRetry().getJitter())
+                .maxElapsed(properties.getRetry().getMaxElapsed())
+                .retryOn(e -> hasStatus(e, HttpStatus.TOO_MANY_REQUESTS))
+                .build();
+        this.chunkSize = Math.max(properties.getBulk().getChunkSize(), 1);
+        this.concurrency = Math.max(properties.getBulk().getConcurrency(), 1);
+    }
+
+    /**
+     * 建立所有用戶的 Keycloak 帳號並寫回 keycloakUserId（同時更新傳入的 AppUser）
+     * @param users 已存在於 app_user 的用戶
+     */
+    public BulkProvisioningResult provision(List<AppUser> users) {
+        long start = System.nanoTime();
+        List<List<AppUser>> chunks = new ArrayList<>();
+        for (int i = 0; i < users.size(); i += chunkSize) {
+            chunks.add(users.subList(i, Math.min(i + chunkSize, users.size())));
+        }
+
+        ChunkResult total = new ChunkResult();
+        Flux.fromIterable(chunks)
+                .flatMap(chunk -> importChunk(chunk)
+                        .publishOn(Schedulers.boundedElastic())
+                        .doOnNext(this::writeBack), concurrency)
+                .toIterable()
+                .forEach(total::merge);
+
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        log.info("Bulk provisioned {} users in {}: {} created, {} skipped, {} failed",
+                users.size(), elapsed, total.created, total.skipped, total.failed.size());
+        return new BulkProvisioningResult(total.created, total.skipped, total.failed, elapsed);
+    }
+
+    private Mono<ChunkResult> importChunk(List<AppUser> chunk) {
+        List<Map<String, Object>> representations = chunk.stream()
+                .map(user -> Map.<String, Object>of(
+                        "username", user.getUsername(),
+                        "enabled", true,
+                        "realmRoles", roleStrategy.getDefaultRoles(user.getUsername())))
+                .toList();
+        return retryEngine.retry("keycloak.partialImport", throttledRetry, keycloakService.partialImport(representations))
+                .map(response -> collect(chunk, response))
+                .onErrorResume(BulkKeycloakProvisioner::isSplittable, e -> {
+                    WebClientResponseException rejected = (WebClientResponseException) e;
+                    if (chunk.size() == 1) {
+                        return Mono.just(ChunkResult.failed(chunk, rejected.getStatusCode() + " " + rejected.getResponseBodyAsString()));
+                    }
+                    log.warn("Partial import of {} users rejected ({}), splitting", chunk.size(), rejected.getStatusCode());
+                    int half = chunk.size() / 2;
+                    return importChunk(chunk.subList(0, half))
+                            .zipWith(importChunk(chunk.subList(half, chunk.size())), ChunkResult::merge);
+                })
+                .onErrorResume(e -> {
+                    log.error("Partial import of {} users failed: {}", chunk.size(), e.getMessage());
+                    return Mono.just(ChunkResult.failed(chunk, e.getMessage()));
+                });
+    }
+
+    /**
+     * 只有資料本身的問題（400 角色不存在、409 重複等）拆開後能找出問題用戶
+     */
+    private static boolean isSplittable(Throwable e) {
+        return hasStatus(e, HttpStatus.BAD_REQUEST) || hasStatus(e, HttpStatus.CONFLICT);
+    }
+
+    private static boolean hasStatus(Throwable e, HttpStatus status) {
+        return e instanceof WebClientResponseException response && response.getStatusCode().value() == status.value();
+    }
+
+    /**
+     * 依 PartialImportResults.results 對應回 AppUser；Keycloak 的 username 一律小寫
+     */
+    private static ChunkResult collect(List<AppUser> chunk, JsonNode response) {
+        Map<String, JsonNode> byUsername = new LinkedHashMap<>();
+        for (JsonNode item : response.path("results")) {
+            if ("USER".equals(item.path("resourceType").asText())) {
+                byUsername.put(item.path("resourceName").asText().toLowerCase(Locale.ROOT), item);
+            }
+        }
+        ChunkResult result = new ChunkResult();
+        for (AppUser user : chunk) {
+            JsonNode item = byUsername.get(user.getUsername().toLowerCase(Locale.ROOT));
+            String id = item == null ? null : item.path("id").asText(null);
+            if (id == null) {
+                result.failed.put(user.getUsername(), "Missing from partial import result");
+                continue;
+            }
+            if ("SKIPPED".equals(item.path("action").asText())) {
+                result.skipped++;
+            } else {
+                result.created++;
+            }
+            result.ids.put(user, id);
+        }
+        return result;
+    }
+
+    private void writeBack(ChunkResult result) {
+        if (result.ids.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<AppUser, String>> entries = new ArrayList<>(result.ids.entrySet());
+        jdbcTemplate.batchUpdate(UPDATE_KEYCLOAK_USER_ID, entries, entries.size(), (statement, entry) -> {
+            statement.setString(1, entry.getValue());
+            statement.setLong(2, entry.getKey().getId());
+        });
+        entries.forEach(entry -> entry.getKey().setKeycloakUserId(entry.getValue()));
+    }
+
+    private static final class ChunkResult {
+        private int created;
+        private int skipped;
+        private final Map<AppUser, String> ids = new LinkedHashMap<>();
+        private final Map<String, String> failed = new LinkedHashMap<>();
+
+        static ChunkResult failed(List<AppUser> users, String error) {
+            ChunkResult result = new ChunkResult();
+            users.forEach(user -> result.failed.put(user.getUsername(), error));
+            return result;
+        }
+
+        ChunkResult merge(ChunkResult other) {
+            created += other.created;
+            skipped += other.skipped;
+            ids.putAll(other.ids);
+            failed.putAll(other.failed);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.webauthn.app.service;
+
+import java.time.Duration;
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 批次建立 Keycloak 帳號的結果
+ */
+@Getter
+@AllArgsConstructor
+public class BulkProvisioningResult {
+    private final int created;
+    /**
+     * Keycloak 已有同名帳號，沿用其 id
+     */
+    private final int skipped;
+    /**
+     * username → 失敗原因
+     */
+    private final Map<String, String> failed;
+    private final Duration elapsed;
+}
@@ -0,0 +1,80 @@
+package com.webauthn.app.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Keycloak Admin API 呼叫次數
+ * 1.filter() 掛在 WebClient 上，計算所有呼叫
+ * 2.measureRegistration() 以 Reactor Context 計算單次註冊發出的呼叫（共用的 token 更新不算在個別註冊）
+ */
+@Component
+public class KeycloakCallMetrics implements MeterBinder {
+    private static final String REGISTRATION_CALLS = KeycloakCallMetrics.class.getName() + ".registration";
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder registrations = new LongAdder();
+    private final LongAdder registrationCalls = new LongAdder();
+
+    public ExchangeFilterFunction filter() {
+        return (request, next) -> Mono.deferContextual(context -> {
+            calls.increment();
+            context.<AtomicInteger>getOrEmpty(REGISTRATION_CALLS).ifPresent(AtomicInteger::incrementAndGet);
+            return next.exchange(request);
+        });
+    }
+
+    /**
+     * 計算 provisioning 過程中（含重試）的 Keycloak 呼叫次數
+     */
+    public <T> Mono<T> measureRegistration(Mono<T> provisioning) {
+        return Mono.defer(() -> {
+            AtomicInteger count = new AtomicInteger();
+            return provisioning
+                    .contextWrite(context -> context.put(REGISTRATION_CALLS, count))
+                    // doFinally 在結果交給下游之後才執行，block() 可能先返回，改在結果送出前記錄
+                    .doOnTerminate(() -> recordRegistration(count))
+                    .doOnCancel(() -> recordRegistration(count));
+        });
+    }
+
+    private void recordRegistration(AtomicInteger count) {
+        registrations.increment();
+        registrationCalls.add(count.get());
+    }
+
+    public long calls() {
+        return calls.sum();
+    }
+
+    public double callsPerRegistration() {
+        long count = registrations.sum();
+        return count == 0 ? 0 : (double) registrationCalls.sum() / count;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("keycloak.calls", calls, LongAdder::sum)
+                .description("Keycloak Admin API requests")
+                .register(registry);
+        FunctionCounter.builder("keycloak.registrations", registrations, LongAdder::sum)
+                .description("Registrations that provisioned a Keycloak user")
+                .register(registry);
+        FunctionCounter.builder("keycloak.registration.calls", registrationCalls, LongAdder::sum)
+                .description("Keycloak requests made while provisioning registrations")
+                .register(registry);
+        Gauge.builder("keycloak.calls.per.registration", this, KeycloakCallMetrics::callsPerRegistration)
+                .description("Average Keycloak requests per registration, excluding shared token refreshes")
+                .register(registry);
+    }
+}
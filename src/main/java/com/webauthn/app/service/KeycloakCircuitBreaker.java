@@ -0,0 +1,324 @@
+package com.webauthn.app.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.webauthn.app.configuration.KeycloakProperties;
+import com.webauthn.app.exception.KeycloakUnavailableException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Keycloak Admin API 的 circuit breaker 與 bulkhead，以 filter() 掛在 WebClient 上，所有呼叫都經過
+ * 1.最近 window-size 次呼叫中失敗（5xx、timeout、連線錯誤）或過慢的比例超過門檻時開啟，開啟期間呼叫立即失敗
+ * 2.開啟 wait-duration 後進入 half-open，放行 half-open-calls 次試探，全部成功才關閉，任一失敗重新開啟
+ * 3.同時進行中的呼叫超過 bulkhead.max-concurrent-calls 時立即拒絕，不排隊
+ * 4.狀態變化發布 KeycloakCircuitStateChangedEvent，並以 keycloak.circuit.* 公開
+ * 5.狀態以 ReentrantLock 保護而非 synchronized，virtual thread 不會被 pin 住；log 與事件在釋放 lock 後才處理
+ */
+@Component
+public class KeycloakCircuitBreaker implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(KeycloakCircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final KeycloakProperties.CircuitBreaker properties;
+    private final int maxConcurrentCalls;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Clock clock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // 最近 window-size 次呼叫的結果，由 lock 保護
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int recorded;
+    private int next;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+    // 每次進入 half-open 加一，區分試探屬於哪一輪
+    private long halfOpenRound;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejectedByCircuit = new LongAdder();
+    private final LongAdder rejectedByBulkhead = new LongAdder();
+    private final LongAdder transitions = new LongAdder();
+
+    @Autowired
+    public KeycloakCircuitBreaker(KeycloakProperties properties, ApplicationEventPublisher eventPublisher) {
+        this(properties, eventPublisher, Clock.systemUTC());
+    }
+
+    KeycloakCircuitBreaker(KeycloakProperties properties, ApplicationEventPublisher eventPublisher, Clock clock) {
+        this.properties = properties.getCircuitBreaker();
+        this.maxConcurrentCalls = properties.getBulkhead().getMaxConcurrentCalls();
+        this.eventPublisher = eventPublisher;
+        this.clock = clock;
+        int windowSize = Math.max(this.properties.getWindowSize(), 1);
+        this.failed = new boolean[windowSize];
+        this.slow = new boolean[windowSize];
+    }
+
+    public ExchangeFilterFunction filter() {
+        return (request, next) -> Mono.defer(() -> {
+            Permit permit = tryAcquirePermission();
+            if (permit == null) {
+                rejectedByCircuit.increment();
+                return Mono.error(new KeycloakUnavailableException("Keycloak circuit breaker is open"));
+            }
+            if (inFlight.incrementAndGet() > maxConcurrentCalls) {
+                inFlight.decrementAndGet();
+                rejectedByBulkhead.increment();
+                releasePermission(permit);
+                return Mono.error(new KeycloakUnavailableException("Too many concurrent Keycloak calls"));
+            }
+            long start = clock.millis();
+            return next.exchange(request)
+                    .doOnNext(response -> record(permit, response.statusCode().is5xxServerError(), clock.millis() - start))
+                    .doOnError(e -> record(permit, true, clock.millis() - start))
+                    .doOnCancel(() -> releasePermission(permit))
+                    .doFinally(signal -> inFlight.decrementAndGet());
+        });
+    }
+
+    /**
+     * 不占用 half-open 試探次數，只判斷目前是否會放行，供呼叫端在做其他工作前提早失敗
+     */
+    public boolean isCallPermitted() {
+        lock.lock();
+        try {
+            return state != State.OPEN || waitElapsed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public State getState() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return null 表示拒絕
+     */
+    private Permit tryAcquirePermission() {
+        KeycloakCircuitStateChangedEvent transition = null;
+        lock.lock();
+        try {
+            if (state == State.OPEN) {
+                if (!waitElapsed()) {
+                    return null;
+                }
+                transition = transitionTo(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN) {
+                if (halfOpenPermits <= 0) {
+                    return null;
+                }
+                halfOpenPermits--;
+                return new Permit(halfOpenRound);
+            }
+            return new Permit(Permit.CLOSED);
+        } finally {
+            lock.unlock();
+            publish(transition);
+        }
+    }
+
+    /**
+     * 被 bulkhead 拒絕或取消的 half-open 試探不算結果，歸還試探次數
+     * 只歸還同一輪 half-open 取得的試探；CLOSED 時取得的許可不占試探次數，不歸還
+     */
+    private void releasePermission(Permit permit) {
+        lock.lock();
+        try {
+            if (permit.settled) {
+                return;
+            }
+            permit.settled = true;
+            if (state == State.HALF_OPEN && permit.halfOpenRound == halfOpenRound) {
+                halfOpenPermits++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void record(Permit permit, boolean failure, long elapsedMillis) {
+        boolean slowCall = elapsedMillis >= properties.getSlowCallThreshold().toMillis();
+        KeycloakCircuitStateChangedEvent transition = null;
+        lock.lock();
+        try {
+            if (permit.settled) {
+                return;
+            }
+            permit.settled = true;
+            if (state == State.HALF_OPEN) {
+                if (permit.halfOpenRound != halfOpenRound) {
+                    // 進入這一輪 half-open 前已送出的呼叫，不算試探結果
+                    return;
+                }
+                if (failure || slowCall) {
+                    transition = transitionTo(State.OPEN);
+                } else if (++halfOpenSuccesses >= properties.getHalfOpenCalls()) {
+                    transition = transitionTo(State.CLOSED);
+                }
+                return;
+            }
+            if (state == State.OPEN) {
+                // 開啟前已送出的呼叫
+                return;
+            }
+            failed[next] = failure;
+            slow[next] = slowCall;
+            next = (next + 1) % failed.length;
+            recorded = Math.min(recorded + 1, failed.length);
+            if (recorded >= properties.getMinimumCalls()
+                    && (rate(failed) >= properties.getFailureRateThreshold() || rate(slow) >= properties.getSlowCallRateThreshold())) {
+                transition = transitionTo(State.OPEN);
+            }
+        } finally {
+            lock.unlock();
+            publish(transition);
+        }
+    }
+
+    private boolean waitElapsed() {
+        return clock.millis() - openedAt >= properties.getWaitDurationInOpenState().toMillis();
+    }
+
+    /**
+     * 需持有 lock，回傳的事件由呼叫端在釋放 lock 後 publish
+     */
+    private KeycloakCircuitStateChangedEvent transitionTo(State target) {
+        State previous = state;
+        state = target;
+        switch (target) {
+            case OPEN -> openedAt = clock.millis();
+            case HALF_OPEN -> {
+                halfOpenRound++;
+                halfOpenPermits = properties.getHalfOpenCalls();
+                halfOpenSuccesses = 0;
+            }
+            case CLOSED -> {
+                recorded = 0;
+                next = 0;
+            }
+        }
+        transitions.increment();
+        return new KeycloakCircuitStateChangedEvent(this, previous, target);
+    }
+
+    private void publish(KeycloakCircuitStateChangedEvent transition) {
+        if (transition == null) {
+            return;
+        }
+        if (transition.getCurrent() == State.OPEN) {
+            log.warn("Keycloak circuit breaker {} -> OPEN (failure rate {}%, slow call rate {}%)",
+                    transition.getPrevious(), Math.round(failureRate()), Math.round(slowCallRate()));
+        } else {
+            log.info("Keycloak circuit breaker {} -> {}", transition.getPrevious(), transition.getCurrent());
+        }
+        eventPublisher.publishEvent(transition);
+    }
+
+    /**
+     * @return 0~100
+     */
+    public double failureRate() {
+        lock.lock();
+        try {
+            return rate(failed);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 0~100
+     */
+    public double slowCallRate() {
+        lock.lock();
+        try {
+            return rate(slow);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private double rate(boolean[] outcomes) {
+        if (recorded == 0) {
+            return 0;
+        }
+        int count = 0;
+        for (int i = 0; i < recorded; i++) {
+            if (outcomes[i]) {
+                count++;
+            }
+        }
+        return count * 100.0 / recorded;
+    }
+
+    /**
+     * 單次呼叫取得的許可，記下是否為 half-open 試探；結果與歸還只處理一次
+     */
+    private static final class Permit {
+        private static final long CLOSED = 0;
+
+        // CLOSED 時取得為 0，否則為取得試探時的 halfOpenRound
+        private final long halfOpenRound;
+        // 由 lock 保護
+        private boolean settled;
+
+        private Permit(long halfOpenRound) {
+            this.halfOpenRound = halfOpenRound;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("keycloak.circuit.state", this, breaker -> breaker.getState().ordinal())
+                .description("Keycloak circuit breaker state: 0 closed, 1 open, 2 half-open")
+                .register(registry);
+        Gauge.builder("keycloak.circuit.failure.rate", this, KeycloakCircuitBreaker::failureRate)
+                .description("Percentage of failed Keycloak calls in the sliding window")
+                .register(registry);
+        Gauge.builder("keycloak.circuit.slow.rate", this, KeycloakCircuitBreaker::slowCallRate)
+                .description("Percentage of slow Keycloak calls in the sliding window")
+                .register(registry);
+        FunctionCounter.builder("keycloak.circuit.transitions", transitions, LongAdder::sum)
+                .description("Keycloak circuit breaker state changes")
+                .register(registry);
+        FunctionCounter.builder("keycloak.circuit.rejected", rejectedByCircuit, LongAdder::sum)
+                .description("Keycloak calls rejected because the circuit breaker was open")
+                .register(registry);
+        Gauge.builder("keycloak.bulkhead.in.flight", inFlight, AtomicInteger::get)
+                .description("Keycloak calls currently in flight")
+                .register(registry);
+        FunctionCounter.builder("keycloak.bulkhead.rejected", rejectedByBulkhead, LongAdder::sum)
+                .description("Keycloak calls rejected because max-concurrent-calls was reached")
+                .register(registry);
+    }
+}
@@ -0,0 +1,20 @@
+package com.webauthn.app.service;
+
+import org.springframework.context.ApplicationEvent;
+
+import lombok.Getter;
+
+/**
+ * Keycloak circuit breaker 狀態改變
+ */
+@Getter
+public class KeycloakCircuitStateChangedEvent extends ApplicationEvent {
+    private final KeycloakCircuitBreaker.State previous;
+    private final KeycloakCircuitBreaker.State current;
+
+    public KeycloakCircuitStateChangedEvent(KeycloakCircuitBreaker source, KeycloakCircuitBreaker.State previous, KeycloakCircuitBreaker.State current) {
+        super(source);
+        this.previous = previous;
+        this.current = current;
+    }
+}
@@ -0,0 +1,136 @@
+package com.webauthn.app.service;
+
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+import jakarta.annotation.PreDestroy;
+
+import com.webauthn.app.configuration.KeycloakProperties;
+
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.handler.timeout.WriteTimeoutHandler;
+
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Keycloak 專用的 Reactor Netty 連線池，設定來自 keycloak.http
+ * 1.連線數、等待取得連線的數量與時間都有上限，超過時立即失敗而不是無限排隊
+ * 2.connect / read / write / response timeout 之外，filter() 對每次呼叫再加上整體 call-timeout
+ * 3.連線池的 active、idle、pending 與取得連線的延遲以 keycloak.http.pool.* 公開
+ */
+@Component
+public class KeycloakHttpClient implements MeterBinder {
+    private static final String ACQUIRE_STARTED = KeycloakHttpClient.class.getName() + ".acquireStarted";
+
+    private final KeycloakProperties.Http properties;
+    private final ConnectionProvider connectionProvider;
+    private final HttpClient httpClient;
+    // 每個 remote address 一個 pool，Keycloak 通常只有一個
+    private final List<ConnectionPoolMetrics> pools = new CopyOnWriteArrayList<>();
+    private final LongAdder acquires = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+
+    public KeycloakHttpClient(KeycloakProperties properties) {
+        this.properties = properties.getHttp();
+        this.connectionProvider = ConnectionProvider.builder("keycloak")
+                .maxConnections(this.properties.getMaxConnections())
+                .pendingAcquireMaxCount(this.properties.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(this.properties.getPendingAcquireTimeout())
+                .maxIdleTime(this.properties.getMaxIdleTime())
+                .maxLifeTime(this.properties.getMaxLifeTime())
+                .evictInBackground(this.properties.getEvictionInterval())
+                .metrics(true, () -> new ConnectionProvider.MeterRegistrar() {
+                    @Override
+                    public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics metrics) {
+                        pools.add(metrics);
+                    }
+                })
+                .build();
+
+        HttpClient client = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) this.properties.getConnectTimeout().toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, this.properties.isKeepAlive())
+                .keepAlive(this.properties.isKeepAlive())
+                .responseTimeout(this.properties.getResponseTimeout())
+                .doOnConnected(connection -> connection
+                        .addHandlerLast(new ReadTimeoutHandler(this.properties.getReadTimeout().toMillis(), TimeUnit.MILLISECONDS))
+                        .addHandlerLast(new WriteTimeoutHandler(this.properties.getWriteTimeout().toMillis(), TimeUnit.MILLISECONDS)))
+                .doOnRequest((request, connection) -> request.currentContextView()
+                        .<long[]>getOrEmpty(ACQUIRE_STARTED)
+                        .ifPresent(started -> recordAcquire(System.nanoTime() - started[0])));
+        if (this.properties.isHttp2()) {
+            client = properties.getServerUrl() != null && properties.getServerUrl().startsWith("https")
+                    ? client.protocol(HttpProtocol.H2, HttpProtocol.HTTP11)
+                    : client.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+        }
+        this.httpClient = client;
+    }
+
+    public ClientHttpConnector connector() {
+        return new ReactorClientHttpConnector(httpClient);
+    }
+
+    /**
+     * 整體 call-timeout（含取得連線），並記錄請求開始時間以計算取得連線的延遲
+     */
+    public ExchangeFilterFunction filter() {
+        return (request, next) -> Mono.defer(() -> next.exchange(request)
+                        .contextWrite(context -> context.put(ACQUIRE_STARTED, new long[]{System.nanoTime()})))
+                .timeout(properties.getCallTimeout());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        connectionProvider.disposeLater().block(properties.getCallTimeout());
+    }
+
+    private void recordAcquire(long nanos) {
+        acquires.increment();
+        acquireNanos.add(nanos);
+    }
+
+    private int sum(ToIntFunction<ConnectionPoolMetrics> metric) {
+        return pools.stream().mapToInt(metric).sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("keycloak.http.pool.active", this, client -> client.sum(ConnectionPoolMetrics::acquiredSize))
+                .description("Keycloak connections currently in use")
+                .register(registry);
+        Gauge.builder("keycloak.http.pool.idle", this, client -> client.sum(ConnectionPoolMetrics::idleSize))
+                .description("Idle Keycloak connections")
+                .register(registry);
+        Gauge.builder("keycloak.http.pool.allocated", this, client -> client.sum(ConnectionPoolMetrics::allocatedSize))
+                .description("Open Keycloak connections, active and idle")
+                .register(registry);
+        Gauge.builder("keycloak.http.pool.pending", this, client -> client.sum(ConnectionPoolMetrics::pendingAcquireSize))
+                .description("Requests waiting for a Keycloak connection")
+                .register(registry);
+        Gauge.builder("keycloak.http.pool.max", properties, KeycloakProperties.Http::getMaxConnections)
+                .description("Configured maximum Keycloak connections")
+                .register(registry);
+        FunctionTimer.builder("keycloak.http.pool.acquire", this,
+                        client -> client.acquires.sum(), client -> client.acquireNanos.sum(), TimeUnit.NANOSECONDS)
+                .description("Time from issuing a Keycloak request until a connection is ready to send it")
+                .register(registry);
+    }
+}
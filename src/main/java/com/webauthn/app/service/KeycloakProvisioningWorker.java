@@ -0,0 +1,210 @@
+package com.webauthn.app.service;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.webauthn.app.configuration.KeycloakProperties;
+import com.webauthn.app.exception.KeycloakUnavailableException;
+import com.webauthn.app.infrastructure.outbox.Backlog;
+import com.webauthn.app.infrastructure.outbox.KeycloakOutbox;
+import com.webauthn.app.infrastructure.outbox.OutboxTask;
+import com.webauthn.app.strategy.RoleStrategy;
+import com.webauthn.app.user.AppUser;
+import com.webauthn.app.user.RegistrationStatus;
+import com.webauthn.app.user.UserRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * 背景消化 keycloak_outbox：建立 Keycloak 帳號、指派預設角色，完成後將用戶改為 COMPLETED
+ * 1.每批最多 batch-size 筆，同時處理 workers 筆，等待 Keycloak 期間不占用 thread
+ * 2.建立帳號以 409 判斷已存在，失敗重試不會重複建立，也不需要 rollback
+ * 3.處理前或處理中用戶已被刪除時，略過或刪除這次建立的 Keycloak 帳號（409 查出的既有帳號不刪除）
+ * 4.Keycloak circuit breaker 開啟期間不取出資料，留在 outbox 等待恢復；每批取出前都會檢查
+ * 5.被 circuit breaker 或 bulkhead 拒絕的資料直接解除鎖定，不計入重試次數
+ */
+@Component
+@ConditionalOnProperty(prefix = "keycloak.outbox", name = "enabled", havingValue = "true")
+public class KeycloakProvisioningWorker implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(KeycloakProvisioningWorker.class);
+
+    private final KeycloakOutbox outbox;
+    private final ReactiveKeycloakService keycloakService;
+    private final KeycloakCallMetrics callMetrics;
+    private final KeycloakCircuitBreaker circuitBreaker;
+    private final RoleStrategy roleStrategy;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int workers;
+
+    private final LongAdder provisioned = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder deferred = new LongAdder();
+    private volatile Backlog backlog;
+    private volatile long parked;
+
+    public KeycloakProvisioningWorker(KeycloakOutbox outbox, ReactiveKeycloakService keycloakService, KeycloakCallMetrics callMetrics,
+                                      KeycloakCircuitBreaker circuitBreaker, RoleStrategy roleStrategy, UserRepository userRepository, TransactionTemplate transactionTemplate,
+                                      KeycloakProperties properties) {
+        this.outbox = outbox;
+        this.keycloakService = keycloakService;
+        this.callMetrics = callMetrics;
+        this.circuitBreaker = circuitBreaker;
+        this.roleStrategy = roleStrategy;
+        this.userRepository = userRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = properties.getOutbox().getBatchSize();
+        this.workers = properties.getOutbox().getWorkers();
+    }
+
+    /**
+     * 取出到期的資料逐批處理，直到沒有滿批為止
+     * @return 處理筆數
+     */
+    @Scheduled(fixedDelayString = "${keycloak.outbox.poll-interval:PT1S}")
+    public int drain() {
+        int total = 0;
+        List<OutboxTask> batch;
+        do {
+            if (!circuitBreaker.isCallPermitted()) {
+                // Keycloak 無法使用時不取出，避免消耗重試次數
+                break;
+            }
+            batch = outbox.claim(batchSize);
+            Flux.fromIterable(batch)
+                    .flatMap(this::provision, workers)
+                    .then()
+                    .block();
+            total += batch.size();
+        } while (batch.size() >= batchSize);
+
+        backlog = outbox.backlog();
+        parked = outbox.parked();
+        return total;
+    }
+
+    private Mono<Void> provision(OutboxTask task) {
+        return Mono.fromCallable(() -> userRepository.existsById(task.getUserId()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(exists -> {
+                    if (!exists) {
+                        log.info("User {} was deleted before provisioning, dropping outbox entry", task.getUsername());
+                        return Mono.fromRunnable(() -> outbox.complete(task.getUserId()));
+                    }
+                    return callMetrics.measureRegistration(keycloakService.provisionUser(task.getUsername())
+                                    .flatMap(user -> keycloakService.assignRoles(user.getUserId(), roleStrategy.getDefaultRoles(task.getUsername()))
+                                            .thenReturn(user)))
+                            .publishOn(Schedulers.boundedElastic())
+                            .doOnNext(user -> markCompleted(task, user))
+                            .then();
+                })
+                .onErrorResume(e -> Mono.<Void>fromRunnable(() -> onFailure(task, e))
+                        .subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    private void markCompleted(OutboxTask task, ProvisionedKeycloakUser keycloakUser) {
+        String keycloakUserId = keycloakUser.getUserId();
+        boolean completed = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            outbox.complete(task.getUserId());
+            AppUser user = userRepository.findById(task.getUserId()).orElse(null);
+            if (user == null) {
+                return false;
+            }
+            user.setKeycloakUserId(keycloakUserId);
+            user.setRegistrationStatus(RegistrationStatus.COMPLETED);
+            userRepository.save(user);
+            return true;
+        }));
+        if (completed) {
+            provisioned.increment();
+            log.info("Provisioned Keycloak user {} for {}", keycloakUserId, task.getUsername());
+        } else if (!keycloakUser.isCreated()) {
+            log.info("User {} was deleted during provisioning, keeping pre-existing Keycloak user {}", task.getUsername(), keycloakUserId);
+        } else {
+            log.info("User {} was deleted during provisioning, removing Keycloak user {}", task.getUsername(), keycloakUserId);
+            keycloakService.deleteUser(keycloakUserId)
+                    .subscribe(null, e -> log.error("Failed to remove Keycloak user {}: {}", keycloakUserId, e.getMessage()));
+        }
+    }
+
+    /**
+     * 放棄重試（parked）與用戶改為 PROVISIONING_FAILED 在同一個 transaction
+     */
+    private void onFailure(OutboxTask task, Throwable e) {
+        if (KeycloakUnavailableException.isCause(e)) {
+            // 沒有實際呼叫到 Keycloak，保留重試次數
+            outbox.release(task);
+            deferred.increment();
+            log.info("Provisioning {} deferred, Keycloak unavailable: {}", task.getUsername(), e.getMessage());
+            return;
+        }
+        boolean retrying = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            if (outbox.retryLater(task, e.getMessage())) {
+                return true;
+            }
+            userRepository.findById(task.getUserId()).ifPresent(user -> {
+                user.setRegistrationStatus(RegistrationStatus.PROVISIONING_FAILED);
+                userRepository.save(user);
+            });
+            return false;
+        }));
+        if (retrying) {
+            retries.increment();
+            log.warn("Provisioning {} failed (attempt {}), will retry: {}", task.getUsername(), task.getAttempts() + 1, e.getMessage());
+            return;
+        }
+        failures.increment();
+        log.error("Provisioning {} failed after {} attempts, giving up", task.getUsername(), task.getAttempts() + 1, e);
+    }
+
+    /**
+     * 由 drain 排程更新；第一次 drain 之前才查詢一次
+     */
+    private Backlog backlog() {
+        Backlog current = backlog;
+        if (current == null) {
+            current = outbox.backlog();
+            backlog = current;
+        }
+        return current;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("keycloak.outbox.pending", this, worker -> worker.backlog().getPending())
+                .description("Registrations waiting for Keycloak provisioning")
+                .register(registry);
+        Gauge.builder("keycloak.outbox.lag", this, worker -> worker.backlog().getLag().toMillis() / 1000.0)
+                .description("Age in seconds of the oldest registration waiting for Keycloak provisioning")
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("keycloak.outbox.parked", this, worker -> worker.parked)
+                .description("Registrations that exceeded the provisioning retry limit")
+                .register(registry);
+        FunctionCounter.builder("keycloak.outbox.provisioned", provisioned, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("keycloak.outbox.retries", retries, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("keycloak.outbox.failures", failures, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("keycloak.outbox.deferred", deferred, LongAdder::sum)
+                .description("Provisioning attempts rejected by the circuit breaker or bulkhead, not counted as attempts")
+                .register(registry);
+    }
+}
@@ -0,0 +1,66 @@
+package com.webauthn.app.service;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Optional;
+
+import com.webauthn.app.configuration.KeycloakProperties;
+import com.webauthn.app.infrastructure.cache.ExpiringCache;
+
+/**
+ * username → Keycloak userId 的查詢結果快取，包含查無此人
+ * 1.建立帳號取得的 id 與 exact 查詢結果都放入，查無結果以較短的 negative-ttl 保留
+ * 2.刪除時依 username 或 userId 移除（另存 userId → username 反查）
+ * 3.Keycloak 的 username 不分大小寫，key 一律小寫
+ */
+class KeycloakUserIdCache {
+    private final ExpiringCache<String, Optional<String>> idByUsername;
+    private final ExpiringCache<String, String> usernameById;
+    private final Duration negativeTtl;
+
+    KeycloakUserIdCache(KeycloakProperties.UserIdCache properties) {
+        this.idByUsername = new ExpiringCache<>(properties.getTtl(), properties.getMaxEntries());
+        this.usernameById = new ExpiringCache<>(properties.getTtl(), properties.getMaxEntries());
+        this.negativeTtl = properties.getNegativeTtl();
+    }
+
+    /**
+     * @return null 表示未快取；Optional.empty() 表示已知 Keycloak 沒有此用戶
+     */
+    Optional<String> get(String username) {
+        return idByUsername.get(key(username));
+    }
+
+    void put(String username, String userId) {
+        idByUsername.put(key(username), Optional.of(userId));
+        usernameById.put(userId, key(username));
+    }
+
+    void putMissing(String username) {
+        idByUsername.put(key(username), Optional.empty(), negativeTtl);
+    }
+
+    void evictUsername(String username) {
+        Optional<String> cached = idByUsername.get(key(username));
+        idByUsername.remove(key(username));
+        if (cached != null) {
+            cached.ifPresent(usernameById::remove);
+        }
+    }
+
+    void evictUserId(String userId) {
+        String username = usernameById.get(userId);
+        usernameById.remove(userId);
+        if (username != null) {
+            idByUsername.remove(username);
+        }
+    }
+
+    ExpiringCache<String, Optional<String>> cache() {
+        return idByUsername;
+    }
+
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+}
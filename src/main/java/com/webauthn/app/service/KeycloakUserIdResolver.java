@@ -0,0 +1,49 @@
+package com.webauthn.app.service;
+
+import java.util.Optional;
+
+import com.webauthn.app.infrastructure.cache.ExpiringCache;
+import com.webauthn.app.infrastructure.cache.ExpiringCacheMetrics;
+import com.webauthn.app.user.UserRepository;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * 由 username 取得 Keycloak userId
+ * 1.先查本地 AppUser.keycloakUserId
+ * 2.沒有時由 ReactiveKeycloakService.getUserId 查詢，結果（含查無此人）由 KeycloakUserIdCache 保留
+ */
+@Component
+public class KeycloakUserIdResolver implements MeterBinder {
+    private final UserRepository userRepository;
+    private final ReactiveKeycloakService keycloakService;
+
+    public KeycloakUserIdResolver(UserRepository userRepository, ReactiveKeycloakService keycloakService) {
+        this.userRepository = userRepository;
+        this.keycloakService = keycloakService;
+    }
+
+    /**
+     * @return Keycloak 沒有此用戶時為 empty
+     */
+    public Mono<String> resolve(String username) {
+        return Mono.fromCallable(() -> userRepository.findKeycloakUserIdByUsername(username))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(local -> local.map(Mono::just).orElseGet(() -> keycloakService.getUserId(username)));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        ExpiringCache<String, Optional<String>> cache = keycloakService.userIdCache();
+        if (cache != null) {
+            new ExpiringCacheMetrics(cache, "keycloak.user-id", Tags.empty()).bindTo(registry);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.webauthn.app.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 建立 Keycloak 帳號的結果
+ */
+@Getter
+@AllArgsConstructor
+public class ProvisionedKeycloakUser {
+    private final String userId;
+    /**
+     * true：這次呼叫建立的帳號；false：Keycloak 已有的帳號，不屬於這次呼叫，rollback 時不可刪除
+     */
+    private final boolean created;
+}
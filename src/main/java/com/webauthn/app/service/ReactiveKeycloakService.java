@@ -0,0 +1,409 @@
+package com.webauthn.app.service;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.webauthn.app.configuration.KeycloakProperties;
+import com.webauthn.app.exception.KeycloakUnavailableException;
+import com.webauthn.app.infrastructure.cache.ExpiringCache;
+import com.webauthn.app.infrastructure.retry.RetryEngine;
+import com.webauthn.app.infrastructure.retry.RetryPolicy;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Keycloak Admin API 的非阻塞實作，所有方法回傳 Mono，不會 block 呼叫端 thread
+ * 重試以 Reactor timer 延遲，不占用 thread 等待
+ */
+@Service
+public class ReactiveKeycloakService {
+    private static final Logger log = LoggerFactory.getLogger(ReactiveKeycloakService.class);
+
+    private final WebClient webClient;
+    private final KeycloakProperties properties;
+    // keycloak.role-cache.enabled=false 時為 null
+    private final RealmRoleCache roleCache;
+    // keycloak.user-id-cache.enabled=false 時為 null
+    private final KeycloakUserIdCache userIdCache;
+    private final AdminTokenManager tokenManager = new AdminTokenManager(this::fetchAdminToken);
+    private final RetryEngine retryEngine;
+    private final RetryPolicy createUserRetry;
+
+    public ReactiveKeycloakService(KeycloakProperties properties, KeycloakCallMetrics callMetrics, KeycloakHttpClient httpClient,
+                                   KeycloakCircuitBreaker circuitBreaker, RetryEngine retryEngine) {
+        this.properties = properties;
+        this.retryEngine = retryEngine;
+        this.createUserRetry = RetryPolicy.builder()
+                .maxAttempts(properties.getRetry().getMaxAttempts())
+                .initialBackoff(properties.getRetry().getInitialBackoff())
+                .maxBackoff(properties.getRetry().getMaxBackoff())
+                .jitter(properties.getRetry().getJitter())
+                .maxElapsed(properties.getRetry().getMaxElapsed())
+                .retryOn(ReactiveKeycloakService::isRetryable)
+                .build();
+        this.webClient = WebClient.builder()
+                .baseUrl(properties.getServerUrl())
+                .clientConnector(httpClient.connector())
+                .filter(callMetrics.filter())
+                // timeout 在 circuit breaker 內側，才會被計為失敗
+                .filter(circuitBreaker.filter())
+                .filter(httpClient.filter())
+                .build();
+        this.roleCache = properties.getRoleCache().isEnabled()
+                ? new RealmRoleCache(this::fetchRealmRoles, properties.getRoleCache().getTtl())
+                : null;
+        this.userIdCache = properties.getUserIdCache().isEnabled()
+                ? new KeycloakUserIdCache(properties.getUserIdCache())
+                : null;
+    }
+
+    /**
+     * 取得 Admin Token，由 AdminTokenManager 共用與背景更新
+     */
+    public Mono<String> getAdminToken() {
+        return tokenManager.token();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        tokenManager.close();
+    }
+
+    private Mono<AdminTokenManager.IssuedToken> fetchAdminToken() {
+        // 使用 client_credentials grant type（推薦用於服務間認證）
+        return webClient.post()
+                .uri("/realms/{realm}/protocol/openid-connect/token", properties.getRealm())
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .body(BodyInserters.fromFormData("grant_type", "client_credentials")
+                        .with("client_id", properties.getClientId())
+                        .with("client_secret", properties.getClientSecret()))
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .map(response -> {
+                    int expiresIn = response.get("expires_in").asInt();
+                    log.info("成功取得 Admin Token (expires in: {}s)", expiresIn);
+                    return new AdminTokenManager.IssuedToken(response.get("access_token").asText(), Duration.ofSeconds(expiresIn));
+                })
+                .onErrorMap(e -> {
+                    log.error("Failed to obtain admin token from Keycloak: {}", e.getMessage());
+                    return new RuntimeException("Failed to authenticate with Keycloak", e);
+                });
+    }
+
+    /**
+     * 建立 user，已存在（409）時查出現有 userId；失敗由 RetryEngine 以 jitter 退避重試
+     * 重試的 POST 若前一次其實已建立成功，會得到 409 並查出 userId，因此重試是安全的
+     */
+    public Mono<String> createUserWithRetry(String username) {
+        return provisionUserWithRetry(username).map(ProvisionedKeycloakUser::getUserId);
+    }
+
+    /**
+     * 同 createUserWithRetry，另外回報帳號是否由這次呼叫建立，供失敗時判斷是否 rollback
+     * 前一次 POST 其實已成功、重試得到 409 時視為既有帳號（寧可留下帳號，也不刪除別人的帳號）
+     */
+    public Mono<ProvisionedKeycloakUser> provisionUserWithRetry(String username) {
+        return retryEngine.retry("keycloak.createUser", createUserRetry, provisionUser(username))
+                .onErrorMap(e -> !KeycloakUnavailableException.isCause(e), e -> {
+                    log.error("Failed to create user {} in Keycloak", username, e);
+                    return new RuntimeException("Failed to create user in Keycloak after retries: " + username, e);
+                });
+    }
+
+    /**
+     * 5xx、timeout、連線錯誤可重試；circuit breaker 拒絕與 409 以外的 4xx（429 除外）不重試
+     */
+    private static boolean isRetryable(Throwable e) {
+        if (KeycloakUnavailableException.isCause(e)) {
+            return false;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof WebClientResponseException response) {
+                return !response.getStatusCode().is4xxClientError() || response.getStatusCode().value() == 429;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 檢查 Keycloak 是否已有 user
+     */
+    public Mono<Boolean> userExists(String username) {
+        return getUserId(username)
+                .hasElement()
+                .onErrorMap(e -> new RuntimeException("Failed to check user existence in Keycloak", e));
+    }
+
+    /**
+     * 取得用戶的 userId，不存在時為 empty
+     * 先查 KeycloakUserIdCache（含查無此人的結果），miss 時才查詢 Keycloak
+     */
+    public Mono<String> getUserId(String username) {
+        return Mono.defer(() -> {
+            if (userIdCache == null) {
+                return lookupUserId(username);
+            }
+            Optional<String> cached = userIdCache.get(username);
+            if (cached != null) {
+                return Mono.justOrEmpty(cached);
+            }
+            return lookupUserId(username);
+        });
+    }
+
+    /**
+     * 直接查詢 Keycloak 並更新快取
+     * 以 exact 查詢，避免 users?username= 的模糊搜尋回傳名稱相近的其他用戶
+     */
+    private Mono<String> lookupUserId(String username) {
+        Mono<String> lookup = getAdminToken().flatMap(token -> webClient.get()
+                .uri("/admin/realms/{realm}/users?username={username}&exact=true&briefRepresentation=true",
+                        properties.getRealm(), username)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                .retrieve()
+                .bodyToFlux(JsonNode.class)
+                // Keycloak 的 username 不分大小寫
+                .filter(user -> username.equalsIgnoreCase(user.path("username").asText(username)))
+                .next()
+                .map(user -> user.get("id").asText()));
+        if (userIdCache == null) {
+            return lookup;
+        }
+        return lookup
+                .doOnNext(userId -> userIdCache.put(username, userId))
+                .switchIfEmpty(Mono.fromRunnable(() -> userIdCache.putMissing(username)));
+    }
+
+    /**
+     * 供 KeycloakUserIdResolver 公開快取統計，未啟用時為 null
+     */
+    ExpiringCache<String, Optional<String>> userIdCache() {
+        return userIdCache == null ? null : userIdCache.cache();
+    }
+
+    /**
+     * 建立 Keycloak user，userId 取自回應的 Location header；已存在（409）時查出現有 userId
+     */
+    public Mono<String> createUser(String username) {
+        return provisionUser(username).map(ProvisionedKeycloakUser::getUserId);
+    }
+
+    /**
+     * 同 createUser，另外回報帳號是否由這次 POST 建立
+     * 2xx 為新建（缺少 Location 時查出的 id 仍是剛建立的帳號），409 為既有帳號
+     */
+    public Mono<ProvisionedKeycloakUser> provisionUser(String username) {
+        log.info("Creating user in Keycloak: {}", username);
+        Map<String, Object> payload = Map.of(
+                "username", username,
+                "enabled", true
+        );
+        return getAdminToken()
+                .flatMap(token -> webClient.post()
+                        .uri("/admin/realms/{realm}/users", properties.getRealm())
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                        .bodyValue(payload)
+                        .retrieve()
+                        .toBodilessEntity())
+                .flatMap(response -> {
+                    String userId = userIdFromLocation(response.getHeaders().getLocation());
+                    return userId != null ? Mono.just(userId) : lookupUserId(username);
+                })
+                .doOnNext(userId -> log.info("User created successfully in Keycloak: {} with userId: {}", username, userId))
+                .map(userId -> new ProvisionedKeycloakUser(userId, true))
+                // 快取中可能是建立前「查無此人」的結果，409 時直接查詢
+                .onErrorResume(WebClientResponseException.Conflict.class, e -> lookupUserId(username)
+                        .doOnNext(userId -> log.info("User {} already exists in Keycloak, skipping creation", username))
+                        .map(userId -> new ProvisionedKeycloakUser(userId, false)))
+                .doOnNext(user -> {
+                    if (userIdCache != null) {
+                        userIdCache.put(username, user.getUserId());
+                    }
+                })
+                .switchIfEmpty(Mono.error(() -> new RuntimeException("User created but userId not found")))
+                .onErrorMap(e -> {
+                    log.error("Failed to create user in Keycloak: {}", username, e);
+                    return new RuntimeException("Failed to create user in Keycloak: " + username, e);
+                });
+    }
+
+    /**
+     * Location: .../admin/realms/{realm}/users/{id}
+     */
+    private static String userIdFromLocation(URI location) {
+        if (location == null || location.getPath() == null) {
+            return null;
+        }
+        String path = location.getPath();
+        String id = path.substring(path.lastIndexOf('/') + 1);
+        return id.isEmpty() ? null : id;
+    }
+
+    /**
+     * 指派多個 Realm Roles 給 user
+     * 角色由 RealmRoleCache 提供；role mapping 因角色已刪除重建而被拒（404）時重載快取並重試一次
+     */
+    public Mono<Void> assignRoles(String userId, List<String> roleNames) {
+        if (roleNames == null || roleNames.isEmpty()) {
+            log.warn("No roles to assign for userId: {}", userId);
+            return Mono.empty();
+        }
+        Mono<Void> assignment = roleCache == null
+                ? getAdminToken().flatMap(token -> fetchRoles(token, userId, roleNames)
+                        .flatMap(rolePayloads -> postRoleMappings(token, userId, rolePayloads)))
+                : getAdminToken().flatMap(token -> roleCache.resolve(roleNames)
+                        .flatMap(rolePayloads -> postRoleMappings(token, userId, rolePayloads))
+                        .onErrorResume(WebClientResponseException.NotFound.class, e -> {
+                            log.warn("Role mapping rejected for userId {}, reloading realm roles and retrying once", userId);
+                            roleCache.invalidate();
+                            return roleCache.resolve(roleNames)
+                                    .flatMap(rolePayloads -> postRoleMappings(token, userId, rolePayloads));
+                        }));
+        return assignment.onErrorMap(WebClientException.class, e -> {
+            log.error("Failed to assign roles to userId {}: {}", userId, e.getMessage());
+            return new RuntimeException("Failed to assign roles", e);
+        });
+    }
+
+    /**
+     * 背景更新 realm role 快取；尚未載入過（未曾註冊）時不主動呼叫 Keycloak
+     */
+    @Scheduled(fixedDelayString = "${keycloak.role-cache.refresh-interval:PT5M}")
+    public void refreshRoles() {
+        if (roleCache == null || !roleCache.isLoaded()) {
+            return;
+        }
+        roleCache.reload().subscribe(null, e -> log.warn("Failed to refresh realm roles: {}", e.getMessage()));
+    }
+
+    /**
+     * 一次取得 realm 的所有角色
+     */
+    private Mono<List<JsonNode>> fetchRealmRoles() {
+        return getAdminToken().flatMap(token -> webClient.get()
+                .uri("/admin/realms/{realm}/roles?briefRepresentation=true", properties.getRealm())
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                .retrieve()
+                .bodyToFlux(JsonNode.class)
+                .collectList());
+    }
+
+    /**
+     * 逐一查特定 realm role 取得 roleId（未啟用快取時）
+     */
+    private Mono<List<Map<String, Object>>> fetchRoles(String token, String userId, List<String> roleNames) {
+        return Flux.fromIterable(roleNames)
+                .concatMap(roleName -> webClient.get()
+                        .uri("/admin/realms/{realm}/roles/{role}", properties.getRealm(), roleName)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                        .retrieve()
+                        .bodyToMono(JsonNode.class)
+                        .filter(role -> role.has("id") && role.has("name"))
+                        .map(role -> Map.<String, Object>of(
+                                "id", role.get("id").asText(),
+                                "name", role.get("name").asText()))
+                        .switchIfEmpty(Mono.fromRunnable(() -> log.error("Role {} not found in Keycloak realm {}", roleName, properties.getRealm())))
+                        .onErrorMap(e -> {
+                            log.error("Failed to fetch role {} for userId {}: {}", roleName, userId, e.getMessage());
+                            return new RuntimeException("Failed to fetch role: " + roleName, e);
+                        }))
+                .collectList();
+    }
+
+    /**
+     * 批次指派角色
+     */
+    private Mono<Void> postRoleMappings(String token, String userId, List<Map<String, Object>> rolePayloads) {
+        if (rolePayloads.isEmpty()) {
+            return Mono.error(new RuntimeException("No valid roles found to assign"));
+        }
+        return webClient.post()
+                .uri("/admin/realms/{realm}/users/{id}/role-mappings/realm", properties.getRealm(), userId)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                .bodyValue(rolePayloads)
+                .retrieve()
+                .toBodilessEntity()
+                .doOnNext(response -> log.info("Successfully assigned {} roles to userId: {}", rolePayloads.size(), userId))
+                .then();
+    }
+
+    /**
+     * 以 realm partial import 一次建立多個用戶（含 realmRoles），已存在的用戶略過
+     * Keycloak 對整個請求是單一 transaction，任一用戶有誤時整批失敗
+     * @param users UserRepresentation（username、enabled、realmRoles）
+     * @return PartialImportResults
+     */
+    public Mono<JsonNode> partialImport(List<Map<String, Object>> users) {
+        Map<String, Object> payload = Map.of(
+                "ifResourceExists", "SKIP",
+                "users", users
+        );
+        return getAdminToken().flatMap(token -> webClient.post()
+                .uri("/admin/realms/{realm}/partialImport", properties.getRealm())
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                .bodyValue(payload)
+                .retrieve()
+                .bodyToMono(JsonNode.class));
+    }
+
+    /**
+     * 刪除 Keycloak 用戶（用於 rollback）
+     */
+    public Mono<Void> deleteUser(String userId) {
+        log.info("Deleting user from Keycloak by userId: {}", userId);
+        return getAdminToken()
+                .flatMap(token -> webClient.delete()
+                        .uri("/admin/realms/{realm}/users/{id}", properties.getRealm(), userId)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                        .retrieve()
+                        .toBodilessEntity())
+                .doOnNext(response -> log.info("Successfully deleted user from Keycloak: {}", userId))
+                .doOnTerminate(() -> {
+                    if (userIdCache != null) {
+                        userIdCache.evictUserId(userId);
+                    }
+                })
+                .onErrorMap(e -> {
+                    log.error("Failed to delete user from Keycloak: {}", userId, e);
+                    return new RuntimeException("Failed to delete user from Keycloak: " + userId, e);
+                })
+                .then();
+    }
+
+    /**
+     * 根據 username 刪除 Keycloak 用戶
+     */
+    public Mono<Void> deleteUserByUsername(String username) {
+        log.info("Deleting user from Keycloak by username: {}", username);
+        return getUserId(username)
+                .switchIfEmpty(Mono.error(() -> new RuntimeException("User " + username + " not found in Keycloak")))
+                .flatMap(this::deleteUser)
+                .doOnTerminate(() -> {
+                    if (userIdCache != null) {
+                        userIdCache.evictUsername(username);
+                    }
+                })
+                .onErrorMap(e -> {
+                    log.error("Failed to delete user by username from Keycloak: {}", username, e);
+                    return new RuntimeException("Failed to delete user from Keycloak: " + username, e);
+                });
+    }
+}
@@ -0,0 +1,119 @@
+package com.webauthn.app.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Realm role representation 快取，assignRoles 不必每次逐一查詢角色
+ * 1.miss（未載入或過期）時以一次呼叫載入整個 realm 的角色
+ *   snapshot 中沒有的角色視為 realm 沒有此角色，記錄一次後略過，不因此重載；新增的角色在下次更新後生效
+ * 2.同時只有一個載入在進行，其他呼叫共用結果；miss 取得載入權後再檢查一次 snapshot，前一個載入剛完成時直接使用
+ * 3.由排程在過期前背景更新；角色被刪除重建時由呼叫端 invalidate 後重載
+ */
+class RealmRoleCache {
+    private static final Logger log = LoggerFactory.getLogger(RealmRoleCache.class);
+
+    private final Supplier<Mono<List<JsonNode>>> loader;
+    private final Duration ttl;
+    private final SingleFlight<Snapshot> loading = new SingleFlight<>();
+
+    private volatile Snapshot snapshot;
+
+    RealmRoleCache(Supplier<Mono<List<JsonNode>>> loader, Duration ttl) {
+        this.loader = loader;
+        this.ttl = ttl;
+    }
+
+    /**
+     * @return 依 roleNames 順序的 {id, name}，找不到的角色記錄錯誤後略過
+     */
+    Mono<List<Map<String, Object>>> resolve(List<String> roleNames) {
+        return Mono.defer(() -> {
+            Snapshot current = fresh();
+            if (current != null) {
+                return Mono.just(current.select(roleNames));
+            }
+            return loading.execute(() -> {
+                Snapshot loaded = fresh();
+                return loaded != null ? Mono.just(loaded) : load();
+            }).map(loaded -> loaded.select(roleNames));
+        });
+    }
+
+    /**
+     * 重新載入；已有載入在進行時共用同一個結果
+     */
+    Mono<Snapshot> reload() {
+        return loading.execute(this::load);
+    }
+
+    private Mono<Snapshot> load() {
+        return loader.get()
+                .map(roles -> new Snapshot(roles, System.nanoTime() + ttl.toNanos()))
+                .doOnNext(loaded -> {
+                    snapshot = loaded;
+                    log.info("Loaded {} realm roles from Keycloak", loaded.roles.size());
+                });
+    }
+
+    private Snapshot fresh() {
+        Snapshot current = snapshot;
+        return current != null && !current.isExpired() ? current : null;
+    }
+
+    void invalidate() {
+        snapshot = null;
+    }
+
+    boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    static final class Snapshot {
+        private final Map<String, Map<String, Object>> roles;
+        private final long expiresAt;
+        // 已記錄過找不到的角色，每個 snapshot 只記錄一次
+        private final Set<String> reportedMissing = ConcurrentHashMap.newKeySet();
+
+        private Snapshot(List<JsonNode> representations, long expiresAt) {
+            this.roles = representations.stream()
+                    .filter(role -> role.has("id") && role.has("name"))
+                    .collect(Collectors.toUnmodifiableMap(role -> role.get("name").asText(),
+                            role -> Map.of("id", role.get("id").asText(), "name", role.get("name").asText()),
+                            (first, second) -> first));
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return System.nanoTime() - expiresAt >= 0;
+        }
+
+        private List<Map<String, Object>> select(List<String> roleNames) {
+            List<Map<String, Object>> selected = new ArrayList<>(roleNames.size());
+            for (String roleName : roleNames) {
+                Map<String, Object> role = roles.get(roleName);
+                if (role == null) {
+                    if (reportedMissing.add(roleName)) {
+                        log.error("Role {} not found in Keycloak realm, skipping it until the role cache is refreshed", roleName);
+                    }
+                } else {
+                    selected.add(role);
+                }
+            }
+            return selected;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.webauthn.app.service;
+
+import com.webauthn.app.configuration.WebAuthProperties;
+import com.webauthn.app.infrastructure.ceremony.RegistrationCeremonyState;
+import com.yubico.webauthn.RelyingParty;
+import com.yubico.webauthn.StartRegistrationOptions;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import com.yubico.webauthn.data.RegistrationExtensionInputs;
+import com.yubico.webauthn.data.UserIdentity;
+import org.springframework.stereotype.Component;
+
+/**
+ * 產生與重建註冊用的 PublicKeyCredentialCreationOptions
+ * 暫存時只保留 RegistrationCeremonyState（challenge、user handle、profile id），完成註冊時再重建完整 options
+ */
+@Component
+public class RegistrationOptionsFactory {
+    private final RelyingParty relyingParty;
+    private final long timeoutMillis;
+
+    public RegistrationOptionsFactory(RelyingParty relyingParty, WebAuthProperties properties) {
+        this.relyingParty = relyingParty;
+        this.timeoutMillis = properties.getCeremony().getTimeout().toMillis();
+    }
+
+    public PublicKeyCredentialCreationOptions create(UserIdentity user, RegistrationProfile profile) {
+        StartRegistrationOptions registrationOptions = StartRegistrationOptions.builder()
+                .user(user)
+                .authenticatorSelection(profile.getAuthenticatorSelection())
+                .timeout(timeoutMillis) // 與暫存 TTL 一致
+                .build();
+        return relyingParty.startRegistration(registrationOptions);
+    }
+
+    /**
+     * 依暫存狀態重建 options
+     * 欄位與 RelyingParty.startRegistration 一致；excludeCredentials 不參與驗證，不重建以省一次查詢
+     */
+    public PublicKeyCredentialCreationOptions rebuild(UserIdentity user, RegistrationCeremonyState state) {
+        RegistrationProfile profile = RegistrationProfile.fromId(state.getProfileId());
+        PublicKeyCredentialCreationOptions.PublicKeyCredentialCreationOptionsBuilder builder = PublicKeyCredentialCreationOptions.builder()
+                .rp(relyingParty.getIdentity())
+                .user(user)
+                .challenge(state.getChallenge())
+                .pubKeyCredParams(relyingParty.getPreferredPubkeyParams())
+                .authenticatorSelection(profile.getAuthenticatorSelection())
+                .extensions(RegistrationExtensionInputs.builder()
+                        .appidExclude(relyingParty.getAppId())
+                        .credProps()
+                        .build())
+                .timeout(timeoutMillis);
+        relyingParty.getAttestationConveyancePreference().ifPresent(builder::attestation);
+        return builder.build();
+    }
+
+    public static RegistrationCeremonyState toState(PublicKeyCredentialCreationOptions options, RegistrationProfile profile) {
+        return new RegistrationCeremonyState(profile.getId(), options.getChallenge(), options.getUser().getId());
+    }
+}
@@ -0,0 +1,42 @@
+package com.webauthn.app.service;
+
+import com.yubico.webauthn.data.AuthenticatorAttachment;
+import com.yubico.webauthn.data.AuthenticatorSelectionCriteria;
+import com.yubico.webauthn.data.UserVerificationRequirement;
+
+/**
+ * 註冊設定檔
+ * ceremony 暫存時只記錄 id，完成註冊時依 id 重建相同的 authenticatorSelection
+ * id 會寫入暫存資料，已使用的 id 不可變更
+ */
+public enum RegistrationProfile {
+    CROSS_PLATFORM(1, AuthenticatorSelectionCriteria.builder()
+            .authenticatorAttachment(AuthenticatorAttachment.CROSS_PLATFORM) // 外部裝置 (手機、YubiKey)
+            .userVerification(UserVerificationRequirement.PREFERRED)       // 可以 PIN / 生物辨識
+            .build());
+
+    private final int id;
+    private final AuthenticatorSelectionCriteria authenticatorSelection;
+
+    RegistrationProfile(int id, AuthenticatorSelectionCriteria authenticatorSelection) {
+        this.id = id;
+        this.authenticatorSelection = authenticatorSelection;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public AuthenticatorSelectionCriteria getAuthenticatorSelection() {
+        return authenticatorSelection;
+    }
+
+    public static RegistrationProfile fromId(int id) {
+        for (RegistrationProfile profile : values()) {
+            if (profile.id == id) {
+                return profile;
+            }
+        }
+        throw new IllegalArgumentException("Unknown registration profile: " + id);
+    }
+}
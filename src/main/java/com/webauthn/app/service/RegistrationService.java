@@ -3,14 +3,16 @@ package com.webauthn.app.service;
 import com.webauthn.app.authenticator.Authenticator;
 import com.webauthn.app.common.api.RestResult;
 import com.webauthn.app.exception.AppRegistrationException;
+import com.webauthn.app.exception.KeycloakUnavailableException;
 import com.webauthn.app.infrastructure.cache.WebAuthnRequestCache;
+import com.webauthn.app.infrastructure.ceremony.RegistrationCeremonyState;
+import com.webauthn.app.infrastructure.outbox.KeycloakOutbox;
 import com.webauthn.app.infrastructure.repository.RegistrationRepository;
 import com.webauthn.app.rq.FinishRegisrationRequest;
 import com.webauthn.app.rs.FinishRegistrationResponse;
 import com.webauthn.app.strategy.RoleStrategy;
 import com.webauthn.app.user.AppUser;
 import com.webauthn.app.user.RegistrationStatus;
-import com.webauthn.app.web.AuthController;
 import com.yubico.webauthn.FinishRegistrationOptions;
 import com.yubico.webauthn.RegistrationResult;
 import com.yubico.webauthn.RelyingParty;
@@ -23,32 +25,50 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 public class RegistrationService {
-    private static final Logger log = LoggerFactory.getLogger(AuthController.class);
+    private static final Logger log = LoggerFactory.getLogger(RegistrationService.class);
     private final RelyingParty relyingParty;
     private final RegistrationRepository registrationRepository;
     private final WebAuthnRequestCache webAuthnRequestCache;
     private final KeycloakService keycloakService;
     private final RoleStrategy roleStrategy;
-
+    private final RegistrationOptionsFactory registrationOptionsFactory;
+    private final ReactiveKeycloakService reactiveKeycloakService;
+    private final KeycloakCallMetrics keycloakCallMetrics;
+    private final TransactionTemplate transactionTemplate;
+    // keycloak.outbox.enabled=false 時為 null
+    private final KeycloakOutbox keycloakOutbox;
+    private final KeycloakCircuitBreaker keycloakCircuitBreaker;
 
     @Autowired
-    public RegistrationService(RelyingParty relyingPary,RegistrationRepository registrationRepository,WebAuthnRequestCache webAuthnRequestCache, KeycloakService keycloakService,RoleStrategy roleStrategy){
+    public RegistrationService(RelyingParty relyingPary,RegistrationRepository registrationRepository,WebAuthnRequestCache webAuthnRequestCache, KeycloakService keycloakService,RoleStrategy roleStrategy,RegistrationOptionsFactory registrationOptionsFactory,ReactiveKeycloakService reactiveKeycloakService,KeycloakCallMetrics keycloakCallMetrics,TransactionTemplate transactionTemplate,Optional<KeycloakOutbox> keycloakOutbox,KeycloakCircuitBreaker keycloakCircuitBreaker){
         this.relyingParty = relyingPary;
         this.registrationRepository = registrationRepository;
         this.webAuthnRequestCache = webAuthnRequestCache;
         this.keycloakService = keycloakService;
         this.roleStrategy = roleStrategy;
+        this.registrationOptionsFactory = registrationOptionsFactory;
+        this.reactiveKeycloakService = reactiveKeycloakService;
+        this.keycloakCallMetrics = keycloakCallMetrics;
+        this.transactionTemplate = transactionTemplate;
+        this.keycloakOutbox = keycloakOutbox.orElse(null);
+        this.keycloakCircuitBreaker = keycloakCircuitBreaker;
     }
 
     /**
      * 完成註冊
      * 1.取得前端user，判斷是否存在
-     * 2.取得傳給瀏覽器存在Cache的PublicKeyCredentialCreationOptions
+     * 2.取得Cache中的註冊狀態，重建傳給瀏覽器的PublicKeyCredentialCreationOptions
      * 3.驗證 WebAuthn 並儲存 Authenticator
      * 4.建立 Keycloak user，指派角色
      * 5.更新 user 狀態
@@ -57,37 +77,30 @@ public class RegistrationService {
      * @return
      */
     public FinishRegistrationResponse completeRegistration(FinishRegisrationRequest request) throws RegistrationFailedException {
-        // 1.取得前端user，判斷是否存在
-        String username = request.getUsername();
-        AppUser user = registrationRepository.getUserRepo().findByUsername(username);
-        if (user == null) {
-            throw new AppRegistrationException("用戶不存在");
+        if (keycloakOutbox != null) {
+            return completeRegistrationWithOutbox(request);
         }
-
-        // 2.取得傳給瀏覽器存在Cache的PublicKeyCredentialCreationOptions
-        PublicKeyCredentialCreationOptions requestOptions =webAuthnRequestCache.get(username);
-        if (requestOptions == null) {
-            throw new AppRegistrationException("cache 失敗，Try to register again!");
-        }
-
+        requireKeycloakAvailable();
+        String username = request.getUsername();
         Authenticator savedAuth = null;
-        String keycloakUserId = null;
+        AtomicReference<String> keycloakUserId = new AtomicReference<>();
 
         try {
+            // 1~2.取得前端user與Cache中的註冊狀態
+            PendingRegistration pending = loadPendingRegistration(request);
+
             // 3.驗證 WebAuthn 並儲存 Authenticator
-            savedAuth = verifyWebAuthnAndSaveAuthenticator(request, user, requestOptions);
+            savedAuth = verifyWebAuthnAndSaveAuthenticator(request, pending.user, pending.options);
 
             // 4.建立 Keycloak user 並指派角色
-            keycloakUserId = createKeycloakUserAndAssignRoles(username);
+            String userId = provisionKeycloakUser(username, keycloakUserId).block();
 
             // 5.更新 user 狀態
-            user.setKeycloakUserId(keycloakUserId);//儲存 for rollback角色指派失敗
-            user.setRegistrationStatus(RegistrationStatus.COMPLETED);
-            registrationRepository.getUserRepo().save(user);
+            markCompleted(pending.user, userId);
 
             return FinishRegistrationResponse.success(username);
         }catch (Exception e) {
-            rollbackAfterFailure(savedAuth,keycloakUserId);
+            rollbackAfterFailure(savedAuth,keycloakUserId.get());
             throw e;  // 交由 Controller 處理
         }finally {
             // 6.清理快取
@@ -95,6 +108,89 @@ public class RegistrationService {
         }
     }
 
+    /**
+     * 完成註冊（非阻塞版本），步驟與 completeRegistration 相同
+     * 1.DB 與 WebAuthn 驗證在 boundedElastic 執行
+     * 2.Keycloak 呼叫以 Mono 串接，等待回應與重試延遲期間不占用任何 thread
+     * 3.失敗時同樣 rollback Authenticator 與 Keycloak user
+     * 4.與請求的訂閱脫鉤：用戶端中斷連線時仍會完成（或 rollback），不會留下已寫入 Authenticator 卻仍為 PENDING 的用戶
+     */
+    public Mono<FinishRegistrationResponse> completeRegistrationAsync(FinishRegisrationRequest request) {
+        return completeRegistrationAsync(request, Schedulers.boundedElastic());
+    }
+
+    /**
+     * 同 completeRegistrationAsync，DB 等阻塞工作改在指定的 scheduler 執行（WebFlux 端點使用有上限的專用 scheduler）
+     */
+    public Mono<FinishRegistrationResponse> completeRegistrationAsync(FinishRegisrationRequest request, Scheduler blockingScheduler) {
+        if (keycloakOutbox != null) {
+            return Mono.fromCallable(() -> completeRegistrationWithOutbox(request)).subscribeOn(blockingScheduler);
+        }
+        String username = request.getUsername();
+        AtomicReference<Authenticator> savedAuth = new AtomicReference<>();
+        AtomicReference<String> keycloakUserId = new AtomicReference<>();
+
+        Mono<FinishRegistrationResponse> registration = Mono.fromCallable(() -> {
+                    PendingRegistration pending = loadPendingRegistration(request);
+                    savedAuth.set(verifyWebAuthnAndSaveAuthenticator(request, pending.user, pending.options));
+                    return pending.user;
+                })
+                .subscribeOn(blockingScheduler)
+                .flatMap(user -> provisionKeycloakUser(username, keycloakUserId)
+                        .publishOn(blockingScheduler)
+                        .map(userId -> {
+                            markCompleted(user, userId);
+                            return FinishRegistrationResponse.success(username);
+                        }))
+                .onErrorResume(e -> rollbackAfterFailureAsync(savedAuth.get(), keycloakUserId.get(), blockingScheduler).then(Mono.error(e)))
+                // 清理快取可能是 JDBC，不能在 Netty thread 執行；在結果送出之前完成
+                .publishOn(blockingScheduler)
+                .doOnTerminate(() -> webAuthnRequestCache.remove(username));
+        // 訂閱時、取出 challenge 之前才檢查 circuit；取消訂閱不會中斷已開始的註冊
+        return Mono.defer(() -> keycloakCircuitBreaker.isCallPermitted()
+                ? Mono.fromFuture(registration.toFuture(), true)
+                : Mono.error(keycloakUnavailable()));
+    }
+
+    /**
+     * Keycloak circuit breaker 開啟時，在驗證與寫入 Authenticator 之前就失敗，保留 challenge 讓用戶稍後重試
+     * 必須在 loadPendingRegistration 之前檢查：無狀態模式取出 challenge 即消耗 ceremonyToken 的 nonce
+     */
+    private void requireKeycloakAvailable() {
+        if (!keycloakCircuitBreaker.isCallPermitted()) {
+            throw keycloakUnavailable();
+        }
+    }
+
+    private static KeycloakUnavailableException keycloakUnavailable() {
+        return new KeycloakUnavailableException("Keycloak 暫時無法使用，請稍後再試");
+    }
+
+    /**
+     * 1.取得前端user，判斷是否存在
+     * 2.取得Cache中的註冊狀態，重建傳給瀏覽器的PublicKeyCredentialCreationOptions
+     */
+    private PendingRegistration loadPendingRegistration(FinishRegisrationRequest request) {
+        String username = request.getUsername();
+        AppUser user = registrationRepository.getUserRepo().findByUsername(username);
+        if (user == null) {
+            throw new AppRegistrationException("用戶不存在");
+        }
+
+        RegistrationCeremonyState state;
+        try {
+            state = webAuthnRequestCache.get(username, request.getCeremonyToken());
+        } catch (IllegalArgumentException e) {
+            // 暫存資料損毀或版本不符（例如升級前寫入），視同 cache 失效
+            log.warn("Discarding unreadable registration state for {}: {}", username, e.getMessage());
+            state = null;
+        }
+        if (state == null || !state.getUserHandle().equals(user.getHandle())) {
+            throw new AppRegistrationException("cache 失敗，Try to register again!");
+        }
+        return new PendingRegistration(user, registrationOptionsFactory.rebuild(user.toUserIdentity(), state));
+    }
+
     /**
      * 驗證 WebAuthn 並儲存 Authenticator
      * @param request
@@ -126,21 +222,63 @@ public class RegistrationService {
     }
 
     /**
-     * 建立 Keycloak user，指派角色
-     * @param username
-     * @return
+     * 完成註冊（outbox 模式）
+     * 1~3.同 completeRegistration，但 Authenticator、用戶狀態 PROVISIONING 與 outbox 在同一個 transaction 寫入
+     * 4.不等待 Keycloak，由 KeycloakProvisioningWorker 在背景建立帳號後改為 COMPLETED
      */
-    private String createKeycloakUserAndAssignRoles(String username) {
-        String keycloakUserId = keycloakService.createUserWithRetry(username);
+    private FinishRegistrationResponse completeRegistrationWithOutbox(FinishRegisrationRequest request) {
+        String username = request.getUsername();
+        try {
+            PendingRegistration pending = loadPendingRegistration(request);
+            transactionTemplate.executeWithoutResult(status -> {
+                try {
+                    verifyWebAuthnAndSaveAuthenticator(request, pending.user, pending.options);
+                } catch (RegistrationFailedException e) {
+                    throw new AppRegistrationException(e.getMessage(), e);
+                }
+                pending.user.setRegistrationStatus(RegistrationStatus.PROVISIONING);
+                registrationRepository.getUserRepo().save(pending.user);
+                keycloakOutbox.enqueue(pending.user.getId(), username);
+            });
+            log.info("Queued Keycloak provisioning for user: {}", username);
+            return FinishRegistrationResponse.provisioning(username);
+        } finally {
+            webAuthnRequestCache.remove(username);
+        }
+    }
+
+    /**
+     * 4.建立 Keycloak user 並指派角色，兩種模式共用
+     * 這次建立的 userId 一取得就先記下 for rollback角色指派失敗
+     * 409 查出的既有帳號不是這次建立的，不記下，失敗時不刪除
+     */
+    private Mono<String> provisionKeycloakUser(String username, AtomicReference<String> keycloakUserId) {
+        return keycloakCallMetrics.measureRegistration(reactiveKeycloakService.provisionUserWithRetry(username)
+                .doOnNext(user -> {
+                    if (user.isCreated()) {
+                        keycloakUserId.set(user.getUserId());
+                    }
+                })
+                .map(ProvisionedKeycloakUser::getUserId)
+                .flatMap(userId -> reactiveKeycloakService.assignRoles(userId, defaultRoles(username)).thenReturn(userId)));
+    }
 
+    private List<String> defaultRoles(String username) {
         List<String> defaultRoles = roleStrategy.getDefaultRoles(username);
-        if (defaultRoles != null && !defaultRoles.isEmpty()) {
-            keycloakService.assignRoles(keycloakUserId, defaultRoles);
-        } else {
+        if (defaultRoles == null || defaultRoles.isEmpty()) {
             log.warn("沒有預設的roles for user: {}", username);
+            return List.of();
         }
+        return defaultRoles;
+    }
 
-        return keycloakUserId;
+    /**
+     * 5.更新 user 狀態
+     */
+    private void markCompleted(AppUser user, String keycloakUserId) {
+        user.setKeycloakUserId(keycloakUserId);
+        user.setRegistrationStatus(RegistrationStatus.COMPLETED);
+        registrationRepository.getUserRepo().save(user);
     }
 
     /**
@@ -150,12 +288,7 @@ public class RegistrationService {
      */
     private void rollbackAfterFailure(Authenticator auth, String keycloakUserId) {
         if (auth != null) {
-            try {
-                registrationRepository.getAuthRepository().delete(auth);
-                log.info("Rolled back Authenticator");
-            } catch (Exception e) {
-                log.error("Failed to delete Authenticator during rollback", e);
-            }
+            deleteAuthenticator(auth);
         }
         if (keycloakUserId != null) {
             try {
@@ -166,4 +299,38 @@ public class RegistrationService {
             }
         }
     }
+
+    private Mono<Void> rollbackAfterFailureAsync(Authenticator auth, String keycloakUserId, Scheduler blockingScheduler) {
+        Mono<Void> rollbackAuth = auth == null
+                ? Mono.empty()
+                : Mono.<Void>fromRunnable(() -> deleteAuthenticator(auth)).subscribeOn(blockingScheduler);
+        Mono<Void> rollbackKeycloak = keycloakUserId == null
+                ? Mono.empty()
+                : reactiveKeycloakService.deleteUser(keycloakUserId)
+                        .doOnSuccess(ignored -> log.info("Rolled back Keycloak user: {}", keycloakUserId))
+                        .onErrorResume(e -> {
+                            log.error("Failed to delete Keycloak user during rollback", e);
+                            return Mono.empty();
+                        });
+        return rollbackAuth.then(rollbackKeycloak);
+    }
+
+    private void deleteAuthenticator(Authenticator auth) {
+        try {
+            registrationRepository.getAuthRepository().delete(auth);
+            log.info("Rolled back Authenticator");
+        } catch (Exception e) {
+            log.error("Failed to delete Authenticator during rollback", e);
+        }
+    }
+
+    private static final class PendingRegistration {
+        private final AppUser user;
+        private final PublicKeyCredentialCreationOptions options;
+
+        private PendingRegistration(AppUser user, PublicKeyCredentialCreationOptions options) {
+            this.user = user;
+            this.options = options;
+        }
+    }
 }
@@ -0,0 +1,42 @@
+package com.webauthn.app.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * 同一時間只執行一次的非同步呼叫，執行期間的其他呼叫共用同一個結果
+ * 個別訂閱者取消不會中斷進行中的呼叫
+ */
+final class SingleFlight<T> {
+    private final AtomicReference<CompletableFuture<T>> inFlight = new AtomicReference<>();
+
+    Mono<T> execute(Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            while (true) {
+                CompletableFuture<T> current = inFlight.get();
+                if (current != null) {
+                    return Mono.fromFuture(current, true);
+                }
+                CompletableFuture<T> future = new CompletableFuture<>();
+                if (inFlight.compareAndSet(null, future)) {
+                    Mono.defer(call).subscribe(value -> {
+                        inFlight.set(null);
+                        future.complete(value);
+                    }, e -> {
+                        inFlight.set(null);
+                        future.completeExceptionally(e);
+                    }, () -> {
+                        if (!future.isDone()) {
+                            inFlight.set(null);
+                            future.completeExceptionally(new IllegalStateException("Call completed without a value"));
+                        }
+                    });
+                    return Mono.fromFuture(future, true);
+                }
+            }
+        });
+    }
+}
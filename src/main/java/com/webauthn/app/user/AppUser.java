@@ -11,6 +11,8 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
+@EntityListeners(AppUserChangeListener.class)
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_app_user_handle", columnNames = "handle"))
 @Getter
 @NoArgsConstructor
 public class AppUser {
@@ -24,7 +26,7 @@ public class AppUser {
     @Column(nullable = false)
     private String displayName;
 
-    @Lob
+    // user handle 最長 64 bytes
     @Column(nullable = false, length = 64)
     private ByteArray handle;
 
@@ -32,7 +34,7 @@ public class AppUser {
     private String keycloakUserId;
 
     /**
-     * 註冊狀態：PENDING（暫存）、COMPLETED（已完成）
+     * 註冊狀態：PENDING（暫存）、PROVISIONING（建立 Keycloak 用戶中）、PROVISIONING_FAILED、COMPLETED（已完成）
      */
     @Column(nullable = false)
     @Enumerated(EnumType.STRING)
@@ -0,0 +1,45 @@
+package com.webauthn.app.user;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+
+import com.webauthn.app.infrastructure.cache.UserIdentityCache;
+import com.webauthn.app.infrastructure.cache.UsernameIndex;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * AppUser 新增 / 刪除時同步 UsernameIndex 與 UserIdentityCache
+ */
+@Component
+public class AppUserChangeListener {
+    private final UsernameIndex usernameIndex;
+    private final UserIdentityCache identityCache;
+
+    public AppUserChangeListener(UsernameIndex usernameIndex, UserIdentityCache identityCache) {
+        this.usernameIndex = usernameIndex;
+        this.identityCache = identityCache;
+    }
+
+    @PostPersist
+    public void onPersist(AppUser user) {
+        usernameIndex.added(user.getUsername());
+    }
+
+    @PostRemove
+    public void onRemove(AppUser user) {
+        usernameIndex.removed(user.getUsername());
+        identityCache.invalidate(user.getUsername(), user.getHandle());
+        // commit 前其他 thread 仍可能讀到舊資料放回快取，交易結束後再失效一次
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    identityCache.invalidate(user.getUsername(), user.getHandle());
+                }
+            });
+        }
+    }
+}
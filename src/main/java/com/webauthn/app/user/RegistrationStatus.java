@@ -1,6 +1,8 @@
 package com.webauthn.app.user;
 
 public enum RegistrationStatus {
-    PENDING,    // 暫存狀態，尚未完成 WebAuthn 認證
-    COMPLETED   // 已完成 WebAuthn 認證，Keycloak 用戶已建立
+    PENDING,             // 暫存狀態，尚未完成 WebAuthn 認證
+    PROVISIONING,        // 已完成 WebAuthn 認證，等待背景建立 Keycloak 用戶（keycloak.outbox.enabled）
+    PROVISIONING_FAILED, // 已完成 WebAuthn 認證，建立 Keycloak 用戶超過重試上限
+    COMPLETED            // 已完成 WebAuthn 認證，Keycloak 用戶已建立
 }
@@ -1,12 +1,25 @@
 package com.webauthn.app.user;
 
+import java.util.Optional;
+
 import com.yubico.webauthn.data.ByteArray;
 
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface UserRepository extends CrudRepository<AppUser, Long> {
     AppUser findByUsername(String name);
     AppUser findByHandle(ByteArray handle);
+
+    @Query("select u.handle from AppUser u where u.username = :username")
+    Optional<ByteArray> findHandleByUsername(@Param("username") String username);
+
+    @Query("select u.username from AppUser u where u.handle = :handle")
+    Optional<String> findUsernameByHandle(@Param("handle") ByteArray handle);
+
+    @Query("select u.keycloakUserId from AppUser u where u.username = :username")
+    Optional<String> findKeycloakUserIdByUsername(@Param("username") String username);
 }
@@ -0,0 +1,206 @@
+package com.webauthn.app.web;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.webauthn.app.common.api.RestResult;
+import com.webauthn.app.common.api.RestStatus;
+import com.webauthn.app.exception.AppRegistrationException;
+import com.webauthn.app.exception.KeycloakUnavailableException;
+import com.webauthn.app.infrastructure.cache.WebAuthnRequestCache;
+import com.webauthn.app.infrastructure.repository.RegistrationRepository;
+import com.webauthn.app.infrastructure.repository.SignatureCounterWriter;
+import com.webauthn.app.rq.FinishLoginRequest;
+import com.webauthn.app.rq.LoginRequest;
+import com.webauthn.app.rq.RegisterRequest;
+import com.webauthn.app.rs.CredentialCreateResponse;
+import com.webauthn.app.rs.CredentialGetResponse;
+import com.webauthn.app.rs.FinishLoginResponse;
+import com.webauthn.app.rs.FinishRegistrationResponse;
+import com.webauthn.app.service.RegistrationOptionsFactory;
+import com.webauthn.app.service.RegistrationProfile;
+import com.webauthn.app.user.AppUser;
+import com.webauthn.app.utility.Utility;
+import com.yubico.webauthn.*;
+import com.yubico.webauthn.data.*;
+import com.yubico.webauthn.exception.AssertionFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 註冊 / 登入 ceremony 的處理邏輯，由 AuthController（MVC）與 ReactiveAuthController（WebFlux）共用
+ * 除 finishRegistration 外皆為阻塞呼叫（JPA、ceremony 暫存），WebFlux 端需在 blocking scheduler 執行
+ */
+@Component
+class AuthCeremonies {
+    private static final Logger log = LoggerFactory.getLogger(AuthCeremonies.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final RelyingParty relyingParty;
+    private final RegistrationRepository registrationRepository;
+    private final WebAuthnRequestCache webAuthnRequestCache;
+    private final RegistrationOptionsFactory registrationOptionsFactory;
+    private final SignatureCounterWriter signatureCounterWriter;
+
+    AuthCeremonies(RelyingParty relyingParty, RegistrationRepository registrationRepository, WebAuthnRequestCache webAuthnRequestCache,
+                   RegistrationOptionsFactory registrationOptionsFactory, SignatureCounterWriter signatureCounterWriter) {
+        this.relyingParty = relyingParty;
+        this.registrationRepository = registrationRepository;
+        this.webAuthnRequestCache = webAuthnRequestCache;
+        this.registrationOptionsFactory = registrationOptionsFactory;
+        this.signatureCounterWriter = signatureCounterWriter;
+    }
+
+    /**
+     * 階段一：暫存註冊
+     * 只儲存到本地 DB，不建立 Keycloak 用戶
+     */
+    RestResult<CredentialCreateResponse> register(RegisterRequest request) {
+        String username = request.getUsername();
+        String display = request.getDisplay();
+
+        AppUser existingUser = registrationRepository.findExistingUser(username);
+        if (existingUser == null) {
+            log.info("Stage 1: 暫存註冊，Creating pending user in local DB: {}", username);
+
+            UserIdentity userIdentity = UserIdentity.builder()
+                    .name(username)
+                    .displayName(display)
+                    .id(Utility.generateRandom(32))//隨機id防止跨站攻擊
+                    .build();
+
+            AppUser saveUser = new AppUser(userIdentity);
+            // 只儲存到本地 DB，狀態為 PENDING
+            try {
+                registrationRepository.getUserRepo().save(saveUser);
+            } catch (DataIntegrityViolationException e) {
+                // 同時註冊同一帳號，或 UsernameIndex 重建期間尚未收錄的帳號，由 unique constraint 擋下
+                log.warn("User registration failed - username already exists: {}", username);
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Username " + username + " already exists. Choose a new name.");
+            }
+
+            log.info("成功暫存User: {} with userId: {}", username, saveUser.getId());
+
+            // 返回 WebAuthn challenge (包含 userId)
+            return startRegistration(saveUser);
+
+        } else {
+            log.warn("User registration failed - username already exists: {}", username);
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Username " + username + " already exists. Choose a new name.");
+        }
+    }
+
+    /**
+     * 產生註冊選項並暫存 challenge
+     */
+    RestResult<CredentialCreateResponse> startRegistration(AppUser user) {
+        AppUser existingUser = registrationRepository.getUserRepo().findByHandle(user.getHandle());
+        if (existingUser != null) {
+            UserIdentity userIdentity = user.toUserIdentity();
+
+            //加 authenticatorSelection（外部裝置、PIN / 生物辨識）
+            RegistrationProfile profile = RegistrationProfile.CROSS_PLATFORM;
+            PublicKeyCredentialCreationOptions registration = registrationOptionsFactory.create(userIdentity, profile);
+            // 只暫存 challenge、user handle 與 profile id，完成註冊時再重建 options
+            String ceremonyToken = webAuthnRequestCache.put(user.getUsername(), RegistrationOptionsFactory.toState(registration, profile));
+
+            // 返回 註冊選項 和 userId
+            return new RestResult<>(CredentialCreateResponse.from(registration, user.getId(), ceremonyToken));
+        } else {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "User " + user.getUsername() + " does not exist. Please register.");
+        }
+    }
+
+    /**
+     * 階段二：完成註冊的結果轉為 RestResult，失敗時回傳失敗原因而非 HTTP 錯誤
+     * RejectedExecutionException 與 ResponseStatusException 除外，由 controller 轉為對應的 HTTP 狀態（如 503）
+     */
+    Mono<RestResult<FinishRegistrationResponse>> finishRegistration(Mono<FinishRegistrationResponse> registration) {
+        return registration
+                .map(RestResult::new)
+                .onErrorResume(AppRegistrationException.class, e -> {
+                    log.error("Registration failed: {}", e.getMessage());
+                    return Mono.just(new RestResult<>(FinishRegistrationResponse.failure("WebAuthn 註冊失敗: " + e.getMessage())));
+                })
+                .onErrorResume(KeycloakUnavailableException::isCause, e -> {
+                    log.warn("Registration rejected, Keycloak unavailable: {}", e.getMessage());
+                    return Mono.just(new RestResult<>(FinishRegistrationResponse.failure("Keycloak 暫時無法使用，請稍後再試")));
+                })
+                // 排隊已滿（RejectedExecutionException）與已決定 HTTP 狀態的錯誤交由 controller 回應
+                .onErrorResume(e -> !(e instanceof RejectedExecutionException || e instanceof ResponseStatusException), e -> {
+                    log.error("Unexpected error during finishauth: {}", e.getMessage(), e);
+                    return Mono.just(new RestResult<>(RestStatus.UNKNOWN.CODE, RestStatus.UNKNOWN.MESSAGE, e.getMessage()));
+                });
+    }
+
+    RestResult<CredentialGetResponse> startLogin(LoginRequest loginRequest) {
+        String username = loginRequest.getUsername();
+        AssertionRequest request = relyingParty.startAssertion(StartAssertionOptions.builder()
+                .username(username)
+                .build());
+        try {
+            // 每次登入各自一個 requestId，同一用戶可同時在多個裝置登入，互不覆蓋 challenge
+            String requestId = Utility.generateRandom(16).getBase64Url();
+            String ceremonyToken = webAuthnRequestCache.putAssertion(requestId, request);
+            String credentialsJson = request.toCredentialsGetJson();
+            CredentialGetResponse credentialsObject = objectMapper.readValue(credentialsJson, CredentialGetResponse.class);
+            credentialsObject.setRequestId(requestId);
+            credentialsObject.setCeremonyToken(ceremonyToken);
+            return new RestResult<>(credentialsObject);
+        } catch (JsonProcessingException e) {
+            return new RestResult<>(RestStatus.UNKNOWN, e.getMessage());
+        }
+    }
+
+    /**
+     * 欄位缺漏時回傳一般的登入失敗，不以 500 回應（@NotBlank 未經 @Valid 驗證，兩個 controller 都在此檢查）
+     */
+    RestResult<FinishLoginResponse> finishLogin(FinishLoginRequest finishLoginRequest) {
+        if (isBlank(finishLoginRequest.getUsername()) || isBlank(finishLoginRequest.getRequestId())
+                || isBlank(finishLoginRequest.getCredential())) {
+            return new RestResult<>(FinishLoginResponse.failure("Authentication failed"));
+        }
+        try {
+            //FIDO2: 驗證時: 伺服器使用公鑰，去驗證此簽章是否有效。
+            PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> pkc;
+            pkc = PublicKeyCredential.parseAssertionResponseJson(finishLoginRequest.getCredential());
+            AssertionRequest request = webAuthnRequestCache.takeAssertion(finishLoginRequest.getRequestId(), finishLoginRequest.getCeremonyToken());
+            if (request == null) {
+                return new RestResult<>(FinishLoginResponse.failure("登入請求已過期，請重新登入"));
+            }
+            // requestId 必須屬於同一個用戶
+            if (!request.getUsername().map(finishLoginRequest.getUsername()::equals).orElse(true)) {
+                return new RestResult<>(FinishLoginResponse.failure("Authentication failed"));
+            }
+
+            // library 會自動用先前註冊時存的公鑰 去驗證簽章是否正確。
+            AssertionResult result = relyingParty.finishAssertion(FinishAssertionOptions.builder()
+                    .request(request) // 前端登入請求時的 challenge/credentialId 等資訊
+                    .response(pkc) // 前端傳回的簽章 (AuthenticatorAssertionResponse)
+                    .build());
+            if (result.isSuccess()) {
+                // counter 延遲批次寫回，不在登入路徑上多一次 UPDATE
+                signatureCounterWriter.record(result.getCredential().getCredentialId(), result.getSignatureCount());
+                return new RestResult<>(FinishLoginResponse.success(finishLoginRequest.getUsername()));
+            } else {
+                return new RestResult<>(FinishLoginResponse.failure("Authentication failed"));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Authentication failed", e);
+        } catch (AssertionFailedException e) {
+            throw new RuntimeException("Authentication failed", e);
+        }
+
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
@@ -1,12 +1,9 @@
 package com.webauthn.app.web;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.webauthn.app.authenticator.Authenticator;
 import com.webauthn.app.common.api.RestResult;
 import com.webauthn.app.common.api.RestStatus;
-import com.webauthn.app.exception.AppRegistrationException;
-import com.webauthn.app.infrastructure.cache.WebAuthnRequestCache;
+import com.webauthn.app.configuration.KeycloakProperties;
+import com.webauthn.app.infrastructure.outbox.KeycloakOutbox;
 import com.webauthn.app.infrastructure.repository.RegistrationRepository;
 import com.webauthn.app.rq.FinishLoginRequest;
 import com.webauthn.app.rq.FinishRegisrationRequest;
@@ -16,47 +13,47 @@ import com.webauthn.app.rs.CredentialCreateResponse;
 import com.webauthn.app.rs.CredentialGetResponse;
 import com.webauthn.app.rs.FinishLoginResponse;
 import com.webauthn.app.rs.FinishRegistrationResponse;
+import com.webauthn.app.rs.RegistrationStatusResponse;
 import com.webauthn.app.service.KeycloakService;
 import com.webauthn.app.service.RegistrationService;
-import com.webauthn.app.strategy.RoleStrategy;
 import com.webauthn.app.user.AppUser;
 import com.webauthn.app.user.RegistrationStatus;
-import com.webauthn.app.utility.Utility;
-import com.yubico.webauthn.*;
-import com.yubico.webauthn.data.*;
-import com.yubico.webauthn.exception.AssertionFailedException;
-import com.yubico.webauthn.exception.RegistrationFailedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
 
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.time.Instant;
+import java.util.Optional;
 
+/**
+ * Servlet（Spring MVC）版本的端點，預設使用
+ * reactive profile 改用 Netty 時由 ReactiveAuthController 提供相同的 ceremony 端點
+ */
 @RestController
 @RequestMapping("/api")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class AuthController {
     private static final Logger log = LoggerFactory.getLogger(AuthController.class);
 
-    private final RelyingParty relyingParty;
+    private final AuthCeremonies ceremonies;
     private final RegistrationRepository registrationRepository;
     private final KeycloakService keycloakService;
-    private final RoleStrategy roleStrategy;
     private final RegistrationService registrationService;
-    private final WebAuthnRequestCache webAuthnRequestCache;
-    private Map<String, AssertionRequest> assertionRequestMap = new HashMap<>();
+    private final KeycloakProperties keycloakProperties;
+    // keycloak.outbox.enabled=false 時為 null
+    private final KeycloakOutbox keycloakOutbox;
 
-    AuthController(RegistrationRepository registrationRepository, RelyingParty relyingPary, KeycloakService keycloakService, RegistrationService registrationService,RoleStrategy roleStrategy,WebAuthnRequestCache webAuthnRequestCache) {
-        this.relyingParty = relyingPary;
+    AuthController(AuthCeremonies ceremonies, RegistrationRepository registrationRepository, KeycloakService keycloakService, RegistrationService registrationService, KeycloakProperties keycloakProperties, Optional<KeycloakOutbox> keycloakOutbox) {
+        this.ceremonies = ceremonies;
         this.registrationRepository = registrationRepository;
         this.keycloakService = keycloakService;
-        this.roleStrategy = roleStrategy;
         this.registrationService = registrationService;
-        this.webAuthnRequestCache = webAuthnRequestCache;
+        this.keycloakProperties = keycloakProperties;
+        this.keycloakOutbox = keycloakOutbox.orElse(null);
     }
 
     /**
@@ -68,32 +65,7 @@ public class AuthController {
     public RestResult<CredentialCreateResponse> newUserRegistration(
             @RequestBody RegisterRequest request
     ) {
-        String username = request.getUsername();
-        String display = request.getDisplay();
-
-        AppUser existingUser = registrationRepository.getUserRepo().findByUsername(username);
-        if (existingUser == null) {
-            log.info("Stage 1: 暫存註冊，Creating pending user in local DB: {}", username);
-
-            UserIdentity userIdentity = UserIdentity.builder()
-                    .name(username)
-                    .displayName(display)
-                    .id(Utility.generateRandom(32))//隨機id防止跨站攻擊
-                    .build();
-
-            AppUser saveUser = new AppUser(userIdentity);
-            // 只儲存到本地 DB，狀態為 PENDING
-            registrationRepository.getUserRepo().save(saveUser);
-
-            log.info("成功暫存User: {} with userId: {}", username, saveUser.getId());
-
-            // 返回 WebAuthn challenge (包含 userId)
-            return performAuthRegistration(saveUser);
-
-        } else {
-            log.warn("User registration failed - username already exists: {}", username);
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "Username " + username + " already exists. Choose a new name.");
-        }
+        return ceremonies.register(request);
     }
 
     @PostMapping("/registerauth")
@@ -101,54 +73,23 @@ public class AuthController {
     public RestResult<CredentialCreateResponse> newAuthRegistration(
             @RequestParam AppUser user
     ) {
-        return performAuthRegistration(user);
-    }
-
-    // 內部方法，支持直接調用
-    private RestResult<CredentialCreateResponse> performAuthRegistration(AppUser user) {
-        AppUser existingUser = registrationRepository.getUserRepo().findByHandle(user.getHandle());
-        if (existingUser != null) {
-            UserIdentity userIdentity = user.toUserIdentity();
-
-            //加 authenticatorSelection
-            AuthenticatorSelectionCriteria selection = AuthenticatorSelectionCriteria.builder()
-                    .authenticatorAttachment(AuthenticatorAttachment.CROSS_PLATFORM) // 外部裝置 (手機、YubiKey)
-                    .userVerification(UserVerificationRequirement.PREFERRED)       // 可以 PIN / 生物辨識
-                    .build();
-
-            StartRegistrationOptions registrationOptions = StartRegistrationOptions.builder()
-                    .user(userIdentity)
-                    .authenticatorSelection(selection)  // 把設定加進來
-                    .build();
-            PublicKeyCredentialCreationOptions registration = relyingParty.startRegistration(registrationOptions);
-            webAuthnRequestCache.put(user.getUsername(), registration);
-
-            // 返回 註冊選項 和 userId
-            return new RestResult<>(CredentialCreateResponse.from(registration, user.getId()));
-        } else {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "User " + user.getUsername() + " does not exist. Please register.");
-        }
+        return ceremonies.startRegistration(user);
     }
 
     /**
      * 階段二：完成認證後正式建立 Keycloak user
      * WebAuthn 驗證成功後，才建立 Keycloak 用戶並指派角色
+     * keycloak.non-blocking=true 時等待 Keycloak 期間釋放 servlet thread
      */
     @PostMapping("/finishauth")
     @ResponseBody
-    public RestResult<FinishRegistrationResponse> finishRegisration(
+    public Mono<RestResult<FinishRegistrationResponse>> finishRegisration(
             @RequestBody FinishRegisrationRequest finishRegisrationRequest
     ) {
-        try {
-            FinishRegistrationResponse response = registrationService.completeRegistration(finishRegisrationRequest);
-            return new RestResult<>(response);
-        } catch (AppRegistrationException e) {
-            log.error("Registration failed: {}", e.getMessage());
-            return new RestResult<>(FinishRegistrationResponse.failure("WebAuthn 註冊失敗: " + e.getMessage()));
-        } catch (Exception e) {
-            log.error("Unexpected error during finishauth: {}", e.getMessage(), e);
-            return new RestResult<>(RestStatus.UNKNOWN.CODE, RestStatus.UNKNOWN.MESSAGE, e.getMessage());
-        }
+        Mono<FinishRegistrationResponse> registration = keycloakProperties.isNonBlocking()
+                ? registrationService.completeRegistrationAsync(finishRegisrationRequest)
+                : Mono.fromCallable(() -> registrationService.completeRegistration(finishRegisrationRequest));
+        return ceremonies.finishRegistration(registration);
     }
 
     @PostMapping("/login")
@@ -156,53 +97,40 @@ public class AuthController {
     public RestResult<CredentialGetResponse> startLogin(
             @RequestBody LoginRequest loginRequest
     ) {
-        String username = loginRequest.getUsername();
-        AssertionRequest request = relyingParty.startAssertion(StartAssertionOptions.builder()
-                .username(username)
-                .build());
-        try {
-            this.assertionRequestMap.put(username, request);
-            String credentialsJson = request.toCredentialsGetJson();
-            ObjectMapper objectMapper = new ObjectMapper();
-            CredentialGetResponse credentialsObject = objectMapper.readValue(credentialsJson, CredentialGetResponse.class);
-            return new RestResult<>(credentialsObject);
-        } catch (JsonProcessingException e) {
-            return new RestResult<>(RestStatus.UNKNOWN, e.getMessage());
-        }
+        return ceremonies.startLogin(loginRequest);
     }
 
     @PostMapping("/welcome")
     public RestResult<FinishLoginResponse> finishLogin(
             @RequestBody FinishLoginRequest finishLoginRequest
     ) {
-        try {
-            //FIDO2: 驗證時: 伺服器使用公鑰，去驗證此簽章是否有效。
-            PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> pkc;
-            pkc = PublicKeyCredential.parseAssertionResponseJson(finishLoginRequest.getCredential());
-            AssertionRequest request = this.assertionRequestMap.get(finishLoginRequest.getUsername());
+        return ceremonies.finishLogin(finishLoginRequest);
+    }
 
-            // library 會自動用先前註冊時存的公鑰 去驗證簽章是否正確。
-            AssertionResult result = relyingParty.finishAssertion(FinishAssertionOptions.builder()
-                    .request(request) // 前端登入請求時的 challenge/credentialId 等資訊
-                    .response(pkc) // 前端傳回的簽章 (AuthenticatorAssertionResponse)
-                    .build());
-            if (result.isSuccess()) {
-                return new RestResult<>(FinishLoginResponse.success(finishLoginRequest.getUsername()));
-            } else {
-                return new RestResult<>(FinishLoginResponse.failure("Authentication failed"));
-            }
-        } catch (IOException e) {
-            throw new RuntimeException("Authentication failed", e);
-        } catch (AssertionFailedException e) {
-            throw new RuntimeException("Authentication failed", e);
+    /**
+     * 查詢註冊狀態；outbox 模式下同時回傳建立 Keycloak 帳號的重試狀況
+     */
+    @GetMapping("/user/{userId}/status")
+    @ResponseBody
+    public RestResult<RegistrationStatusResponse> registrationStatus(@PathVariable Long userId) {
+        AppUser user = registrationRepository.getUserRepo().findById(userId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
+        RegistrationStatusResponse.RegistrationStatusResponseBuilder status = RegistrationStatusResponse.builder()
+                .username(user.getUsername())
+                .registrationStatus(user.getRegistrationStatus());
+        if (keycloakOutbox != null) {
+            keycloakOutbox.find(userId).ifPresent(outbox -> status
+                    .provisioningAttempts(outbox.getAttempts())
+                    .nextAttemptAt(outbox.getNextAttemptAt() == null ? null : Instant.ofEpochMilli(outbox.getNextAttemptAt()))
+                    .lastError(outbox.getLastError()));
         }
-
+        return new RestResult<>(status.build());
     }
 
     /**
      * 取消註冊（刪除暫存或已完成的用戶）
      * - PENDING 用戶：只刪除本地 DB
-     * - COMPLETED 用戶：同時刪除 Keycloak 和本地 DB
+     * - COMPLETED 用戶：同時刪除 Keycloak 和本地 DB（PROVISIONING 中的用戶同此，並移除 outbox）
      *
      * 安全性考量：使用 userId 而非 username，避免用戶枚舉攻擊
      */
@@ -224,7 +152,7 @@ public class AuthController {
             // PENDING 用戶：只刪除本地 DB（Keycloak 根本沒建立）
             log.info("Deleting PENDING user (local DB only): {}", username);
             try {
-                registrationRepository.getUserRepo().delete(user);
+                registrationRepository.deleteUser(user);
                 log.info("Successfully deleted pending user from local DB: {}", username);
                 return new RestResult<>(RestStatus.SUCCESS, "Pending user " + username + " deleted successfully");
             } catch (Exception dbException) {
@@ -264,7 +192,10 @@ public class AuthController {
 
             // 刪除本地 DB 用戶
             try {
-                registrationRepository.getUserRepo().delete(user);
+                registrationRepository.deleteUser(user);
+                if (keycloakOutbox != null) {
+                    keycloakOutbox.complete(userId);
+                }
                 log.info("Successfully deleted user from local DB: {}", username);
             } catch (Exception dbException) {
                 log.error("Failed to delete user from local DB: {}", username, dbException);
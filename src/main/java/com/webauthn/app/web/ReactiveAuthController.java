@@ -0,0 +1,118 @@
+package com.webauthn.app.web;
+
+import com.webauthn.app.common.api.RestResult;
+import com.webauthn.app.configuration.KeycloakProperties;
+import com.webauthn.app.configuration.WebAuthProperties;
+import com.webauthn.app.infrastructure.repository.RegistrationRepository;
+import com.webauthn.app.rq.FinishLoginRequest;
+import com.webauthn.app.rq.FinishRegisrationRequest;
+import com.webauthn.app.rq.LoginRequest;
+import com.webauthn.app.rq.RegisterRequest;
+import com.webauthn.app.rs.CredentialCreateResponse;
+import com.webauthn.app.rs.CredentialGetResponse;
+import com.webauthn.app.rs.FinishLoginResponse;
+import com.webauthn.app.rs.FinishRegistrationResponse;
+import com.webauthn.app.service.RegistrationService;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * WebFlux（Netty）版本的 ceremony 端點，reactive profile 啟用，與 AuthController 互斥
+ * 1.JPA、ceremony 暫存、WebAuthn 驗證等阻塞工作在專用的 blocking scheduler 執行，thread 數與排隊數都有上限
+ * 2.finishauth 的 Keycloak 呼叫以 Mono 串接，等待回應期間不占用 event loop 與 blocking thread
+ * 3.blocking scheduler 排隊已滿時回應 503，不在 event loop 上等待
+ * 4.用戶狀態查詢與刪除只有 MVC 版本
+ */
+@RestController
+@RequestMapping("/api")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveAuthController {
+    private final AuthCeremonies ceremonies;
+    private final RegistrationRepository registrationRepository;
+    private final RegistrationService registrationService;
+    private final KeycloakProperties keycloakProperties;
+    private final Scheduler blockingScheduler;
+
+    ReactiveAuthController(AuthCeremonies ceremonies, RegistrationRepository registrationRepository, RegistrationService registrationService,
+                           KeycloakProperties keycloakProperties, WebAuthProperties webAuthProperties) {
+        this.ceremonies = ceremonies;
+        this.registrationRepository = registrationRepository;
+        this.registrationService = registrationService;
+        this.keycloakProperties = keycloakProperties;
+        WebAuthProperties.Reactive reactive = webAuthProperties.getReactive();
+        this.blockingScheduler = Schedulers.newBoundedElastic(reactive.getBlockingThreads(), reactive.getBlockingQueueSize(), "webauthn-blocking");
+    }
+
+    @PreDestroy
+    void shutdown() {
+        blockingScheduler.dispose();
+    }
+
+    /**
+     * 階段一：暫存註冊
+     */
+    @PostMapping("/register")
+    public Mono<RestResult<CredentialCreateResponse>> newUserRegistration(
+            @RequestBody RegisterRequest request
+    ) {
+        return blocking(() -> ceremonies.register(request));
+    }
+
+    /**
+     * user 為 AppUser id；WebFlux 的 @RequestParam 只讀 query string
+     */
+    @PostMapping("/registerauth")
+    public Mono<RestResult<CredentialCreateResponse>> newAuthRegistration(
+            @RequestParam("user") Long userId
+    ) {
+        return blocking(() -> ceremonies.startRegistration(registrationRepository.getUserRepo().findById(userId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.CONFLICT, "User does not exist. Please register."))));
+    }
+
+    /**
+     * 階段二：完成認證後正式建立 Keycloak user
+     * keycloak.non-blocking=false 時整個流程在 blocking scheduler 上執行，作為對照
+     */
+    @PostMapping("/finishauth")
+    public Mono<RestResult<FinishRegistrationResponse>> finishRegisration(
+            @RequestBody FinishRegisrationRequest finishRegisrationRequest
+    ) {
+        Mono<FinishRegistrationResponse> registration = keycloakProperties.isNonBlocking()
+                ? registrationService.completeRegistrationAsync(finishRegisrationRequest, blockingScheduler)
+                : blocking(() -> registrationService.completeRegistration(finishRegisrationRequest));
+        return ceremonies.finishRegistration(registration.onErrorMap(RejectedExecutionException.class, ReactiveAuthController::overloaded));
+    }
+
+    @PostMapping("/login")
+    public Mono<RestResult<CredentialGetResponse>> startLogin(
+            @RequestBody LoginRequest loginRequest
+    ) {
+        return blocking(() -> ceremonies.startLogin(loginRequest));
+    }
+
+    @PostMapping("/welcome")
+    public Mono<RestResult<FinishLoginResponse>> finishLogin(
+            @RequestBody FinishLoginRequest finishLoginRequest
+    ) {
+        return blocking(() -> ceremonies.finishLogin(finishLoginRequest));
+    }
+
+    private <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call)
+                .subscribeOn(blockingScheduler)
+                .onErrorMap(RejectedExecutionException.class, ReactiveAuthController::overloaded);
+    }
+
+    private static ResponseStatusException overloaded(RejectedExecutionException e) {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many pending requests", e);
+    }
+}
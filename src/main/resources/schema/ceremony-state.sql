@@ -0,0 +1,11 @@
+-- Ceremony 暫存狀態（authn.ceremony.store=jdbc）
+-- 以 (ceremony_type, state_key) 為主鍵，expires_at 為 epoch millis，供批次清理使用
+CREATE TABLE IF NOT EXISTS ceremony_state (
+    ceremony_type SMALLINT        NOT NULL,
+    state_key     VARCHAR(128)    NOT NULL,
+    payload       VARBINARY(8192) NOT NULL,
+    expires_at    BIGINT          NOT NULL,
+    PRIMARY KEY (ceremony_type, state_key)
+);
+
+CREATE INDEX IF NOT EXISTS idx_ceremony_state_expires_at ON ceremony_state (expires_at);
@@ -0,0 +1,14 @@
+-- Keycloak 帳號建立 outbox（keycloak.outbox.enabled=true）
+-- 每個 app_user 一筆，與 Authenticator 在同一個 transaction 寫入；時間欄位皆為 epoch millis
+-- next_attempt_at 為 NULL 表示已超過重試上限，需人工處理後重新排入
+CREATE TABLE IF NOT EXISTS keycloak_outbox (
+    user_id         BIGINT        NOT NULL PRIMARY KEY,
+    username        VARCHAR(255)  NOT NULL,
+    attempts        INT           DEFAULT 0 NOT NULL,
+    created_at      BIGINT        NOT NULL,
+    next_attempt_at BIGINT,
+    locked_until    BIGINT,
+    last_error      VARCHAR(1000)
+);
+
+CREATE INDEX IF NOT EXISTS idx_keycloak_outbox_next_attempt_at ON keycloak_outbox (next_attempt_at);
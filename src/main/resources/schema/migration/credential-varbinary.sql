@@ -0,0 +1,13 @@
+-- 將既有 @Lob（BLOB）欄位轉為固定上限的 VARBINARY，並建立 unique index（H2 語法）
+-- 適用於升級前已有資料的 DB；新建的 DB 由 Hibernate 直接依 entity 建立，不需執行
+-- 執行前先確認以下查詢皆為 0，否則轉型或 unique 會失敗：
+--   SELECT COUNT(*) FROM authenticator WHERE OCTET_LENGTH(credential_id) > 1023 OR OCTET_LENGTH(public_key) > 1024 OR OCTET_LENGTH(aaguid) > 16;
+--   SELECT COUNT(*) FROM app_user WHERE OCTET_LENGTH(handle) > 64;
+--   SELECT COUNT(*) FROM (SELECT credential_id FROM authenticator GROUP BY credential_id HAVING COUNT(*) > 1);
+ALTER TABLE authenticator ALTER COLUMN credential_id SET DATA TYPE VARBINARY(1023);
+ALTER TABLE authenticator ALTER COLUMN public_key SET DATA TYPE VARBINARY(1024);
+ALTER TABLE authenticator ALTER COLUMN aaguid SET DATA TYPE VARBINARY(16);
+ALTER TABLE app_user ALTER COLUMN handle SET DATA TYPE VARBINARY(64);
+
+ALTER TABLE authenticator ADD CONSTRAINT IF NOT EXISTS uk_authenticator_credential_id UNIQUE (credential_id);
+ALTER TABLE app_user ADD CONSTRAINT IF NOT EXISTS uk_app_user_handle UNIQUE (handle);
@@ -0,0 +1,99 @@
+package com.webauthn.app.benchmark;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import com.webauthn.app.configuration.WebAuthProperties;
+import com.webauthn.app.infrastructure.cache.ExpiringCache;
+import com.webauthn.app.infrastructure.cache.WebAuthnRequestCache;
+import com.webauthn.app.infrastructure.ceremony.InMemoryCeremonyStateStore;
+import com.webauthn.app.utility.Utility;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import com.yubico.webauthn.data.PublicKeyCredentialRequestOptions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 多執行緒同時 /login（put）與 /welcome（take）時登入 challenge 暫存的吞吐量
+ * 1.synchronizedMap：原本以 username 為 key 的 HashMap 加上最基本的同步
+ * 2.expiringCache：以 requestId 為 key 的 ExpiringCache（ConcurrentHashMap + lock-free timer wheel），只看資料結構本身
+ * 3.store：完整的 WebAuthnRequestCache 路徑（含 AssertionRequest 序列化）
+ *
+ * 執行：./mvnw -Pbenchmark test -Dbenchmark=AssertionStoreContentionBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(32)
+public class AssertionStoreContentionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        final Map<String, AssertionRequest> synchronizedMap = Collections.synchronizedMap(new HashMap<>());
+        final ExpiringCache<String, AssertionRequest> expiringCache = new ExpiringCache<>(Duration.ofMinutes(5), 100_000);
+        WebAuthnRequestCache store;
+        AssertionRequest request;
+
+        @Setup
+        public void setUp() {
+            WebAuthProperties properties = new WebAuthProperties();
+            store = new WebAuthnRequestCache(new InMemoryCeremonyStateStore(properties), Optional.empty(), properties);
+            request = AssertionRequest.builder()
+                    .publicKeyCredentialRequestOptions(PublicKeyCredentialRequestOptions.builder()
+                            .challenge(Utility.generateRandom(32))
+                            .rpId("localhost")
+                            .allowCredentials(List.of(PublicKeyCredentialDescriptor.builder()
+                                    .id(Utility.generateRandom(64))
+                                    .build()))
+                            .build())
+                    .username("alice")
+                    .build();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        String requestId;
+
+        @Setup
+        public void setUp() {
+            requestId = Utility.generateRandom(16).getBase64Url();
+        }
+    }
+
+    @Benchmark
+    public AssertionRequest synchronizedMap(Shared shared, Client client) {
+        shared.synchronizedMap.put(client.requestId, shared.request);
+        return shared.synchronizedMap.remove(client.requestId);
+    }
+
+    @Benchmark
+    public AssertionRequest expiringCache(Shared shared, Client client) {
+        shared.expiringCache.put(client.requestId, shared.request);
+        return shared.expiringCache.take(client.requestId);
+    }
+
+    @Benchmark
+    public AssertionRequest store(Shared shared, Client client) {
+        shared.store.putAssertion(client.requestId, shared.request);
+        return shared.store.takeAssertion(client.requestId, null);
+    }
+}
@@ -0,0 +1,125 @@
+package com.webauthn.app.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import com.webauthn.app.configuration.WebAuthProperties;
+import com.webauthn.app.infrastructure.cache.ExpiringCache;
+import com.webauthn.app.infrastructure.cache.WebAuthnRequestCache;
+import com.webauthn.app.infrastructure.ceremony.InMemoryCeremonyStateStore;
+import com.webauthn.app.service.RegistrationOptionsFactory;
+import com.webauthn.app.service.RegistrationProfile;
+import com.webauthn.app.utility.Utility;
+import com.yubico.webauthn.CredentialRepository;
+import com.yubico.webauthn.RegisteredCredential;
+import com.yubico.webauthn.RelyingParty;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import com.yubico.webauthn.data.RelyingPartyIdentity;
+import com.yubico.webauthn.data.UserIdentity;
+
+/**
+ * 每筆暫存中的註冊 ceremony 佔用多少 heap
+ * 1.options：暫存完整 PublicKeyCredentialCreationOptions 物件（原本的做法）
+ * 2.compact：暫存 RegistrationCeremonyState（challenge + user handle + profile id 的 byte[]）
+ *
+ * 執行：./mvnw -Pbenchmark test -Dbenchmark.main=com.webauthn.app.benchmark.CeremonyMemoryBenchmark -Dbenchmark=1000000
+ */
+public class CeremonyMemoryBenchmark {
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        WebAuthProperties properties = new WebAuthProperties();
+        properties.getCeremony().setTimeout(Duration.ofHours(1));
+        properties.getCeremony().setMaxEntries(count);
+        RegistrationOptionsFactory factory = new RegistrationOptionsFactory(relyingParty(), properties);
+
+        long optionsBytes = measure(() -> {
+            ExpiringCache<String, PublicKeyCredentialCreationOptions> cache =
+                    new ExpiringCache<>(properties.getCeremony().getTimeout(), count);
+            for (int i = 0; i < count; i++) {
+                cache.put("user-" + i, factory.create(user(i), RegistrationProfile.CROSS_PLATFORM));
+            }
+            return cache;
+        });
+
+        long compactBytes = measure(() -> {
+            WebAuthnRequestCache cache = new WebAuthnRequestCache(
+                    new InMemoryCeremonyStateStore(properties), Optional.empty(), properties);
+            for (int i = 0; i < count; i++) {
+                PublicKeyCredentialCreationOptions options = factory.create(user(i), RegistrationProfile.CROSS_PLATFORM);
+                cache.put("user-" + i, RegistrationOptionsFactory.toState(options, RegistrationProfile.CROSS_PLATFORM));
+            }
+            return cache;
+        });
+
+        System.out.printf("pending ceremonies: %,d%n", count);
+        System.out.printf("options : %,d bytes total, %,d bytes/ceremony%n", optionsBytes, optionsBytes / count);
+        System.out.printf("compact : %,d bytes total, %,d bytes/ceremony%n", compactBytes, compactBytes / count);
+    }
+
+    private static long measure(Supplier<Object> fill) {
+        long before = usedHeap();
+        Object retained = fill.get();
+        long after = usedHeap();
+        // 確保量測期間資料仍被引用，不會先被 GC
+        Reference.reachabilityFence(retained);
+        return after - before;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+
+    private static UserIdentity user(int i) {
+        return UserIdentity.builder()
+                .name("user-" + i)
+                .displayName("User " + i)
+                .id(Utility.generateRandom(32))
+                .build();
+    }
+
+    private static RelyingParty relyingParty() {
+        CredentialRepository repository = new CredentialRepository() {
+            @Override
+            public Set<PublicKeyCredentialDescriptor> getCredentialIdsForUsername(String username) {
+                return Set.of();
+            }
+
+            @Override
+            public Optional<ByteArray> getUserHandleForUsername(String username) {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<String> getUsernameForUserHandle(ByteArray userHandle) {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<RegisteredCredential> lookup(ByteArray credentialId, ByteArray userHandle) {
+                return Optional.empty();
+            }
+
+            @Override
+            public Set<RegisteredCredential> lookupAll(ByteArray credentialId) {
+                return Set.of();
+            }
+        };
+        return RelyingParty.builder()
+                .identity(RelyingPartyIdentity.builder().id("localhost").name("benchmark").build())
+                .credentialRepository(repository)
+                .build();
+    }
+}
@@ -0,0 +1,96 @@
+package com.webauthn.app.benchmark;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.webauthn.app.configuration.WebAuthProperties;
+import com.webauthn.app.infrastructure.cache.WebAuthnRequestCache;
+import com.webauthn.app.infrastructure.ceremony.CeremonyTokenSealer;
+import com.webauthn.app.infrastructure.ceremony.InMemoryCeremonyStateStore;
+import com.webauthn.app.utility.Utility;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import com.yubico.webauthn.data.PublicKeyCredentialRequestOptions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 登入 challenge 一次 put + take 的成本
+ * 1.map：原本 AuthController 直接存物件的 HashMap
+ * 2.stored：WebAuthnRequestCache + 記憶體 CeremonyStateStore（含 JSON 序列化）
+ * 3.sealed：WebAuthnRequestCache 無狀態模式（JSON 序列化 + AES-GCM seal / unseal + nonce 檢查）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CeremonyStateBenchmark {
+    private final Map<String, AssertionRequest> map = new ConcurrentHashMap<>();
+    private WebAuthnRequestCache stored;
+    private WebAuthnRequestCache sealed;
+    private AssertionRequest request;
+    private long sequence;
+
+    @Setup
+    public void setUp() {
+        WebAuthProperties storedProperties = new WebAuthProperties();
+        stored = new WebAuthnRequestCache(new InMemoryCeremonyStateStore(storedProperties), Optional.empty(), storedProperties);
+
+        WebAuthProperties sealedProperties = new WebAuthProperties();
+        sealedProperties.getCeremony().getSealed().setEnabled(true);
+        sealedProperties.getCeremony().getSealed().setSecret(Base64.getEncoder().encodeToString(Utility.generateRandom(32).getBytes()));
+        InMemoryCeremonyStateStore sealedStore = new InMemoryCeremonyStateStore(sealedProperties);
+        sealed = new WebAuthnRequestCache(sealedStore, Optional.of(new CeremonyTokenSealer(sealedProperties, sealedStore)), sealedProperties);
+
+        request = AssertionRequest.builder()
+                .publicKeyCredentialRequestOptions(PublicKeyCredentialRequestOptions.builder()
+                        .challenge(Utility.generateRandom(32))
+                        .rpId("localhost")
+                        .allowCredentials(List.of(PublicKeyCredentialDescriptor.builder()
+                                .id(Utility.generateRandom(64))
+                                .build()))
+                        .build())
+                .username("alice")
+                .build();
+    }
+
+    @Benchmark
+    public AssertionRequest map() {
+        String key = nextKey();
+        map.put(key, request);
+        return map.remove(key);
+    }
+
+    @Benchmark
+    public AssertionRequest stored() {
+        String key = nextKey();
+        stored.putAssertion(key, request);
+        return stored.takeAssertion(key, null);
+    }
+
+    @Benchmark
+    public AssertionRequest sealed() {
+        String key = nextKey();
+        String token = sealed.putAssertion(key, request);
+        return sealed.takeAssertion(key, token);
+    }
+
+    private String nextKey() {
+        return "user-" + (sequence++ & 1023);
+    }
+}
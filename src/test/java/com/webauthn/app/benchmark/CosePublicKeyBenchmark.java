@@ -0,0 +1,151 @@
+package com.webauthn.app.benchmark;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import com.upokecenter.cbor.CBORObject;
+import com.webauthn.app.utility.Utility;
+import com.yubico.webauthn.RegisteredCredential;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.COSEAlgorithmIdentifier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 登入驗章時 COSE 公鑰解碼的成本
+ * 1.decodeAndVerify：與 webauthn-server-core FinishAssertionSteps 相同，每次從 COSE bytes 解出 PublicKey 與演算法再驗章
+ * 2.cachedVerify：PublicKey 與演算法已解碼快取，只做驗章
+ *
+ * 執行：./mvnw -Pbenchmark test -Dbenchmark=CosePublicKeyBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CosePublicKeyBenchmark {
+    @Param({"ES256", "RS256", "EdDSA"})
+    private String algorithm;
+
+    private RegisteredCredential credential;
+    private PublicKey cachedKey;
+    private COSEAlgorithmIdentifier cachedAlgorithm;
+    private byte[] signedBytes;
+    private byte[] signature;
+
+    @Setup
+    public void setUp() throws Exception {
+        KeyPair keyPair;
+        ByteArray cose;
+        switch (algorithm) {
+            case "ES256" -> {
+                KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+                generator.initialize(new ECGenParameterSpec("secp256r1"));
+                keyPair = generator.generateKeyPair();
+                ECPublicKey key = (ECPublicKey) keyPair.getPublic();
+                cose = cose(CBORObject.NewMap()
+                        .Add(1, 2).Add(3, -7).Add(-1, 1)
+                        .Add(-2, unsigned(key.getW().getAffineX(), 32))
+                        .Add(-3, unsigned(key.getW().getAffineY(), 32)));
+            }
+            case "RS256" -> {
+                KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+                generator.initialize(2048);
+                keyPair = generator.generateKeyPair();
+                RSAPublicKey key = (RSAPublicKey) keyPair.getPublic();
+                cose = cose(CBORObject.NewMap()
+                        .Add(1, 3).Add(3, -257)
+                        .Add(-1, unsigned(key.getModulus(), 256))
+                        .Add(-2, key.getPublicExponent().toByteArray()));
+            }
+            case "EdDSA" -> {
+                keyPair = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+                byte[] spki = keyPair.getPublic().getEncoded();
+                cose = cose(CBORObject.NewMap()
+                        .Add(1, 1).Add(3, -8).Add(-1, 6)
+                        .Add(-2, Arrays.copyOfRange(spki, spki.length - 32, spki.length)));
+            }
+            default -> throw new IllegalArgumentException(algorithm);
+        }
+
+        credential = RegisteredCredential.builder()
+                .credentialId(Utility.generateRandom(32))
+                .userHandle(Utility.generateRandom(32))
+                .publicKeyCose(cose)
+                .build();
+        cachedKey = credential.getParsedPublicKey();
+        cachedAlgorithm = COSEAlgorithmIdentifier.fromPublicKey(cose).orElseThrow();
+
+        // authenticatorData(37) + clientDataHash(32)
+        signedBytes = Utility.generateRandom(69).getBytes();
+        Signature signer = Signature.getInstance(jcaName(cachedAlgorithm));
+        signer.initSign(keyPair.getPrivate());
+        signer.update(signedBytes);
+        signature = signer.sign();
+        if (!decodeAndVerify() || !cachedVerify()) {
+            throw new IllegalStateException("signature does not verify");
+        }
+    }
+
+    @Benchmark
+    public boolean decodeAndVerify() throws Exception {
+        PublicKey key = credential.getParsedPublicKey();
+        COSEAlgorithmIdentifier alg = COSEAlgorithmIdentifier.fromPublicKey(credential.getPublicKeyCose()).orElseThrow();
+        return verify(key, alg);
+    }
+
+    @Benchmark
+    public boolean cachedVerify() throws Exception {
+        return verify(cachedKey, cachedAlgorithm);
+    }
+
+    private boolean verify(PublicKey key, COSEAlgorithmIdentifier alg) throws Exception {
+        Signature verifier = Signature.getInstance(jcaName(alg));
+        verifier.initVerify(key);
+        verifier.update(signedBytes);
+        return verifier.verify(signature);
+    }
+
+    private static String jcaName(COSEAlgorithmIdentifier alg) {
+        return switch (alg) {
+            case ES256 -> "SHA256withECDSA";
+            case RS256 -> "SHA256withRSA";
+            case EdDSA -> "Ed25519";
+            default -> throw new IllegalArgumentException(alg.name());
+        };
+    }
+
+    private static ByteArray cose(CBORObject map) {
+        return new ByteArray(map.EncodeToBytes());
+    }
+
+    private static byte[] unsigned(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length == length) {
+            return bytes;
+        }
+        byte[] fixed = new byte[length];
+        int copy = Math.min(bytes.length, length);
+        System.arraycopy(bytes, bytes.length - copy, fixed, length - copy, copy);
+        return fixed;
+    }
+}
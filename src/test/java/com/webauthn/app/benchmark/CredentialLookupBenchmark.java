@@ -0,0 +1,135 @@
+package com.webauthn.app.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+/**
+ * 登入時以 credentialId 查詢 credential 的延遲（與 AuthenticatorRepository.findCredentialsByCredentialId 相同的 SQL）
+ * 1.lob：舊的 BLOB 欄位，無法建 index，每次查詢全表掃描
+ * 2.varbinary：同樣的資料執行 schema/migration/credential-varbinary.sql 後，走 unique index
+ *
+ * 執行：./mvnw -Pbenchmark test -Dbenchmark=CredentialLookupBenchmark
+ * 1M 筆建議加大 heap：-Dbenchmark.jvmArgs=-Xmx8g
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class CredentialLookupBenchmark {
+    private static final String LOOKUP = "select a.credential_id, a.public_key, a.count, u.handle "
+            + "from authenticator a join app_user u on u.id = a.user_id where a.credential_id = ?";
+
+    @Param({"100000", "1000000"})
+    private int credentials;
+
+    @Param({"lob", "varbinary"})
+    private String layout;
+
+    private Connection connection;
+    private PreparedStatement lookup;
+    private byte[][] sampleIds;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:lookup-" + layout + "-" + credentials + ";DB_CLOSE_DELAY=-1");
+        try (Statement statement = connection.createStatement()) {
+            // 與改版前 Hibernate 依 @Lob 產生的 schema 相同
+            statement.execute("create table app_user (id bigint not null, handle blob not null, username varchar(255) not null unique, primary key (id))");
+            statement.execute("create table authenticator (id bigint not null, user_id bigint, count bigint not null, "
+                    + "credential_id blob not null, public_key blob not null, aaguid blob, primary key (id), "
+                    + "foreign key (user_id) references app_user)");
+        }
+        sampleIds = populate(credentials);
+        if ("varbinary".equals(layout)) {
+            ScriptUtils.executeSqlScript(connection, new ClassPathResource("schema/migration/credential-varbinary.sql"));
+        }
+        lookup = connection.prepareStatement(LOOKUP);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop all objects");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public long lookup() throws SQLException {
+        lookup.setBytes(1, sampleIds[next++ & (sampleIds.length - 1)]);
+        try (ResultSet rs = lookup.executeQuery()) {
+            if (!rs.next()) {
+                throw new IllegalStateException("credential not found");
+            }
+            return rs.getLong(3);
+        }
+    }
+
+    private byte[][] populate(int count) throws SQLException {
+        Random random = new Random(42);
+        byte[][] samples = new byte[1024][];
+        connection.setAutoCommit(false);
+        try (PreparedStatement user = connection.prepareStatement("insert into app_user (id, handle, username) values (?, ?, ?)");
+             PreparedStatement auth = connection.prepareStatement(
+                     "insert into authenticator (id, user_id, count, credential_id, public_key, aaguid) values (?, ?, 0, ?, ?, ?)")) {
+            for (int i = 0; i < count; i++) {
+                byte[] credentialId = bytes(random, 32);
+                if (i % (count / samples.length) == 0 && i / (count / samples.length) < samples.length) {
+                    samples[i / (count / samples.length)] = credentialId;
+                }
+                user.setLong(1, i);
+                user.setBytes(2, bytes(random, 32));
+                user.setString(3, "user-" + i);
+                user.addBatch();
+                auth.setLong(1, i);
+                auth.setLong(2, i);
+                auth.setBytes(3, credentialId);
+                auth.setBytes(4, bytes(random, 77));
+                auth.setBytes(5, bytes(random, 16));
+                auth.addBatch();
+                if (i % 1000 == 999) {
+                    user.executeBatch();
+                    auth.executeBatch();
+                    connection.commit();
+                }
+            }
+            user.executeBatch();
+            auth.executeBatch();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        return samples;
+    }
+
+    private static byte[] bytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
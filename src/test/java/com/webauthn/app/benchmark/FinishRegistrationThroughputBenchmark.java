@@ -0,0 +1,97 @@
+package com.webauthn.app.benchmark;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.webauthn.app.AppApplication;
+import com.webauthn.app.configuration.KeycloakProperties;
+import com.webauthn.app.support.FakeKeycloak;
+import com.webauthn.app.support.RegistrationClient;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * /api/finishauth 在 Keycloak 回應緩慢時的吞吐量，阻塞與非阻塞（keycloak.non-blocking）並列比較
+ * 1.測試用 Keycloak 每個請求延遲 latency ms，一次註冊約 6 次往返
+ * 2.Tomcat thread 數限制為 threads，並發 concurrency 個 client
+ * 3.先完成 /api/register（不計時），再同時送出 finishauth
+ *
+ * 執行：./mvnw -Pbenchmark test -Dbenchmark.main=com.webauthn.app.benchmark.FinishRegistrationThroughputBenchmark -Dbenchmark=400
+ * 直接執行時可再帶 latency（ms）、threads、concurrency：400 100 20 200
+ */
+public class FinishRegistrationThroughputBenchmark {
+
+    public static void main(String[] args) {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+        int latencyMillis = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int concurrency = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+        try (FakeKeycloak keycloak = FakeKeycloak.start(Duration.ofMillis(latencyMillis));
+             ConfigurableApplicationContext context = new SpringApplicationBuilder(AppApplication.class)
+                     .run("--server.port=0",
+                             "--server.tomcat.threads.max=" + threads,
+                             "--keycloak.server-url=" + keycloak.url(),
+                             "--logging.level.root=WARN")) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            RegistrationClient client = new RegistrationClient("http://localhost:" + port, "http://localhost:4200");
+            KeycloakProperties properties = context.getBean(KeycloakProperties.class);
+
+            System.out.printf("requests=%d latency=%dms tomcat.threads=%d concurrency=%d%n",
+                    requests, latencyMillis, threads, concurrency);
+            for (boolean nonBlocking : new boolean[] {false, true, false, true}) {
+                properties.setNonBlocking(nonBlocking);
+                run(client, (nonBlocking ? "non-blocking" : "blocking") + "-" + System.nanoTime(),
+                        nonBlocking ? "non-blocking" : "blocking", requests, concurrency);
+            }
+        }
+    }
+
+    static void run(RegistrationClient client, String prefix, String label, int requests, int concurrency) {
+        List<String> usernames = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            usernames.add(prefix + "-" + i);
+        }
+        List<JsonNode> registrations = all(usernames, concurrency, (i, username) -> client.register(username));
+
+        long[] latencies = new long[requests];
+        AtomicInteger failures = new AtomicInteger();
+        long start = System.nanoTime();
+        all(usernames, concurrency, (i, username) -> {
+            long begin = System.nanoTime();
+            return client.finish(username, registrations.get(i)).whenComplete((result, error) -> {
+                latencies[i] = System.nanoTime() - begin;
+                if (error != null || !result.path("registerSuccess").asBoolean()) {
+                    failures.incrementAndGet();
+                }
+            });
+        });
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("%-13s %8.1f req/s  p50 %6d ms  p99 %6d ms  failures %d%n", label, requests / seconds,
+                latencies[requests / 2] / 1_000_000, latencies[(int) (requests * 0.99)] / 1_000_000, failures.get());
+    }
+
+    private static List<JsonNode> all(List<String> usernames, int concurrency, Call call) {
+        Semaphore permits = new Semaphore(concurrency);
+        List<CompletableFuture<JsonNode>> futures = new ArrayList<>();
+        for (int i = 0; i < usernames.size(); i++) {
+            permits.acquireUninterruptibly();
+            futures.add(call.apply(i, usernames.get(i)).whenComplete((result, error) -> permits.release()));
+        }
+        return futures.stream().map(future -> future.exceptionally(error -> null).join()).toList();
+    }
+
+    private interface Call {
+        CompletableFuture<JsonNode> apply(int index, String username);
+    }
+}
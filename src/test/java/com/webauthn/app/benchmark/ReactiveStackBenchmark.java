@@ -0,0 +1,58 @@
+package com.webauthn.app.benchmark;
+
+import java.time.Duration;
+
+import com.webauthn.app.AppApplication;
+import com.webauthn.app.support.FakeKeycloak;
+import com.webauthn.app.support.RegistrationClient;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * /api/register + /api/finishauth 在相同負載下，MVC（Tomcat）與 reactive profile（Netty + ReactiveAuthController）比較
+ * 1.測試用 Keycloak 每個請求延遲 latency ms，兩種 stack 都使用 keycloak.non-blocking=true
+ * 2.Tomcat thread 數限制為 threads，reactive 的 blocking scheduler 同樣為 threads 個
+ * 3.Keycloak 連線池與 bulkhead 放寬到 concurrency；每種 stack 跑兩輪，第一輪為暖機
+ *
+ * 執行：./mvnw -Pbenchmark test -Dbenchmark.main=com.webauthn.app.benchmark.ReactiveStackBenchmark -Dbenchmark=400
+ * 直接執行時可再帶 latency（ms）、threads、concurrency：400 100 20 200
+ */
+public class ReactiveStackBenchmark {
+
+    public static void main(String[] args) {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+        int latencyMillis = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int concurrency = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+        System.out.printf("requests=%d latency=%dms threads=%d concurrency=%d%n", requests, latencyMillis, threads, concurrency);
+        try (FakeKeycloak keycloak = FakeKeycloak.start(Duration.ofMillis(latencyMillis))) {
+            run(keycloak, false, requests, threads, concurrency);
+            run(keycloak, true, requests, threads, concurrency);
+        }
+    }
+
+    private static void run(FakeKeycloak keycloak, boolean reactive, int requests, int threads, int concurrency) {
+        String label = reactive ? "webflux" : "mvc";
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(AppApplication.class)
+                .profiles(reactive ? new String[] {"reactive"} : new String[0])
+                .run("--server.port=0",
+                        "--server.tomcat.threads.max=" + threads,
+                        "--authn.reactive.blocking-threads=" + threads,
+                        "--keycloak.server-url=" + keycloak.url(),
+                        "--keycloak.non-blocking=true",
+                        "--keycloak.http.max-connections=" + concurrency,
+                        "--keycloak.http.pending-acquire-max-count=" + concurrency * 2,
+                        "--keycloak.bulkhead.max-concurrent-calls=" + concurrency,
+                        "--logging.level.root=WARN")) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            RegistrationClient client = new RegistrationClient("http://localhost:" + port, "http://localhost:4200");
+
+            for (int round = 0; round < 2; round++) {
+                FinishRegistrationThroughputBenchmark.run(client, label + "-" + System.nanoTime(), label, requests, concurrency);
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.webauthn.app.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+
+import com.webauthn.app.AppApplication;
+import com.webauthn.app.support.FakeKeycloak;
+import com.webauthn.app.support.RegistrationClient;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * 阻塞模式（keycloak.non-blocking=false）下 /api/finishauth 的並發能力，Tomcat 使用 platform thread 與 virtual thread 比較
+ * 1.測試用 Keycloak 每個請求延遲 latency ms，請求 thread 全程阻塞在 JPA 與 KeycloakService
+ * 2.platform thread 數限制為 threads；virtual thread 模式不受此限制
+ * 3.Keycloak 連線池與 bulkhead 放寬到 concurrency，兩種模式設定相同
+ * 4.每種模式跑兩輪，第一輪為暖機；另外印出 JVM 的 platform thread 峰值
+ *
+ * 需要 Java 21 以上，較舊版本只執行 platform thread
+ * 執行：./mvnw -Pbenchmark test -Dbenchmark.main=com.webauthn.app.benchmark.VirtualThreadFinishAuthBenchmark -Dbenchmark=400
+ * 直接執行時可再帶 latency（ms）、threads、concurrency：400 100 20 200
+ */
+public class VirtualThreadFinishAuthBenchmark {
+
+    public static void main(String[] args) {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+        int latencyMillis = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int concurrency = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+        boolean virtualThreadsSupported = Runtime.version().feature() >= 21;
+
+        System.out.printf("requests=%d latency=%dms tomcat.threads=%d concurrency=%d java=%s%n",
+                requests, latencyMillis, threads, concurrency, Runtime.version());
+        if (!virtualThreadsSupported) {
+            System.out.println("virtual threads require Java 21+, running platform threads only");
+        }
+        try (FakeKeycloak keycloak = FakeKeycloak.start(Duration.ofMillis(latencyMillis))) {
+            run(keycloak, false, requests, threads, concurrency);
+            if (virtualThreadsSupported) {
+                run(keycloak, true, requests, threads, concurrency);
+            }
+        }
+    }
+
+    private static void run(FakeKeycloak keycloak, boolean virtual, int requests, int threads, int concurrency) {
+        String label = virtual ? "virtual" : "platform";
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(AppApplication.class)
+                .run("--server.port=0",
+                        "--server.tomcat.threads.max=" + threads,
+                        "--spring.threads.virtual.enabled=" + virtual,
+                        "--keycloak.server-url=" + keycloak.url(),
+                        "--keycloak.non-blocking=false",
+                        "--keycloak.http.max-connections=" + concurrency,
+                        "--keycloak.http.pending-acquire-max-count=" + concurrency * 2,
+                        "--keycloak.bulkhead.max-concurrent-calls=" + concurrency,
+                        "--logging.level.root=WARN")) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            RegistrationClient client = new RegistrationClient("http://localhost:" + port, "http://localhost:4200");
+            ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+            for (int round = 0; round < 2; round++) {
+                threadBean.resetPeakThreadCount();
+                FinishRegistrationThroughputBenchmark.run(client, label + "-" + System.nanoTime(), label, requests, concurrency);
+                System.out.printf("%-13s peak platform threads %d%n", "", threadBean.getPeakThreadCount());
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.webauthn.app.infrastructure.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 以可控制的 ticker 驗證 TTL、timer wheel、容量淘汰與統計
+ */
+class ExpiringCacheTest {
+    private final AtomicLong now = new AtomicLong();
+
+    private ExpiringCache<String, String> cache(Duration defaultTtl, int maxSize) {
+        return new ExpiringCache<>(defaultTtl, maxSize, now::get);
+    }
+
+    private void advance(Duration duration) {
+        now.addAndGet(duration.toNanos());
+    }
+
+    @Test
+    void entriesExpireByTheirOwnTtl() {
+        ExpiringCache<String, String> cache = cache(Duration.ofSeconds(1), 100);
+        cache.put("short", "a");
+        cache.put("long", "b", Duration.ofSeconds(5));
+
+        advance(Duration.ofMillis(999));
+        assertThat(cache.get("short")).isEqualTo("a");
+
+        advance(Duration.ofMillis(1));
+        assertThat(cache.get("short")).isNull();
+        assertThat(cache.get("long")).isEqualTo("b");
+
+        advance(Duration.ofSeconds(4));
+        cache.cleanUp();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void ttlLongerThanOneWheelTurnIsRescheduled() {
+        // 預設 TTL 約佔半圈，一圈約 2 秒
+        ExpiringCache<String, String> cache = cache(Duration.ofSeconds(1), 100);
+        cache.put("long", "value", Duration.ofSeconds(10));
+
+        for (int i = 0; i < 19; i++) {
+            advance(Duration.ofMillis(500));
+            cache.cleanUp();
+            assertThat(cache.size()).as("after %d ms", (i + 1) * 500).isEqualTo(1);
+        }
+        assertThat(cache.get("long")).isEqualTo("value");
+
+        advance(Duration.ofMillis(600));
+        cache.cleanUp();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.stats().getExpirationCount()).isEqualTo(1);
+    }
+
+    @Test
+    void overflowEvictsTheEntryThatExpiresSoonest() {
+        ExpiringCache<String, String> cache = cache(Duration.ofSeconds(10), 3);
+        cache.put("a", "a", Duration.ofSeconds(8));
+        cache.put("b", "b", Duration.ofSeconds(2));
+        cache.put("c", "c", Duration.ofSeconds(5));
+        cache.put("d", "d", Duration.ofSeconds(6));
+
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("a")).isEqualTo("a");
+        assertThat(cache.get("c")).isEqualTo("c");
+        assertThat(cache.get("d")).isEqualTo("d");
+        assertThat(cache.stats().getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void takeReturnsTheValueOnlyOnce() {
+        ExpiringCache<String, String> cache = cache(Duration.ofSeconds(1), 100);
+        cache.put("challenge", "value");
+
+        assertThat(cache.take("challenge")).isEqualTo("value");
+        assertThat(cache.take("challenge")).isNull();
+        assertThat(cache.get("challenge")).isNull();
+    }
+
+    @Test
+    void takeDoesNotReturnExpiredValue() {
+        ExpiringCache<String, String> cache = cache(Duration.ofSeconds(1), 100);
+        cache.put("challenge", "value");
+
+        advance(Duration.ofSeconds(1));
+
+        assertThat(cache.take("challenge")).isNull();
+        assertThat(cache.stats().getExpirationCount()).isEqualTo(1);
+    }
+
+    @Test
+    void putIfAbsentReplacesOnlyExpiredEntries() {
+        ExpiringCache<String, String> cache = cache(Duration.ofSeconds(1), 100);
+        assertThat(cache.putIfAbsent("key", "first", Duration.ofSeconds(1))).isTrue();
+        assertThat(cache.putIfAbsent("key", "second", Duration.ofSeconds(1))).isFalse();
+        assertThat(cache.get("key")).isEqualTo("first");
+
+        advance(Duration.ofSeconds(2));
+
+        assertThat(cache.putIfAbsent("key", "third", Duration.ofSeconds(1))).isTrue();
+        assertThat(cache.get("key")).isEqualTo("third");
+    }
+
+    @Test
+    void purgeStaleBoundsTheWheelWhenEntriesAreTaken() {
+        ExpiringCache<String, String> cache = cache(Duration.ofMinutes(5), 10);
+
+        for (int i = 0; i < 10_000; i++) {
+            cache.put("key-" + i, "value");
+            cache.take("key-" + i);
+        }
+
+        assertThat(cache.size()).isZero();
+        // compact 門檻為 max(2 * maxSize, 1024)
+        assertThat(cache.scheduledNodes()).isLessThanOrEqualTo(1025);
+    }
+
+    @Test
+    void statsCountHitsMissesPutsExpirationsAndEvictions() {
+        ExpiringCache<String, String> cache = cache(Duration.ofSeconds(1), 2);
+        cache.put("a", "a");
+        cache.put("b", "b", Duration.ofSeconds(2));
+        cache.get("a");
+        cache.get("missing");
+        advance(Duration.ofSeconds(1));
+        cache.get("a");
+        cache.put("c", "c", Duration.ofSeconds(3));
+        cache.put("d", "d", Duration.ofSeconds(4));
+
+        CacheStats stats = cache.stats();
+        assertThat(stats.getHitCount()).isEqualTo(1);
+        assertThat(stats.getMissCount()).isEqualTo(2);
+        assertThat(stats.getPutCount()).isEqualTo(4);
+        assertThat(stats.getExpirationCount()).isEqualTo(1);
+        assertThat(stats.getEvictionCount()).isEqualTo(1);
+        assertThat(stats.getSize()).isEqualTo(2);
+        assertThat(stats.hitRate()).isEqualTo(1.0 / 3);
+    }
+}
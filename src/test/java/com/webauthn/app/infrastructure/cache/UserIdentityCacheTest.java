@@ -0,0 +1,67 @@
+package com.webauthn.app.infrastructure.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import com.webauthn.app.infrastructure.repository.RegistrationRepository;
+import com.webauthn.app.user.AppUser;
+import com.webauthn.app.utility.Utility;
+import com.yubico.webauthn.data.UserIdentity;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class UserIdentityCacheTest {
+    @Autowired
+    private RegistrationRepository registrationRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private AppUser user;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        String username = "identity-" + Utility.generateRandom(8).getHex();
+        user = registrationRepository.getUserRepo().save(new AppUser(UserIdentity.builder()
+                .name(username)
+                .displayName(username)
+                .id(Utility.generateRandom(32))
+                .build()));
+    }
+
+    @Test
+    void unknownUsersAreEmptyInsteadOfFailing() {
+        assertThat(registrationRepository.getUserHandleForUsername("missing-" + user.getUsername())).isEmpty();
+        assertThat(registrationRepository.getUsernameForUserHandle(Utility.generateRandom(32))).isEmpty();
+    }
+
+    @Test
+    void bothDirectionsAreServedFromCacheAfterFirstLoad() {
+        assertThat(registrationRepository.getUserHandleForUsername(user.getUsername())).contains(user.getHandle());
+        assertThat(registrationRepository.getUsernameForUserHandle(user.getHandle())).contains(user.getUsername());
+        statistics.clear();
+
+        assertThat(registrationRepository.getUserHandleForUsername(user.getUsername())).contains(user.getHandle());
+        assertThat(registrationRepository.getUsernameForUserHandle(user.getHandle())).contains(user.getUsername());
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+
+    @Test
+    void deletingUserInvalidatesBothDirections() {
+        registrationRepository.getUserHandleForUsername(user.getUsername());
+        registrationRepository.getUsernameForUserHandle(user.getHandle());
+
+        registrationRepository.deleteUser(user);
+
+        assertThat(registrationRepository.getUserHandleForUsername(user.getUsername())).isEmpty();
+        assertThat(registrationRepository.getUsernameForUserHandle(user.getHandle())).isEmpty();
+    }
+}
@@ -0,0 +1,69 @@
+package com.webauthn.app.infrastructure.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.webauthn.app.infrastructure.repository.RegistrationRepository;
+import com.webauthn.app.user.AppUser;
+import com.webauthn.app.utility.Utility;
+import com.yubico.webauthn.data.UserIdentity;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = "authn.username-index.expected-users=10000")
+class UsernameIndexTest {
+    @Autowired
+    private RegistrationRepository registrationRepository;
+    @Autowired
+    private UsernameIndex usernameIndex;
+
+    @Test
+    void freeUsernamesSkipTheDatabase() {
+        AtomicInteger queries = new AtomicInteger();
+        int free = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (usernameIndex.findIfPresent("free-" + i, name -> {
+                queries.incrementAndGet();
+                return null;
+            }) == null) {
+                free++;
+            }
+        }
+
+        assertThat(free).isEqualTo(1000);
+        // 誤判率 1%，留一些餘裕
+        assertThat(queries.get()).isLessThan(50);
+    }
+
+    @Test
+    void savedAndDeletedUsersAreAlwaysCheckedAgainstTheDatabase() {
+        AppUser user = save("index-" + Utility.generateRandom(8).getHex());
+        assertThat(registrationRepository.findExistingUser(user.getUsername())).isNotNull();
+
+        registrationRepository.deleteUser(user);
+        assertThat(registrationRepository.findExistingUser(user.getUsername())).isNull();
+
+        usernameIndex.rebuild();
+        assertThat(registrationRepository.findExistingUser(user.getUsername())).isNull();
+    }
+
+    @Test
+    void rebuildKeepsExistingUsers() {
+        AppUser user = save("rebuild-" + Utility.generateRandom(8).getHex());
+
+        usernameIndex.rebuild();
+
+        assertThat(registrationRepository.findExistingUser(user.getUsername())).isNotNull();
+    }
+
+    private AppUser save(String username) {
+        return registrationRepository.getUserRepo().save(new AppUser(UserIdentity.builder()
+                .name(username)
+                .displayName(username)
+                .id(Utility.generateRandom(32))
+                .build()));
+    }
+}
@@ -0,0 +1,191 @@
+package com.webauthn.app.infrastructure.ceremony;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CeremonyTokenSealerTest {
+    private static final Duration TTL = Duration.ofMinutes(5);
+    private static final Duration ROTATION = Duration.ofHours(1);
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private EmbeddedDatabase database;
+    private MutableClock clock;
+    private JdbcCeremonyStateStore store;
+    private CeremonyTokenSealer sealer;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+        store = new JdbcCeremonyStateStore(new JdbcTemplate(database), clock, 500);
+        store.initializeSchema();
+        sealer = new CeremonyTokenSealer(SECRET, ROTATION, TTL, store, clock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void unsealReturnsSealedPayload() {
+        String token = sealer.seal(CeremonyType.REGISTRATION, "alice", bytes("state"), TTL);
+
+        assertArrayEquals(bytes("state"), sealer.unseal(CeremonyType.REGISTRATION, "alice", token).orElseThrow());
+    }
+
+    @Test
+    void tamperedCiphertextIsRejected() {
+        String token = sealer.seal(CeremonyType.REGISTRATION, "alice", bytes("state"), TTL);
+        byte[] raw = Base64.getUrlDecoder().decode(token);
+        raw[raw.length - 20] ^= 1;
+
+        assertTrue(sealer.unseal(CeremonyType.REGISTRATION, "alice", encode(raw)).isEmpty());
+    }
+
+    @Test
+    void tamperedHeaderIsRejected() {
+        String token = sealer.seal(CeremonyType.REGISTRATION, "alice", bytes("state"), TTL);
+        byte[] raw = Base64.getUrlDecoder().decode(token);
+        raw[10] ^= 1; // iv
+
+        assertTrue(sealer.unseal(CeremonyType.REGISTRATION, "alice", encode(raw)).isEmpty());
+    }
+
+    @Test
+    void tokenIsBoundToCeremonyTypeAndKey() {
+        String token = sealer.seal(CeremonyType.REGISTRATION, "alice", bytes("state"), TTL);
+
+        assertTrue(sealer.unseal(CeremonyType.ASSERTION, "alice", token).isEmpty());
+        assertTrue(sealer.unseal(CeremonyType.REGISTRATION, "bob", token).isEmpty());
+        // 綁定檢查失敗不消耗 nonce
+        assertTrue(sealer.unseal(CeremonyType.REGISTRATION, "alice", token).isPresent());
+    }
+
+    @Test
+    void malformedTokenIsRejected() {
+        assertTrue(sealer.unseal(CeremonyType.REGISTRATION, "alice", null).isEmpty());
+        assertTrue(sealer.unseal(CeremonyType.REGISTRATION, "alice", "").isEmpty());
+        assertTrue(sealer.unseal(CeremonyType.REGISTRATION, "alice", "not base64!").isEmpty());
+        assertTrue(sealer.unseal(CeremonyType.REGISTRATION, "alice", encode(new byte[] {1, 2, 3})).isEmpty());
+    }
+
+    @Test
+    void expiredTokenIsRejected() {
+        String token = sealer.seal(CeremonyType.REGISTRATION, "alice", bytes("state"), TTL);
+
+        clock.advance(TTL);
+
+        assertTrue(sealer.unseal(CeremonyType.REGISTRATION, "alice", token).isEmpty());
+    }
+
+    @Test
+    void replayedTokenIsRejected() {
+        String token = sealer.seal(CeremonyType.REGISTRATION, "alice", bytes("state"), TTL);
+
+        assertTrue(sealer.unseal(CeremonyType.REGISTRATION, "alice", token).isPresent());
+        assertTrue(sealer.unseal(CeremonyType.REGISTRATION, "alice", token).isEmpty());
+    }
+
+    @Test
+    void replayIsRejectedByNodesSharingTheStore() {
+        CeremonyTokenSealer otherNode = new CeremonyTokenSealer(SECRET, ROTATION, TTL, store, clock);
+        String token = sealer.seal(CeremonyType.REGISTRATION, "alice", bytes("state"), TTL);
+
+        assertTrue(sealer.unseal(CeremonyType.REGISTRATION, "alice", token).isPresent());
+        assertTrue(otherNode.unseal(CeremonyType.REGISTRATION, "alice", token).isEmpty());
+    }
+
+    @Test
+    void tokenFromPreviousEpochIsAccepted() {
+        clock.advance(ROTATION.minus(Duration.ofMinutes(1)));
+        String token = sealer.seal(CeremonyType.REGISTRATION, "alice", bytes("state"), TTL);
+
+        clock.advance(Duration.ofMinutes(2));
+
+        Optional<byte[]> payload = sealer.unseal(CeremonyType.REGISTRATION, "alice", token);
+        assertArrayEquals(bytes("state"), payload.orElseThrow());
+    }
+
+    @Test
+    void tokenOlderThanPreviousEpochIsRejected() {
+        String token = sealer.seal(CeremonyType.REGISTRATION, "alice", bytes("state"), ROTATION.multipliedBy(3));
+
+        clock.advance(ROTATION.multipliedBy(2));
+
+        assertTrue(sealer.unseal(CeremonyType.REGISTRATION, "alice", token).isEmpty());
+    }
+
+    @Test
+    void tokenFromAnotherSecretIsRejected() {
+        byte[] otherSecret = Arrays.copyOf(SECRET, SECRET.length);
+        otherSecret[0] ^= 1;
+        CeremonyTokenSealer other = new CeremonyTokenSealer(otherSecret, ROTATION, TTL, store, clock);
+        String token = other.seal(CeremonyType.REGISTRATION, "alice", bytes("state"), TTL);
+
+        assertTrue(sealer.unseal(CeremonyType.REGISTRATION, "alice", token).isEmpty());
+    }
+
+    @Test
+    void rotationShorterThanTtlIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new CeremonyTokenSealer(SECRET, Duration.ofMinutes(1), TTL, store, clock));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String encode(byte[] raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        private void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.webauthn.app.infrastructure.ceremony;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JdbcCeremonyStateStoreTest {
+    private static final Duration TTL = Duration.ofMinutes(5);
+
+    private EmbeddedDatabase database;
+    private MutableClock clock;
+    private JdbcTemplate jdbcTemplate;
+    private JdbcCeremonyStateStore store;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+        jdbcTemplate = new JdbcTemplate(database);
+        store = new JdbcCeremonyStateStore(jdbcTemplate, clock, 2);
+        store.initializeSchema();
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void savedStateIsVisibleToAnotherStoreInstance() {
+        store.save(CeremonyType.REGISTRATION, "alice", bytes("options"), TTL);
+
+        JdbcCeremonyStateStore otherNode = new JdbcCeremonyStateStore(jdbcTemplate, clock, 2);
+        assertArrayEquals(bytes("options"), otherNode.find(CeremonyType.REGISTRATION, "alice").orElseThrow());
+        assertTrue(otherNode.find(CeremonyType.ASSERTION, "alice").isEmpty());
+    }
+
+    @Test
+    void saveOverwritesExistingKey() {
+        store.save(CeremonyType.REGISTRATION, "alice", bytes("first"), TTL);
+        store.save(CeremonyType.REGISTRATION, "alice", bytes("second"), TTL);
+
+        assertArrayEquals(bytes("second"), store.find(CeremonyType.REGISTRATION, "alice").orElseThrow());
+    }
+
+    @Test
+    void takeReturnsStateOnlyOnce() {
+        store.save(CeremonyType.ASSERTION, "alice", bytes("request"), TTL);
+
+        assertArrayEquals(bytes("request"), store.take(CeremonyType.ASSERTION, "alice").orElseThrow());
+        assertTrue(store.take(CeremonyType.ASSERTION, "alice").isEmpty());
+    }
+
+    @Test
+    void putIfAbsentOnlySucceedsOnceAcrossNodesUntilExpired() {
+        JdbcCeremonyStateStore otherNode = new JdbcCeremonyStateStore(jdbcTemplate, clock, 2);
+
+        assertTrue(store.putIfAbsent(CeremonyType.SEALED_NONCE, "nonce", new byte[0], TTL));
+        assertFalse(otherNode.putIfAbsent(CeremonyType.SEALED_NONCE, "nonce", new byte[0], TTL));
+
+        clock.advance(TTL);
+        assertTrue(otherNode.putIfAbsent(CeremonyType.SEALED_NONCE, "nonce", new byte[0], TTL));
+    }
+
+    @Test
+    void expiredStateIsNotReturned() {
+        store.save(CeremonyType.REGISTRATION, "alice", bytes("options"), TTL);
+        clock.advance(TTL);
+
+        assertTrue(store.find(CeremonyType.REGISTRATION, "alice").isEmpty());
+        assertTrue(store.take(CeremonyType.REGISTRATION, "alice").isEmpty());
+    }
+
+    @Test
+    void purgeExpiredDeletesInBatches() {
+        for (int i = 0; i < 5; i++) {
+            store.save(CeremonyType.REGISTRATION, "expired-" + i, bytes("options"), TTL);
+        }
+        store.save(CeremonyType.REGISTRATION, "live", bytes("options"), TTL.multipliedBy(2));
+        clock.advance(TTL);
+
+        assertEquals(5, store.purgeExpired());
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ceremony_state", Integer.class));
+        assertTrue(store.find(CeremonyType.REGISTRATION, "live").isPresent());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        private void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
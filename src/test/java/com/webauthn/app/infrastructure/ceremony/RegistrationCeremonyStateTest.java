@@ -0,0 +1,57 @@
+package com.webauthn.app.infrastructure.ceremony;
+
+import java.util.Arrays;
+
+import com.webauthn.app.utility.Utility;
+import com.yubico.webauthn.data.ByteArray;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RegistrationCeremonyStateTest {
+
+    @Test
+    void bytesRoundTrip() {
+        RegistrationCeremonyState state = new RegistrationCeremonyState(1, Utility.generateRandom(32), Utility.generateRandom(32));
+
+        byte[] bytes = state.toBytes();
+        RegistrationCeremonyState restored = RegistrationCeremonyState.fromBytes(bytes);
+
+        assertEquals(68, bytes.length);
+        assertEquals(state.getProfileId(), restored.getProfileId());
+        assertEquals(state.getChallenge(), restored.getChallenge());
+        assertEquals(state.getUserHandle(), restored.getUserHandle());
+    }
+
+    @Test
+    void rejectsEveryTruncation() {
+        byte[] bytes = new RegistrationCeremonyState(1, Utility.generateRandom(32), Utility.generateRandom(32)).toBytes();
+
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            assertThrows(IllegalArgumentException.class, () -> RegistrationCeremonyState.fromBytes(truncated), "length " + length);
+        }
+    }
+
+    @Test
+    void rejectsTrailingBytes() {
+        byte[] bytes = new RegistrationCeremonyState(1, new ByteArray(new byte[] {1}), new ByteArray(new byte[] {2})).toBytes();
+
+        assertThrows(IllegalArgumentException.class, () -> RegistrationCeremonyState.fromBytes(Arrays.copyOf(bytes, bytes.length + 1)));
+    }
+
+    @Test
+    void rejectsUnknownVersion() {
+        byte[] bytes = new RegistrationCeremonyState(1, Utility.generateRandom(32), Utility.generateRandom(32)).toBytes();
+        bytes[0] = 2;
+
+        assertThrows(IllegalArgumentException.class, () -> RegistrationCeremonyState.fromBytes(bytes));
+    }
+
+    @Test
+    void rejectsNull() {
+        assertThrows(IllegalArgumentException.class, () -> RegistrationCeremonyState.fromBytes(null));
+    }
+}
@@ -0,0 +1,145 @@
+package com.webauthn.app.infrastructure.outbox;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import com.webauthn.app.configuration.KeycloakProperties;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeycloakOutboxTest {
+    private EmbeddedDatabase database;
+    private MutableClock clock;
+    private JdbcTemplate jdbcTemplate;
+    private KeycloakProperties.Outbox properties;
+    private KeycloakOutbox outbox;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+        jdbcTemplate = new JdbcTemplate(database);
+        properties = new KeycloakProperties.Outbox();
+        properties.setMaxAttempts(3);
+        outbox = new KeycloakOutbox(jdbcTemplate, clock, properties);
+        outbox.initializeSchema();
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void claimedTaskIsNotClaimedByAnotherNodeUntilLockExpires() {
+        outbox.enqueue(1, "alice");
+        outbox.enqueue(2, "bob");
+
+        KeycloakOutbox otherNode = new KeycloakOutbox(jdbcTemplate, clock, properties);
+        assertEquals(2, outbox.claim(10).size());
+        assertTrue(otherNode.claim(10).isEmpty());
+
+        clock.advance(properties.getLockTimeout().plusSeconds(1));
+        assertEquals(2, otherNode.claim(10).size());
+    }
+
+    @Test
+    void failedTaskBacksOffExponentiallyThenStops() {
+        outbox.enqueue(1, "alice");
+
+        OutboxTask first = outbox.claim(10).get(0);
+        assertTrue(outbox.retryLater(first, "connection refused"));
+        assertTrue(outbox.claim(10).isEmpty());
+        assertEquals(clock.millis() + 1_000, outbox.find(1).orElseThrow().getNextAttemptAt());
+
+        clock.advance(Duration.ofSeconds(1));
+        OutboxTask second = outbox.claim(10).get(0);
+        assertEquals(1, second.getAttempts());
+        assertTrue(outbox.retryLater(second, "connection refused"));
+        assertEquals(clock.millis() + 2_000, outbox.find(1).orElseThrow().getNextAttemptAt());
+
+        clock.advance(Duration.ofSeconds(2));
+        assertFalse(outbox.retryLater(outbox.claim(10).get(0), "still down"));
+
+        OutboxStatus status = outbox.find(1).orElseThrow();
+        assertEquals(3, status.getAttempts());
+        assertNull(status.getNextAttemptAt());
+        assertEquals("still down", status.getLastError());
+        clock.advance(Duration.ofDays(1));
+        assertTrue(outbox.claim(10).isEmpty());
+        assertEquals(1, outbox.parked());
+    }
+
+    @Test
+    void releasedTaskIsClaimableAgainWithoutUsingAnAttempt() {
+        outbox.enqueue(1, "alice");
+
+        outbox.release(outbox.claim(10).get(0));
+
+        List<OutboxTask> reclaimed = outbox.claim(10);
+        assertEquals(1, reclaimed.size());
+        assertEquals(0, reclaimed.get(0).getAttempts());
+    }
+
+    @Test
+    void backlogReportsPendingCountAndOldestAge() {
+        outbox.enqueue(1, "alice");
+        clock.advance(Duration.ofSeconds(30));
+        outbox.enqueue(2, "bob");
+        clock.advance(Duration.ofSeconds(10));
+
+        Backlog backlog = outbox.backlog();
+        assertEquals(2, backlog.getPending());
+        assertEquals(Duration.ofSeconds(40), backlog.getLag());
+
+        List<OutboxTask> claimed = outbox.claim(10);
+        claimed.forEach(task -> outbox.complete(task.getUserId()));
+        assertEquals(0, outbox.backlog().getPending());
+        assertEquals(Duration.ZERO, outbox.backlog().getLag());
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        private void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
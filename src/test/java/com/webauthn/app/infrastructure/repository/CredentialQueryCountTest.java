@@ -0,0 +1,98 @@
+package com.webauthn.app.infrastructure.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import com.webauthn.app.authenticator.Authenticator;
+import com.webauthn.app.service.RegistrationOptionsFactory;
+import com.webauthn.app.service.RegistrationProfile;
+import com.webauthn.app.user.AppUser;
+import com.webauthn.app.utility.Utility;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.RelyingParty;
+import com.yubico.webauthn.StartAssertionOptions;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import com.yubico.webauthn.data.UserIdentity;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * 每個 ceremony 對 DB 發出的 SQL 數量，關閉 credential 快取以量測實際查詢
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "authn.credential-cache.enabled=false"
+})
+class CredentialQueryCountTest {
+    private static final int CREDENTIALS_PER_USER = 5;
+
+    @Autowired
+    private RegistrationRepository registrationRepository;
+    @Autowired
+    private RegistrationOptionsFactory registrationOptionsFactory;
+    @Autowired
+    private RelyingParty relyingParty;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private AppUser user;
+    private ByteArray credentialId;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        String username = "count-" + Utility.generateRandom(8).getHex();
+        user = registrationRepository.getUserRepo().save(new AppUser(UserIdentity.builder()
+                .name(username)
+                .displayName(username)
+                .id(Utility.generateRandom(32))
+                .build()));
+        for (int i = 0; i < CREDENTIALS_PER_USER; i++) {
+            Authenticator authenticator = new Authenticator();
+            ReflectionTestUtils.setField(authenticator, "credentialId", Utility.generateRandom(32));
+            ReflectionTestUtils.setField(authenticator, "publicKey", Utility.generateRandom(77));
+            ReflectionTestUtils.setField(authenticator, "aaguid", Utility.generateRandom(16));
+            ReflectionTestUtils.setField(authenticator, "count", 0L);
+            ReflectionTestUtils.setField(authenticator, "user", user);
+            credentialId = registrationRepository.getAuthRepository().save(authenticator).getCredentialId();
+        }
+        statistics.clear();
+    }
+
+    @Test
+    void startRegistrationLoadsExcludeListInOneStatement() {
+        PublicKeyCredentialCreationOptions options = registrationOptionsFactory.create(user.toUserIdentity(), RegistrationProfile.CROSS_PLATFORM);
+
+        assertThat(options.getExcludeCredentials()).hasValueSatisfying(excludes -> assertThat(excludes).hasSize(CREDENTIALS_PER_USER));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void startAssertionLoadsAllowListInOneStatement() {
+        AssertionRequest request = relyingParty.startAssertion(StartAssertionOptions.builder()
+                .username(user.getUsername())
+                .build());
+
+        assertThat(request.getPublicKeyCredentialRequestOptions().getAllowCredentials())
+                .hasValueSatisfying(allowed -> assertThat(allowed).hasSize(CREDENTIALS_PER_USER));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void lookupUsesOneStatementWithoutEntityLoads() {
+        assertThat(registrationRepository.lookup(credentialId, user.getHandle())).isPresent();
+        assertThat(registrationRepository.lookupAll(credentialId)).hasSize(1);
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+}
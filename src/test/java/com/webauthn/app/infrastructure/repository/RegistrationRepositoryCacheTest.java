@@ -0,0 +1,98 @@
+package com.webauthn.app.infrastructure.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.webauthn.app.authenticator.Authenticator;
+import com.webauthn.app.infrastructure.cache.CacheStats;
+import com.webauthn.app.infrastructure.cache.RegisteredCredentialCache;
+import com.webauthn.app.user.AppUser;
+import com.webauthn.app.utility.Utility;
+import com.yubico.webauthn.RegisteredCredential;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.UserIdentity;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@SpringBootTest
+class RegistrationRepositoryCacheTest {
+    @Autowired
+    private RegistrationRepository registrationRepository;
+    @Autowired
+    private RegisteredCredentialCache credentialCache;
+
+    private AppUser user;
+    private Authenticator authenticator;
+
+    @BeforeEach
+    void setUp() {
+        String username = "cache-" + Utility.generateRandom(8).getHex();
+        user = registrationRepository.getUserRepo().save(new AppUser(UserIdentity.builder()
+                .name(username)
+                .displayName(username)
+                .id(Utility.generateRandom(32))
+                .build()));
+        authenticator = new Authenticator();
+        ReflectionTestUtils.setField(authenticator, "credentialId", Utility.generateRandom(32));
+        ReflectionTestUtils.setField(authenticator, "publicKey", Utility.generateRandom(77));
+        ReflectionTestUtils.setField(authenticator, "aaguid", Utility.generateRandom(16));
+        ReflectionTestUtils.setField(authenticator, "count", 0L);
+        ReflectionTestUtils.setField(authenticator, "user", user);
+        authenticator = registrationRepository.getAuthRepository().save(authenticator);
+    }
+
+    @Test
+    void secondLookupIsServedFromCache() {
+        ByteArray credentialId = authenticator.getCredentialId();
+        CacheStats before = credentialCache.stats();
+
+        assertThat(registrationRepository.lookup(credentialId, user.getHandle())).isPresent();
+        assertThat(registrationRepository.lookupAll(credentialId)).hasSize(1);
+
+        CacheStats after = credentialCache.stats();
+        assertThat(after.getMissCount() - before.getMissCount()).isEqualTo(1);
+        assertThat(after.getHitCount() - before.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void lookupRequiresMatchingUserHandle() {
+        assertThat(registrationRepository.lookup(authenticator.getCredentialId(), Utility.generateRandom(32))).isEmpty();
+    }
+
+    @Test
+    void updateInvalidatesCachedCredential() {
+        ByteArray credentialId = authenticator.getCredentialId();
+        registrationRepository.lookupAll(credentialId);
+
+        ReflectionTestUtils.setField(authenticator, "count", 42L);
+        registrationRepository.getAuthRepository().save(authenticator);
+
+        assertThat(registrationRepository.lookupAll(credentialId))
+                .extracting(RegisteredCredential::getSignatureCount)
+                .containsExactly(42L);
+    }
+
+    @Test
+    void deleteInvalidatesCachedCredential() {
+        ByteArray credentialId = authenticator.getCredentialId();
+        registrationRepository.lookupAll(credentialId);
+
+        registrationRepository.getAuthRepository().delete(authenticator);
+
+        assertThat(registrationRepository.lookupAll(credentialId)).isEmpty();
+    }
+
+    @Test
+    void deleteUserRemovesCredentialsAndInvalidatesCache() {
+        ByteArray credentialId = authenticator.getCredentialId();
+        registrationRepository.lookupAll(credentialId);
+
+        registrationRepository.deleteUser(user);
+
+        assertThat(registrationRepository.lookupAll(credentialId)).isEmpty();
+        assertThat(registrationRepository.getUserRepo().findById(user.getId())).isEmpty();
+    }
+}
@@ -0,0 +1,113 @@
+package com.webauthn.app.infrastructure.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.webauthn.app.authenticator.Authenticator;
+import com.webauthn.app.user.AppUser;
+import com.webauthn.app.utility.Utility;
+import com.yubico.webauthn.RegisteredCredential;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.UserIdentity;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@SpringBootTest(properties = "authn.signature-counter.flush-interval=PT1H")
+class SignatureCounterWriterTest {
+    @Autowired
+    private RegistrationRepository registrationRepository;
+    @Autowired
+    private SignatureCounterWriter signatureCounterWriter;
+
+    private AppUser user;
+    private Authenticator authenticator;
+
+    @BeforeEach
+    void setUp() {
+        signatureCounterWriter.flush();
+        String username = "counter-" + Utility.generateRandom(8).getHex();
+        user = registrationRepository.getUserRepo().save(new AppUser(UserIdentity.builder()
+                .name(username)
+                .displayName(username)
+                .id(Utility.generateRandom(32))
+                .build()));
+        authenticator = new Authenticator();
+        ReflectionTestUtils.setField(authenticator, "credentialId", Utility.generateRandom(32));
+        ReflectionTestUtils.setField(authenticator, "publicKey", Utility.generateRandom(77));
+        ReflectionTestUtils.setField(authenticator, "aaguid", Utility.generateRandom(16));
+        ReflectionTestUtils.setField(authenticator, "count", 0L);
+        ReflectionTestUtils.setField(authenticator, "user", user);
+        authenticator = registrationRepository.getAuthRepository().save(authenticator);
+    }
+
+    @Test
+    void lookupSeesPendingCounterBeforeFlush() {
+        ByteArray credentialId = authenticator.getCredentialId();
+        registrationRepository.lookupAll(credentialId);
+
+        signatureCounterWriter.record(credentialId, 5);
+        signatureCounterWriter.record(credentialId, 7);
+        signatureCounterWriter.record(credentialId, 6);
+
+        assertThat(lookupCount()).isEqualTo(7);
+        assertThat(storedCount()).isZero();
+    }
+
+    @Test
+    void loginsAreCoalescedIntoOneUpdate() {
+        ByteArray credentialId = authenticator.getCredentialId();
+        signatureCounterWriter.record(credentialId, 5);
+        signatureCounterWriter.record(credentialId, 7);
+
+        assertThat(signatureCounterWriter.flush()).isEqualTo(1);
+        assertThat(signatureCounterWriter.pendingCount()).isZero();
+        assertThat(storedCount()).isEqualTo(7);
+        assertThat(lookupCount()).isEqualTo(7);
+    }
+
+    @Test
+    void counterNeverMovesBackwards() {
+        ByteArray credentialId = authenticator.getCredentialId();
+        signatureCounterWriter.record(credentialId, 9);
+        signatureCounterWriter.flush();
+
+        signatureCounterWriter.record(credentialId, 3);
+
+        assertThat(lookupCount()).isEqualTo(9);
+        assertThat(signatureCounterWriter.flush()).isZero();
+        assertThat(storedCount()).isEqualTo(9);
+    }
+
+    @Test
+    void lookupThatReadTheCacheBeforeFlushStillSeesTheFlushedCounter() {
+        ByteArray credentialId = authenticator.getCredentialId();
+        // flush 使快取失效之前就已讀到的舊值
+        RegisteredCredential stale = registrationRepository.lookup(credentialId, user.getHandle()).orElseThrow();
+        signatureCounterWriter.record(credentialId, 7);
+
+        signatureCounterWriter.flush();
+
+        assertThat(signatureCounterWriter.pendingCount()).isZero();
+        assertThat(signatureCounterWriter.apply(stale).getSignatureCount()).isEqualTo(7);
+    }
+
+    @Test
+    void zeroCountersAreNotRecorded() {
+        signatureCounterWriter.record(authenticator.getCredentialId(), 0);
+
+        assertThat(signatureCounterWriter.pendingCount()).isZero();
+    }
+
+    private long lookupCount() {
+        return registrationRepository.lookup(authenticator.getCredentialId(), user.getHandle())
+                .map(RegisteredCredential::getSignatureCount)
+                .orElseThrow();
+    }
+
+    private long storedCount() {
+        return registrationRepository.getAuthRepository().findById(authenticator.getId()).orElseThrow().getCount();
+    }
+}
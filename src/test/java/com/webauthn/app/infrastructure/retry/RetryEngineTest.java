@@ -0,0 +1,122 @@
+package com.webauthn.app.infrastructure.retry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import reactor.core.publisher.Mono;
+
+class RetryEngineTest {
+    private static final RetryPolicy FAST = RetryPolicy.builder()
+            .maxAttempts(3)
+            .initialBackoff(Duration.ofMillis(10))
+            .maxBackoff(Duration.ofMillis(50))
+            .build();
+
+    @Test
+    void retriesUntilSuccessAndRecordsMetrics() {
+        RetryEngine engine = new RetryEngine(new RetryBudget(10, 10));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        engine.bindTo(registry);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = engine.execute("flaky", FAST, () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("down");
+            }
+            return "ok";
+        });
+
+        assertThat(result).isEqualTo("ok");
+        assertThat(attempts).hasValue(3);
+        assertThat(registry.get("retry.calls").tag("operation", "flaky").functionCounter().count()).isEqualTo(1.0);
+        assertThat(registry.get("retry.retries").tag("operation", "flaky").functionCounter().count()).isEqualTo(2.0);
+    }
+
+    @Test
+    void nonRetryableErrorFailsImmediately() {
+        RetryEngine engine = new RetryEngine(new RetryBudget(10, 10));
+        RetryPolicy policy = RetryPolicy.builder()
+                .initialBackoff(Duration.ofMillis(10))
+                .retryOn(e -> !(e instanceof IllegalArgumentException))
+                .build();
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> engine.retry("invalid", policy, Mono.fromRunnable(() -> {
+            attempts.incrementAndGet();
+            throw new IllegalArgumentException("bad request");
+        })).block()).isInstanceOf(IllegalArgumentException.class);
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void exhaustedRetriesRethrowTheLastError() {
+        RetryEngine engine = new RetryEngine(new RetryBudget(10, 10));
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> engine.execute("down", FAST, () -> {
+            throw new IllegalStateException("attempt " + attempts.incrementAndGet());
+        })).isInstanceOf(IllegalStateException.class).hasMessage("attempt 3");
+    }
+
+    @Test
+    void maxElapsedStopsRetryingEarly() {
+        RetryEngine engine = new RetryEngine(new RetryBudget(10, 10));
+        RetryPolicy policy = RetryPolicy.builder()
+                .maxAttempts(10)
+                .initialBackoff(Duration.ofMillis(100))
+                .jitter(RetryPolicy.Jitter.NONE)
+                .maxElapsed(Duration.ofMillis(250))
+                .build();
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> engine.execute("slow", policy, () -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("down");
+        })).isInstanceOf(IllegalStateException.class);
+        // 0ms, 100ms 後重試，下一次要等 200ms 會超過 250ms
+        assertThat(attempts).hasValue(2);
+    }
+
+    @Test
+    void budgetCapsRetriesAcrossCalls() {
+        RetryEngine engine = new RetryEngine(new RetryBudget(0, 2));
+        AtomicInteger attempts = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> engine.execute("budget", FAST, () -> {
+                attempts.incrementAndGet();
+                throw new IllegalStateException("down");
+            })).isInstanceOf(IllegalStateException.class);
+        }
+
+        // 3 次呼叫 + 額度內的 2 次重試
+        assertThat(attempts).hasValue(5);
+    }
+
+    @Test
+    void jitteredDelaysStayWithinBounds() {
+        RetryPolicy full = RetryPolicy.builder()
+                .initialBackoff(Duration.ofMillis(100))
+                .maxBackoff(Duration.ofMillis(1000))
+                .jitter(RetryPolicy.Jitter.FULL)
+                .build();
+        RetryPolicy decorrelated = RetryPolicy.builder()
+                .initialBackoff(Duration.ofMillis(100))
+                .maxBackoff(Duration.ofMillis(1000))
+                .jitter(RetryPolicy.Jitter.DECORRELATED)
+                .build();
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(full.nextDelay(3, Duration.ZERO)).isBetween(Duration.ZERO, Duration.ofMillis(400));
+            assertThat(decorrelated.nextDelay(2, Duration.ofMillis(200))).isBetween(Duration.ofMillis(100), Duration.ofMillis(600));
+            assertThat(decorrelated.nextDelay(5, Duration.ofMillis(900))).isLessThanOrEqualTo(Duration.ofMillis(1000));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.webauthn.app.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * AdminTokenManager：到期時大量並發只更新一次，且到期前在背景更新
+ */
+class AdminTokenManagerTest {
+    private static final int THREADS = 500;
+
+    private final AtomicInteger fetches = new AtomicInteger();
+    private final AtomicBoolean failing = new AtomicBoolean();
+    private volatile Duration lifetime = Duration.ofMinutes(5);
+    private final AdminTokenManager manager = new AdminTokenManager(() -> Mono.defer(() -> {
+        int fetch = fetches.incrementAndGet();
+        if (failing.get()) {
+            return Mono.error(new IllegalStateException("token endpoint unavailable"));
+        }
+        // 模擬 token endpoint 的延遲，讓並發請求都落在同一次更新期間
+        return Mono.delay(Duration.ofMillis(200)).thenReturn(new AdminTokenManager.IssuedToken("token-" + fetch, lifetime));
+    }));
+
+    @AfterEach
+    void tearDown() {
+        manager.close();
+    }
+
+    @Test
+    void concurrentCallersOnExpiredTokenShareOneFetch() throws Exception {
+        lifetime = Duration.ofMillis(400);
+        manager.token().block();
+        // 背景更新失敗，token 到期
+        failing.set(true);
+        Thread.sleep(600);
+        failing.set(false);
+        // 新 token 不會在斷言前觸發背景更新
+        lifetime = Duration.ofMinutes(5);
+        int before = fetches.get();
+
+        List<String> tokens = callConcurrently();
+
+        assertThat(fetches.get() - before).isEqualTo(1);
+        assertThat(tokens).hasSize(THREADS).containsOnly("token-" + fetches.get());
+    }
+
+    @Test
+    void coldStartFetchesOnce() throws Exception {
+        List<String> tokens = callConcurrently();
+
+        assertThat(fetches.get()).isEqualTo(1);
+        assertThat(tokens).containsOnly("token-1");
+    }
+
+    @Test
+    void refreshesInBackgroundBeforeExpiry() throws Exception {
+        lifetime = Duration.ofSeconds(2);
+        assertThat(manager.token().block()).isEqualTo("token-1");
+
+        // 提前 1/4 壽命（500ms）更新，不需任何請求觸發
+        Thread.sleep(1900);
+        assertThat(fetches.get()).isEqualTo(2);
+        long start = System.nanoTime();
+        assertThat(manager.token().block()).isEqualTo("token-2");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(100));
+    }
+
+    @Test
+    void failedFetchIsSharedAndNotCached() {
+        failing.set(true);
+        assertThat(IntStream.range(0, 3).mapToObj(i -> manager.token().onErrorReturn("failed").block()))
+                .containsOnly("failed");
+
+        failing.set(false);
+        assertThat(manager.token().block()).startsWith("token-");
+    }
+
+    private List<String> callConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CyclicBarrier barrier = new CyclicBarrier(THREADS);
+            CountDownLatch done = new CountDownLatch(THREADS);
+            List<Future<String>> results = IntStream.range(0, THREADS)
+                    .mapToObj(i -> executor.submit(() -> {
+                        try {
+                            barrier.await();
+                            return manager.token().block(Duration.ofSeconds(10));
+                        } finally {
+                            done.countDown();
+                        }
+                    }))
+                    .toList();
+            assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+            return results.stream().map(result -> {
+                try {
+                    return result.get();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }).toList();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
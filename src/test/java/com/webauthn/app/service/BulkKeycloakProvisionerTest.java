@@ -0,0 +1,165 @@
+package com.webauthn.app.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.webauthn.app.configuration.KeycloakProperties;
+import com.webauthn.app.infrastructure.retry.RetryEngine;
+import com.webauthn.app.strategy.DefaultRoleStrategy;
+import com.webauthn.app.support.FakeKeycloak;
+import com.webauthn.app.user.AppUser;
+import com.webauthn.app.utility.Utility;
+import com.yubico.webauthn.data.UserIdentity;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+/**
+ * partial import 分批建立帳號：每個 chunk 一次請求，已存在的略過，被拒絕的 chunk 拆開後只有問題用戶失敗
+ * 認證錯誤不拆開，429 退避後重送
+ */
+class BulkKeycloakProvisionerTest {
+    private FakeKeycloak keycloak;
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private DefaultRoleStrategy roleStrategy;
+    private BulkKeycloakProvisioner provisioner;
+
+    @BeforeEach
+    void setUp() {
+        keycloak = FakeKeycloak.start();
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("create table app_user (id bigint not null, username varchar(255) not null, keycloak_user_id varchar(255), primary key (id))");
+
+        KeycloakProperties properties = new KeycloakProperties();
+        properties.setServerUrl(keycloak.url());
+        properties.setRealm("test");
+        properties.getBulk().setChunkSize(10);
+        properties.getRetry().setInitialBackoff(Duration.ofMillis(50));
+        roleStrategy = new DefaultRoleStrategy();
+        roleStrategy.setDefault(List.of("view_entry_role"));
+        RetryEngine retryEngine = new RetryEngine(properties);
+        ReactiveKeycloakService keycloakService = new ReactiveKeycloakService(properties, new KeycloakCallMetrics(), new KeycloakHttpClient(properties),
+                new KeycloakCircuitBreaker(properties, event -> { }), retryEngine);
+        provisioner = new BulkKeycloakProvisioner(keycloakService, roleStrategy, jdbcTemplate, retryEngine, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        keycloak.close();
+        database.shutdown();
+    }
+
+    @Test
+    void createsUsersWithRolesInOneRequestPerChunk() {
+        List<AppUser> users = users(25);
+
+        BulkProvisioningResult result = provisioner.provision(users);
+
+        assertThat(result.getCreated()).isEqualTo(25);
+        assertThat(result.getFailed()).isEmpty();
+        assertThat(keycloak.calls("POST /partialImport")).isEqualTo(3);
+        for (AppUser user : users) {
+            String keycloakUserId = keycloak.userId(user.getUsername());
+            assertThat(user.getKeycloakUserId()).isEqualTo(keycloakUserId);
+            assertThat(storedKeycloakUserId(user)).isEqualTo(keycloakUserId);
+            assertThat(keycloak.roleMappings(keycloakUserId)).hasSize(1);
+        }
+    }
+
+    @Test
+    void existingUsersAreSkippedAndKeepTheirId() {
+        List<AppUser> users = users(5);
+        String existing = keycloak.createUser(users.get(2).getUsername());
+
+        BulkProvisioningResult result = provisioner.provision(users);
+
+        assertThat(result.getCreated()).isEqualTo(4);
+        assertThat(result.getSkipped()).isEqualTo(1);
+        assertThat(storedKeycloakUserId(users.get(2))).isEqualTo(existing);
+    }
+
+    @Test
+    void rejectedChunkIsSplitUntilOnlyTheInvalidUserFails() {
+        roleStrategy = new DefaultRoleStrategy() {
+            @Override
+            public List<String> getDefaultRoles(String username) {
+                return "user-3".equals(username) ? List.of("no-such-role") : List.of("view_entry_role");
+            }
+        };
+        KeycloakProperties properties = new KeycloakProperties();
+        properties.setServerUrl(keycloak.url());
+        properties.setRealm("test");
+        properties.getBulk().setChunkSize(10);
+        RetryEngine retryEngine = new RetryEngine(properties);
+        provisioner = new BulkKeycloakProvisioner(new ReactiveKeycloakService(properties, new KeycloakCallMetrics(), new KeycloakHttpClient(properties),
+                new KeycloakCircuitBreaker(properties, event -> { }), retryEngine),
+                roleStrategy, jdbcTemplate, retryEngine, properties);
+        List<AppUser> users = users(10);
+
+        BulkProvisioningResult result = provisioner.provision(users);
+
+        assertThat(result.getCreated()).isEqualTo(9);
+        assertThat(result.getFailed()).containsOnlyKeys("user-3");
+        assertThat(keycloak.hasUser("user-3")).isFalse();
+        assertThat(storedKeycloakUserId(users.get(3))).isNull();
+    }
+
+    @Test
+    void forbiddenChunkFailsWithoutSplitting() {
+        keycloak.failPartialImport(HttpResponseStatus.FORBIDDEN);
+        List<AppUser> users = users(10);
+
+        BulkProvisioningResult result = provisioner.provision(users);
+
+        assertThat(result.getFailed()).hasSize(10);
+        assertThat(keycloak.calls("POST /partialImport")).isEqualTo(1);
+    }
+
+    @Test
+    void throttledChunkIsRetriedAfterBackoff() {
+        keycloak.failPartialImport(HttpResponseStatus.TOO_MANY_REQUESTS);
+        List<AppUser> users = users(10);
+
+        BulkProvisioningResult result = provisioner.provision(users);
+
+        assertThat(result.getCreated()).isEqualTo(10);
+        assertThat(result.getFailed()).isEmpty();
+        assertThat(keycloak.calls("POST /partialImport")).isEqualTo(2);
+    }
+
+    private List<AppUser> users(int count) {
+        List<AppUser> users = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String username = "user-" + i;
+            AppUser user = new AppUser(UserIdentity.builder()
+                    .name(username)
+                    .displayName(username)
+                    .id(Utility.generateRandom(32))
+                    .build());
+            ReflectionTestUtils.setField(user, "id", (long) i);
+            jdbcTemplate.update("insert into app_user (id, username) values (?, ?)", i, username);
+            users.add(user);
+        }
+        return users;
+    }
+
+    private String storedKeycloakUserId(AppUser user) {
+        return jdbcTemplate.queryForObject("select keycloak_user_id from app_user where id = ?", String.class, user.getId());
+    }
+}
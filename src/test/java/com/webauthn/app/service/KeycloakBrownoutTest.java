@@ -0,0 +1,89 @@
+package com.webauthn.app.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+
+import com.webauthn.app.configuration.KeycloakProperties;
+import com.webauthn.app.infrastructure.retry.RetryEngine;
+import com.webauthn.app.support.FakeKeycloak;
+import com.webauthn.app.support.LatencyDistribution;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Keycloak 部分故障（隨機 503、409、長尾延遲、token 變慢）時，建立帳號仍能以重試完成
+ */
+class KeycloakBrownoutTest {
+    private static final List<String> ROLES = List.of("view_entry_role");
+
+    private FakeKeycloak keycloak;
+    private ReactiveKeycloakService service;
+
+    @BeforeEach
+    void setUp() {
+        keycloak = FakeKeycloak.start(LatencyDistribution.logNormal(Duration.ofMillis(5), Duration.ofMillis(50)));
+        KeycloakProperties properties = new KeycloakProperties();
+        properties.setServerUrl(keycloak.url());
+        properties.setRealm("test");
+        properties.getRetry().setMaxAttempts(10);
+        properties.getRetry().setInitialBackoff(Duration.ofMillis(10));
+        properties.getRetry().setMaxBackoff(Duration.ofMillis(100));
+        properties.getRetry().setBudgetBurst(1000);
+        // 只觀察重試，不讓 circuit breaker 開啟
+        properties.getCircuitBreaker().setFailureRateThreshold(100);
+        properties.getCircuitBreaker().setSlowCallRateThreshold(100);
+        service = new ReactiveKeycloakService(properties, new KeycloakCallMetrics(), new KeycloakHttpClient(properties),
+                new KeycloakCircuitBreaker(properties, event -> { }), new RetryEngine(properties));
+    }
+
+    @AfterEach
+    void tearDown() {
+        keycloak.close();
+    }
+
+    @Test
+    void provisioningCompletesDespiteRandomServerErrors() {
+        keycloak.setErrorRate(0.3);
+
+        List<String> userIds = Flux.range(0, 50)
+                .flatMap(i -> service.createUserWithRetry("user-" + i), 8)
+                .collectList()
+                .block();
+
+        assertThat(userIds).hasSize(50).doesNotContainNull();
+        assertThat(keycloak.calls("FAULT 503")).isPositive();
+        for (int i = 0; i < 50; i++) {
+            assertThat(keycloak.hasUser("user-" + i)).isTrue();
+        }
+    }
+
+    @Test
+    void injectedConflictResolvesToTheExistingUser() {
+        keycloak.setConflictRate(1.0);
+
+        String userId = service.createUserWithRetry("alice").block();
+
+        assertThat(userId).isEqualTo(keycloak.userId("alice"));
+        assertThat(keycloak.calls("FAULT 409")).isEqualTo(1);
+    }
+
+    @Test
+    void slowTokenEndpointOnlyDelaysTheFirstCall() {
+        keycloak.setTokenLatency(LatencyDistribution.fixed(Duration.ofMillis(500)));
+        service.getAdminToken().block();
+
+        long start = System.nanoTime();
+        String userId = service.createUserWithRetry("bob")
+                .flatMap(id -> service.assignRoles(id, ROLES).thenReturn(id))
+                .block();
+
+        assertThat(userId).isEqualTo(keycloak.userId("bob"));
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(500));
+    }
+}
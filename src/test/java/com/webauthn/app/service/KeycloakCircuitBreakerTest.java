@@ -0,0 +1,170 @@
+package com.webauthn.app.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.webauthn.app.configuration.KeycloakProperties;
+import com.webauthn.app.exception.KeycloakUnavailableException;
+import com.webauthn.app.infrastructure.retry.RetryEngine;
+import com.webauthn.app.support.FakeKeycloak;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Keycloak 故障時 circuit breaker 開啟後不再送出請求，恢復後經 half-open 關閉；bulkhead 超過上限立即拒絕
+ */
+class KeycloakCircuitBreakerTest {
+    private final MutableClock clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+    private final List<KeycloakCircuitStateChangedEvent> events = new CopyOnWriteArrayList<>();
+    private FakeKeycloak keycloak;
+    private KeycloakCircuitBreaker circuitBreaker;
+    private ReactiveKeycloakService service;
+
+    @AfterEach
+    void tearDown() {
+        if (keycloak != null) {
+            keycloak.close();
+        }
+    }
+
+    @Test
+    void opensOnFailuresAndClosesAfterSuccessfulHalfOpenCalls() {
+        start(Duration.ZERO, 10);
+        keycloak.setAvailable(false);
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(() -> service.getUserId("alice").block()).isInstanceOf(RuntimeException.class);
+        }
+        assertThat(circuitBreaker.getState()).isEqualTo(KeycloakCircuitBreaker.State.OPEN);
+        assertThat(circuitBreaker.isCallPermitted()).isFalse();
+
+        keycloak.resetCalls();
+        assertThatThrownBy(() -> service.getUserId("alice").block())
+                .satisfies(e -> assertThat(KeycloakUnavailableException.isCause(e)).isTrue());
+        assertThat(keycloak.totalCalls()).isZero();
+
+        keycloak.setAvailable(true);
+        clock.advance(Duration.ofSeconds(31));
+        assertThat(circuitBreaker.isCallPermitted()).isTrue();
+        // token + GET /users 兩次試探
+        service.getUserId("alice").block();
+
+        assertThat(circuitBreaker.getState()).isEqualTo(KeycloakCircuitBreaker.State.CLOSED);
+        assertThat(events).extracting(KeycloakCircuitStateChangedEvent::getCurrent).containsExactly(
+                KeycloakCircuitBreaker.State.OPEN, KeycloakCircuitBreaker.State.HALF_OPEN, KeycloakCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void bulkheadRejectsCallsBeyondTheLimit() {
+        start(Duration.ofMillis(300), 1);
+        service.getAdminToken().block();
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+        Flux.merge(service.getUserId("alice").onErrorResume(e -> record(errors, e)),
+                        service.getUserId("bob").onErrorResume(e -> record(errors, e)))
+                .blockLast();
+
+        assertThat(errors).hasSize(1);
+        assertThat(KeycloakUnavailableException.isCause(errors.get(0))).isTrue();
+        assertThat(circuitBreaker.getState()).isEqualTo(KeycloakCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void cancellingACallStartedWhileClosedDoesNotAddHalfOpenProbes() {
+        KeycloakProperties properties = new KeycloakProperties();
+        properties.getCircuitBreaker().setWindowSize(4);
+        properties.getCircuitBreaker().setMinimumCalls(4);
+        properties.getCircuitBreaker().setHalfOpenCalls(2);
+        circuitBreaker = new KeycloakCircuitBreaker(properties, event -> { }, clock);
+        ExchangeFilterFunction filter = circuitBreaker.filter();
+        ClientRequest request = ClientRequest.create(HttpMethod.GET, URI.create("http://keycloak/admin")).build();
+        ExchangeFunction hanging = r -> Mono.never();
+        ExchangeFunction failing = r -> Mono.just(ClientResponse.create(HttpStatus.INTERNAL_SERVER_ERROR).build());
+
+        Disposable startedWhileClosed = filter.filter(request, hanging).subscribe();
+        for (int i = 0; i < 4; i++) {
+            filter.filter(request, failing).block();
+        }
+        assertThat(circuitBreaker.getState()).isEqualTo(KeycloakCircuitBreaker.State.OPEN);
+
+        clock.advance(Duration.ofSeconds(31));
+        Disposable firstProbe = filter.filter(request, hanging).subscribe();
+        assertThat(circuitBreaker.getState()).isEqualTo(KeycloakCircuitBreaker.State.HALF_OPEN);
+        startedWhileClosed.dispose();
+        Disposable secondProbe = filter.filter(request, hanging).subscribe();
+
+        // 只有 half-open-calls 次試探
+        assertThatThrownBy(() -> filter.filter(request, failing).block())
+                .satisfies(e -> assertThat(KeycloakUnavailableException.isCause(e)).isTrue());
+
+        // 取消的試探歸還次數
+        secondProbe.dispose();
+        assertThat(filter.filter(request, failing).block().statusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        firstProbe.dispose();
+    }
+
+    private void start(Duration latency, int maxConcurrentCalls) {
+        keycloak = FakeKeycloak.start(latency);
+        KeycloakProperties properties = new KeycloakProperties();
+        properties.setServerUrl(keycloak.url());
+        properties.setRealm("test");
+        properties.getCircuitBreaker().setWindowSize(4);
+        properties.getCircuitBreaker().setMinimumCalls(4);
+        properties.getCircuitBreaker().setHalfOpenCalls(2);
+        properties.getBulkhead().setMaxConcurrentCalls(maxConcurrentCalls);
+        circuitBreaker = new KeycloakCircuitBreaker(properties, event -> events.add((KeycloakCircuitStateChangedEvent) event), clock);
+        service = new ReactiveKeycloakService(properties, new KeycloakCallMetrics(), new KeycloakHttpClient(properties), circuitBreaker,
+                new RetryEngine(properties));
+    }
+
+    private static Mono<String> record(List<Throwable> errors, Throwable e) {
+        errors.add(e);
+        return Mono.empty();
+    }
+
+    private static final class MutableClock extends Clock {
+        private volatile Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        private void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
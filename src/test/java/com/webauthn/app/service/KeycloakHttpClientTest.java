@@ -0,0 +1,87 @@
+package com.webauthn.app.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import com.webauthn.app.configuration.KeycloakProperties;
+import com.webauthn.app.infrastructure.retry.RetryEngine;
+import com.webauthn.app.support.FakeKeycloak;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Keycloak 連線池：回應過慢時在 timeout 內失敗，連線池狀態以 keycloak.http.pool.* 公開
+ */
+class KeycloakHttpClientTest {
+    private FakeKeycloak keycloak;
+    private KeycloakHttpClient httpClient;
+
+    @AfterEach
+    void tearDown() {
+        httpClient.shutdown();
+        keycloak.close();
+    }
+
+    @Test
+    void slowKeycloakFailsWithinResponseTimeout() {
+        keycloak = FakeKeycloak.start(Duration.ofSeconds(2));
+        KeycloakProperties properties = properties();
+        properties.getHttp().setResponseTimeout(Duration.ofMillis(200));
+        ReactiveKeycloakService service = service(properties);
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> service.getAdminToken().block()).isInstanceOf(RuntimeException.class);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void poolMetricsReflectConnectionsAndAcquires() {
+        keycloak = FakeKeycloak.start();
+        KeycloakProperties properties = properties();
+        ReactiveKeycloakService service = service(properties);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        httpClient.bindTo(registry);
+
+        service.createUser("alice").block();
+        awaitReleased(registry);
+
+        assertThat(registry.get("keycloak.http.pool.allocated").gauge().value()).isPositive();
+        assertThat(registry.get("keycloak.http.pool.idle").gauge().value())
+                .isEqualTo(registry.get("keycloak.http.pool.allocated").gauge().value());
+        assertThat(registry.get("keycloak.http.pool.active").gauge().value()).isZero();
+        assertThat(registry.get("keycloak.http.pool.pending").gauge().value()).isZero();
+        assertThat(registry.get("keycloak.http.pool.max").gauge().value()).isEqualTo(50.0);
+        // token + POST /users
+        assertThat(registry.get("keycloak.http.pool.acquire").functionTimer().count()).isEqualTo(2.0);
+        assertThat(registry.get("keycloak.http.pool.acquire").functionTimer().totalTime(TimeUnit.NANOSECONDS)).isPositive();
+    }
+
+    /**
+     * 連線在回應送達呼叫端之後才歸還連線池，先等待歸還
+     */
+    private static void awaitReleased(SimpleMeterRegistry registry) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (registry.get("keycloak.http.pool.active").gauge().value() > 0 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private KeycloakProperties properties() {
+        KeycloakProperties properties = new KeycloakProperties();
+        properties.setServerUrl(keycloak.url());
+        properties.setRealm("test");
+        return properties;
+    }
+
+    private ReactiveKeycloakService service(KeycloakProperties properties) {
+        httpClient = new KeycloakHttpClient(properties);
+        return new ReactiveKeycloakService(properties, new KeycloakCallMetrics(), httpClient,
+                new KeycloakCircuitBreaker(properties, event -> { }), new RetryEngine(properties));
+    }
+}
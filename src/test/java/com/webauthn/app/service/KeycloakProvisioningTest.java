@@ -0,0 +1,73 @@
+package com.webauthn.app.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import com.webauthn.app.configuration.KeycloakProperties;
+import com.webauthn.app.infrastructure.retry.RetryEngine;
+import com.webauthn.app.support.FakeKeycloak;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 建立 Keycloak user 的往返次數：userId 取自 Location，已存在以 409 判斷，查詢一律 exact
+ */
+class KeycloakProvisioningTest {
+    private static final List<String> ROLES = List.of("view_entry_role");
+
+    private FakeKeycloak keycloak;
+    private KeycloakCallMetrics metrics;
+    private ReactiveKeycloakService service;
+
+    @BeforeEach
+    void setUp() {
+        keycloak = FakeKeycloak.start();
+        KeycloakProperties properties = new KeycloakProperties();
+        properties.setServerUrl(keycloak.url());
+        properties.setRealm("test");
+        metrics = new KeycloakCallMetrics();
+        service = new ReactiveKeycloakService(properties, metrics, new KeycloakHttpClient(properties),
+                new KeycloakCircuitBreaker(properties, event -> { }), new RetryEngine(properties));
+        // token 與角色快取先載入，只量測每次註冊本身的呼叫
+        service.assignRoles(service.createUserWithRetry("warm-up").block(), ROLES).block();
+        keycloak.resetCalls();
+    }
+
+    @AfterEach
+    void tearDown() {
+        keycloak.close();
+    }
+
+    @Test
+    void newUserTakesOneCallToCreateAndOneToAssignRoles() {
+        String userId = metrics.measureRegistration(service.createUserWithRetry("alice")
+                .flatMap(id -> service.assignRoles(id, ROLES).thenReturn(id))).block();
+
+        assertThat(userId).isEqualTo(keycloak.userId("alice"));
+        assertThat(keycloak.calls("POST /users")).isEqualTo(1);
+        assertThat(keycloak.calls("POST /role-mappings")).isEqualTo(1);
+        assertThat(keycloak.totalCalls()).isEqualTo(2);
+        assertThat(metrics.callsPerRegistration()).isEqualTo(2.0);
+    }
+
+    @Test
+    void existingUserIsResolvedFromConflictWithExactLookup() {
+        String existing = keycloak.createUser("bob");
+        keycloak.createUser("bobby");
+
+        assertThat(service.createUserWithRetry("bob").block()).isEqualTo(existing);
+        assertThat(keycloak.calls("POST /users")).isEqualTo(1);
+        assertThat(keycloak.calls("GET /users")).isEqualTo(1);
+    }
+
+    @Test
+    void lookupDoesNotMatchSimilarUsernames() {
+        keycloak.createUser("carol-admin");
+
+        assertThat(service.getUserId("carol").block()).isNull();
+        assertThat(service.userExists("carol").block()).isFalse();
+    }
+}
@@ -0,0 +1,78 @@
+package com.webauthn.app.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.webauthn.app.configuration.KeycloakProperties;
+import com.webauthn.app.infrastructure.retry.RetryEngine;
+import com.webauthn.app.support.FakeKeycloak;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * userId 查詢結果快取：重複查詢、查無此人、建立後與刪除後的行為
+ */
+class KeycloakUserIdCacheTest {
+    private FakeKeycloak keycloak;
+    private ReactiveKeycloakService service;
+
+    @BeforeEach
+    void setUp() {
+        keycloak = FakeKeycloak.start();
+        KeycloakProperties properties = new KeycloakProperties();
+        properties.setServerUrl(keycloak.url());
+        properties.setRealm("test");
+        service = new ReactiveKeycloakService(properties, new KeycloakCallMetrics(), new KeycloakHttpClient(properties),
+                new KeycloakCircuitBreaker(properties, event -> { }), new RetryEngine(properties));
+        service.getAdminToken().block();
+        keycloak.resetCalls();
+    }
+
+    @AfterEach
+    void tearDown() {
+        keycloak.close();
+    }
+
+    @Test
+    void repeatedLookupsSearchKeycloakOnce() {
+        String existing = keycloak.createUser("alice");
+
+        assertThat(service.getUserId("alice").block()).isEqualTo(existing);
+        assertThat(service.getUserId("ALICE").block()).isEqualTo(existing);
+        assertThat(service.userExists("alice").block()).isTrue();
+        assertThat(keycloak.calls("GET /users")).isEqualTo(1);
+    }
+
+    @Test
+    void missingUserIsCachedUntilCreated() {
+        assertThat(service.userExists("bob").block()).isFalse();
+        assertThat(service.userExists("bob").block()).isFalse();
+        assertThat(keycloak.calls("GET /users")).isEqualTo(1);
+
+        String userId = service.createUserWithRetry("bob").block();
+
+        assertThat(service.getUserId("bob").block()).isEqualTo(userId);
+        assertThat(keycloak.calls("GET /users")).isEqualTo(1);
+    }
+
+    @Test
+    void conflictBypassesStaleNegativeEntry() {
+        assertThat(service.userExists("carol").block()).isFalse();
+        // 其他節點在快取期間建立了帳號
+        String existing = keycloak.createUser("carol");
+
+        assertThat(service.createUserWithRetry("carol").block()).isEqualTo(existing);
+        assertThat(service.getUserId("carol").block()).isEqualTo(existing);
+    }
+
+    @Test
+    void deleteEvictsTheCachedId() {
+        String userId = service.createUserWithRetry("dave").block();
+
+        service.deleteUser(userId).block();
+
+        assertThat(service.getUserId("dave").block()).isNull();
+        assertThat(keycloak.calls("GET /users")).isEqualTo(1);
+    }
+}
@@ -0,0 +1,93 @@
+package com.webauthn.app.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import com.webauthn.app.configuration.KeycloakProperties;
+import com.webauthn.app.infrastructure.retry.RetryEngine;
+import com.webauthn.app.support.FakeKeycloak;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * assignRoles 透過 RealmRoleCache 取得角色，不再逐一查詢 /roles/{name}
+ */
+class RealmRoleCacheTest {
+    private static final List<String> ROLES = List.of("view_entry_role", "authenticated-user");
+
+    private FakeKeycloak keycloak;
+    private ReactiveKeycloakService service;
+
+    @BeforeEach
+    void setUp() {
+        keycloak = FakeKeycloak.start();
+        KeycloakProperties properties = new KeycloakProperties();
+        properties.setServerUrl(keycloak.url());
+        properties.setRealm("test");
+        // concurrentMissesShareOneLoad 同時送出 50 個 assignRoles
+        properties.getBulkhead().setMaxConcurrentCalls(100);
+        service = new ReactiveKeycloakService(properties, new KeycloakCallMetrics(), new KeycloakHttpClient(properties),
+                new KeycloakCircuitBreaker(properties, event -> { }), new RetryEngine(properties));
+    }
+
+    @AfterEach
+    void tearDown() {
+        keycloak.close();
+    }
+
+    @Test
+    void loadsAllRolesOnceForRepeatedAssignments() {
+        for (int i = 0; i < 5; i++) {
+            String userId = service.createUser("cached-" + i).block();
+            service.assignRoles(userId, ROLES).block();
+            assertThat(keycloak.roleMappings(userId)).hasSize(2);
+        }
+
+        assertThat(keycloak.calls("GET /roles")).isEqualTo(1);
+        assertThat(keycloak.calls("GET /roles/{name}")).isZero();
+    }
+
+    @Test
+    void reloadsAndRetriesOnceWhenRoleWasRecreated() {
+        service.assignRoles(service.createUser("before").block(), ROLES).block();
+        keycloak.recreateRole("authenticated-user");
+
+        String userId = service.createUser("after").block();
+        service.assignRoles(userId, ROLES).block();
+
+        assertThat(keycloak.roleMappings(userId)).hasSize(2);
+        assertThat(keycloak.calls("GET /roles")).isEqualTo(2);
+        assertThat(keycloak.calls("POST /role-mappings")).isEqualTo(3);
+    }
+
+    @Test
+    void missingRoleIsSkippedWithoutReloading() {
+        for (int i = 0; i < 3; i++) {
+            String userId = service.createUser("missing-" + i).block();
+            service.assignRoles(userId, List.of("view_entry_role", "no-such-role")).block();
+            assertThat(keycloak.roleMappings(userId)).hasSize(1);
+        }
+
+        assertThat(keycloak.calls("GET /roles")).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() {
+        List<String> userIds = IntStream.range(0, 50)
+                .mapToObj(i -> service.createUser("concurrent-" + i).block())
+                .toList();
+
+        Flux.fromIterable(userIds)
+                .flatMap(userId -> service.assignRoles(userId, ROLES), userIds.size())
+                .blockLast();
+
+        assertThat(keycloak.calls("GET /roles")).isEqualTo(1);
+        assertThat(userIds).allSatisfy(userId -> assertThat(keycloak.roleMappings(userId)).hasSize(2));
+    }
+}
@@ -0,0 +1,82 @@
+package com.webauthn.app.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Optional;
+import java.util.Set;
+
+import com.webauthn.app.configuration.WebAuthProperties;
+import com.webauthn.app.infrastructure.ceremony.RegistrationCeremonyState;
+import com.webauthn.app.utility.Utility;
+import com.yubico.webauthn.CredentialRepository;
+import com.yubico.webauthn.RegisteredCredential;
+import com.yubico.webauthn.RelyingParty;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import com.yubico.webauthn.data.RelyingPartyIdentity;
+import com.yubico.webauthn.data.UserIdentity;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 由暫存狀態重建的 options 與 startRegistration 產生的 options 一致
+ */
+class RegistrationOptionsFactoryTest {
+    private final RegistrationOptionsFactory factory = new RegistrationOptionsFactory(relyingParty(), new WebAuthProperties());
+
+    @Test
+    void rebuildFromStoredStateMatchesCreatedOptions() {
+        UserIdentity user = UserIdentity.builder()
+                .name("alice")
+                .displayName("Alice")
+                .id(Utility.generateRandom(32))
+                .build();
+        PublicKeyCredentialCreationOptions created = factory.create(user, RegistrationProfile.CROSS_PLATFORM);
+
+        RegistrationCeremonyState state = RegistrationCeremonyState.fromBytes(
+                RegistrationOptionsFactory.toState(created, RegistrationProfile.CROSS_PLATFORM).toBytes());
+        PublicKeyCredentialCreationOptions rebuilt = factory.rebuild(user, state);
+
+        assertThat(rebuilt.getChallenge()).isEqualTo(created.getChallenge());
+        assertThat(rebuilt.getUser()).isEqualTo(created.getUser());
+        assertThat(rebuilt.getAuthenticatorSelection()).isEqualTo(created.getAuthenticatorSelection());
+        assertThat(rebuilt.getPubKeyCredParams()).isEqualTo(created.getPubKeyCredParams());
+        assertThat(rebuilt.getRp()).isEqualTo(created.getRp());
+        assertThat(rebuilt.getTimeout()).isEqualTo(created.getTimeout());
+        assertThat(rebuilt.getAttestation()).isEqualTo(created.getAttestation());
+    }
+
+    private static RelyingParty relyingParty() {
+        CredentialRepository repository = new CredentialRepository() {
+            @Override
+            public Set<PublicKeyCredentialDescriptor> getCredentialIdsForUsername(String username) {
+                return Set.of();
+            }
+
+            @Override
+            public Optional<ByteArray> getUserHandleForUsername(String username) {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<String> getUsernameForUserHandle(ByteArray userHandle) {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<RegisteredCredential> lookup(ByteArray credentialId, ByteArray userHandle) {
+                return Optional.empty();
+            }
+
+            @Override
+            public Set<RegisteredCredential> lookupAll(ByteArray credentialId) {
+                return Set.of();
+            }
+        };
+        return RelyingParty.builder()
+                .identity(RelyingPartyIdentity.builder().id("localhost").name("test").build())
+                .credentialRepository(repository)
+                .build();
+    }
+}
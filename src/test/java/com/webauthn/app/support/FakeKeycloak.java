@@ -0,0 +1,345 @@
+package com.webauthn.app.support;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+/**
+ * 測試用的 in-process Keycloak Admin API，以 Reactor Netty 在隨機 port 啟動
+ * 只實作本專案用到的 token、users、roles、role-mappings、delete、partialImport
+ * 可在執行中調整延遲分佈、token endpoint 延遲、503 比例與 409 比例，重現 Keycloak 變慢或部分故障
+ */
+public class FakeKeycloak implements AutoCloseable {
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final Map<String, String> userIds = new ConcurrentHashMap<>();
+    private final Map<String, List<Object>> roleMappings = new ConcurrentHashMap<>();
+    // realm role name → id，預設為 keycloak.yml 設定的角色
+    private final Map<String, String> roles = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+    // 接下來的 partialImport 依序回應的錯誤狀態
+    private final Queue<HttpResponseStatus> partialImportFailures = new ConcurrentLinkedQueue<>();
+    private volatile LatencyDistribution latency;
+    // null 時與其他請求相同
+    private volatile LatencyDistribution tokenLatency;
+    private volatile double errorRate;
+    private volatile double conflictRate;
+    private volatile boolean roleMappingFailure;
+    private volatile boolean available = true;
+    private final DisposableServer server;
+
+    private FakeKeycloak(LatencyDistribution latency) {
+        this.latency = latency;
+        for (String role : List.of("view_entry_role", "authenticated-user", "webauthn-enabled")) {
+            recreateRole(role);
+        }
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .handle(this::handle)
+                .bindNow();
+    }
+
+    public static FakeKeycloak start() {
+        return start(Duration.ZERO);
+    }
+
+    public static FakeKeycloak start(Duration latency) {
+        return start(LatencyDistribution.fixed(latency));
+    }
+
+    public static FakeKeycloak start(LatencyDistribution latency) {
+        return new FakeKeycloak(latency);
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.port();
+    }
+
+    /**
+     * 直接建立 user，模擬先前已建立或其他系統建立的帳號
+     */
+    public String createUser(String username) {
+        return userIds.computeIfAbsent(username, key -> UUID.randomUUID().toString());
+    }
+
+    public boolean hasUser(String username) {
+        return userIds.containsKey(username);
+    }
+
+    public String userId(String username) {
+        return userIds.get(username);
+    }
+
+    public List<Object> roleMappings(String userId) {
+        return roleMappings.getOrDefault(userId, List.of());
+    }
+
+    /**
+     * false 時所有請求回應 503
+     */
+    public void setAvailable(boolean available) {
+        this.available = available;
+    }
+
+    public void setLatency(LatencyDistribution latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * 只影響 token endpoint，模擬取得 token 變慢
+     */
+    public void setTokenLatency(LatencyDistribution tokenLatency) {
+        this.tokenLatency = tokenLatency;
+    }
+
+    /**
+     * 以此比例隨機回應 503，計入 calls("FAULT 503")
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * 建立 user 時以此比例回應 409，並與 Keycloak 相同地保留帳號，模擬其他節點同時建立
+     */
+    public void setConflictRate(double conflictRate) {
+        this.conflictRate = conflictRate;
+    }
+
+    /**
+     * 接下來的 partialImport 請求依序以這些狀態回應，用完後恢復正常
+     */
+    public void failPartialImport(HttpResponseStatus... statuses) {
+        partialImportFailures.addAll(List.of(statuses));
+    }
+
+    /**
+     * true 時指派角色一律回應 500，模擬建立帳號之後的步驟失敗
+     */
+    public void setRoleMappingFailure(boolean roleMappingFailure) {
+        this.roleMappingFailure = roleMappingFailure;
+    }
+
+    /**
+     * 刪除後以相同名稱重建角色（id 改變），模擬快取中的角色已過時
+     */
+    public void recreateRole(String name) {
+        roles.put(name, UUID.randomUUID().toString());
+    }
+
+    /**
+     * @param route 如 "POST /users"、"GET /roles"
+     */
+    public int calls(String route) {
+        AtomicInteger count = calls.get(route);
+        return count == null ? 0 : count.get();
+    }
+
+    public int totalCalls() {
+        return calls.values().stream().mapToInt(AtomicInteger::get).sum();
+    }
+
+    public void resetCalls() {
+        calls.clear();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    private Mono<Void> handle(HttpServerRequest request, HttpServerResponse response) {
+        QueryStringDecoder uri = new QueryStringDecoder(request.uri());
+        String[] path = uri.path().split("/");
+        LatencyDistribution delay = tokenLatency != null && path.length == 6 && "token".equals(path[5]) ? tokenLatency : latency;
+        return request.receive().aggregate().asString().defaultIfEmpty("")
+                .delayElement(delay.next())
+                .flatMap(body -> {
+                    if (!available) {
+                        return status(response, HttpResponseStatus.SERVICE_UNAVAILABLE);
+                    }
+                    if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                        count("FAULT 503");
+                        return status(response, HttpResponseStatus.SERVICE_UNAVAILABLE);
+                    }
+                    return route(request.method(), path, uri, body, response);
+                });
+    }
+
+    private Mono<Void> route(HttpMethod method, String[] path, QueryStringDecoder uri, String body, HttpServerResponse response) {
+        // /realms/{realm}/protocol/openid-connect/token
+        if (method.equals(HttpMethod.POST) && path.length == 6 && "token".equals(path[5])) {
+            count("POST /token");
+            return json(response, Map.of("access_token", UUID.randomUUID().toString(), "expires_in", 300));
+        }
+        // /admin/realms/{realm}/...
+        if (path.length < 5 || !"admin".equals(path[1])) {
+            return status(response, HttpResponseStatus.NOT_FOUND);
+        }
+        String resource = path[4];
+        if ("users".equals(resource) && path.length == 5) {
+            if (method.equals(HttpMethod.GET)) {
+                count("GET /users");
+                String username = uri.parameters().getOrDefault("username", List.of("")).get(0);
+                boolean exact = "true".equals(uri.parameters().getOrDefault("exact", List.of("false")).get(0));
+                // 與 Keycloak 相同，未指定 exact 時為模糊搜尋
+                return json(response, userIds.entrySet().stream()
+                        .filter(user -> exact ? user.getKey().equalsIgnoreCase(username) : user.getKey().contains(username))
+                        .map(user -> Map.of("id", user.getValue(), "username", user.getKey()))
+                        .toList());
+            }
+            if (method.equals(HttpMethod.POST)) {
+                count("POST /users");
+                String username = read(body).get("username").toString();
+                if (conflictRate > 0 && ThreadLocalRandom.current().nextDouble() < conflictRate) {
+                    count("FAULT 409");
+                    createUser(username);
+                    return status(response, HttpResponseStatus.CONFLICT);
+                }
+                String id = UUID.randomUUID().toString();
+                if (userIds.putIfAbsent(username, id) != null) {
+                    return status(response, HttpResponseStatus.CONFLICT);
+                }
+                response.header("Location", url() + "/admin/realms/" + path[3] + "/users/" + id);
+                return status(response, HttpResponseStatus.CREATED);
+            }
+        }
+        if ("users".equals(resource) && path.length == 6 && method.equals(HttpMethod.DELETE)) {
+            count("DELETE /users");
+            boolean removed = userIds.values().remove(path[5]);
+            roleMappings.remove(path[5]);
+            return status(response, removed ? HttpResponseStatus.NO_CONTENT : HttpResponseStatus.NOT_FOUND);
+        }
+        if ("users".equals(resource) && path.length == 8 && "role-mappings".equals(path[6]) && method.equals(HttpMethod.POST)) {
+            count("POST /role-mappings");
+            if (roleMappingFailure) {
+                return status(response, HttpResponseStatus.INTERNAL_SERVER_ERROR);
+            }
+            if (!userIds.containsValue(path[5])) {
+                return status(response, HttpResponseStatus.NOT_FOUND);
+            }
+            List<Object> mappings = readList(body);
+            for (Object mapping : mappings) {
+                Map<?, ?> role = (Map<?, ?>) mapping;
+                if (!role.get("id").equals(roles.get(role.get("name")))) {
+                    return status(response, HttpResponseStatus.NOT_FOUND);
+                }
+            }
+            roleMappings.put(path[5], mappings);
+            return status(response, HttpResponseStatus.NO_CONTENT);
+        }
+        if ("partialImport".equals(resource) && path.length == 5 && method.equals(HttpMethod.POST)) {
+            count("POST /partialImport");
+            HttpResponseStatus failure = partialImportFailures.poll();
+            if (failure != null) {
+                return status(response, failure);
+            }
+            return partialImport(read(body), response);
+        }
+        if ("roles".equals(resource) && path.length == 5 && method.equals(HttpMethod.GET)) {
+            count("GET /roles");
+            return json(response, roles.entrySet().stream()
+                    .map(role -> Map.of("id", role.getValue(), "name", role.getKey()))
+                    .toList());
+        }
+        if ("roles".equals(resource) && path.length == 6 && method.equals(HttpMethod.GET)) {
+            count("GET /roles/{name}");
+            String id = roles.get(path[5]);
+            return id == null
+                    ? status(response, HttpResponseStatus.NOT_FOUND)
+                    : json(response, Map.of("id", id, "name", path[5]));
+        }
+        return status(response, HttpResponseStatus.NOT_FOUND);
+    }
+
+    /**
+     * 與 Keycloak 相同整批為單一 transaction：任一用戶的 realm role 不存在時回應 400，所有用戶都不建立
+     */
+    private Mono<Void> partialImport(Map<String, Object> request, HttpServerResponse response) {
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> users = (List<Map<String, Object>>) request.getOrDefault("users", List.of());
+        for (Map<String, Object> user : users) {
+            for (Object role : (List<?>) user.getOrDefault("realmRoles", List.of())) {
+                if (!roles.containsKey(role)) {
+                    return status(response, HttpResponseStatus.BAD_REQUEST);
+                }
+            }
+        }
+        int added = 0;
+        int skipped = 0;
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (Map<String, Object> representation : users) {
+            String username = representation.get("username").toString().toLowerCase(Locale.ROOT);
+            String existing = userIds.get(username);
+            if (existing != null) {
+                skipped++;
+                results.add(Map.of("action", "SKIPPED", "resourceType", "USER", "resourceName", username, "id", existing));
+                continue;
+            }
+            String id = createUser(username);
+            roleMappings.put(id, ((List<?>) representation.getOrDefault("realmRoles", List.of())).stream()
+                    .map(role -> (Object) Map.of("id", roles.get(role), "name", role))
+                    .toList());
+            added++;
+            results.add(Map.of("action", "ADDED", "resourceType", "USER", "resourceName", username, "id", id));
+        }
+        return json(response, Map.of("added", added, "skipped", skipped, "overwritten", 0, "results", results));
+    }
+
+    private void count(String route) {
+        calls.computeIfAbsent(route, key -> new AtomicInteger()).incrementAndGet();
+    }
+
+    private static Mono<Void> json(HttpServerResponse response, Object body) {
+        try {
+            return response.status(HttpResponseStatus.OK)
+                    .header("Content-Type", "application/json")
+                    .sendString(Mono.just(JSON.writeValueAsString(body)))
+                    .then();
+        } catch (Exception e) {
+            return Mono.error(e);
+        }
+    }
+
+    private static Mono<Void> status(HttpServerResponse response, HttpResponseStatus status) {
+        return response.status(status).send();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> read(String body) {
+        try {
+            return JSON.readValue(body, Map.class);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> readList(String body) {
+        try {
+            return JSON.readValue(body, List.class);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
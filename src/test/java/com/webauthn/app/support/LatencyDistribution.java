@@ -0,0 +1,34 @@
+package com.webauthn.app.support;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * FakeKeycloak 每個請求的回應延遲
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+    // 標準常態分佈的 99 百分位
+    double Z_99 = 2.326;
+
+    Duration next();
+
+    static LatencyDistribution fixed(Duration latency) {
+        return () -> latency;
+    }
+
+    static LatencyDistribution uniform(Duration min, Duration max) {
+        long minNanos = min.toNanos();
+        long maxNanos = max.toNanos();
+        return () -> Duration.ofNanos(ThreadLocalRandom.current().nextLong(minNanos, maxNanos + 1));
+    }
+
+    /**
+     * 對數常態分佈，以中位數與 p99 描述長尾，接近實際服務的延遲
+     */
+    static LatencyDistribution logNormal(Duration median, Duration p99) {
+        double mu = Math.log(median.toNanos());
+        double sigma = Math.log((double) p99.toNanos() / median.toNanos()) / Z_99;
+        return () -> Duration.ofNanos((long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+}
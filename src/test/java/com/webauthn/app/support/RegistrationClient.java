@@ -0,0 +1,78 @@
+package com.webauthn.app.support;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * 以 HTTP 走完 /api/register → /api/finishauth 的測試 client
+ */
+public class RegistrationClient {
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final HttpClient http = HttpClient.newHttpClient();
+    private final String baseUrl;
+    private final SoftwareAuthenticator authenticator;
+
+    public RegistrationClient(String baseUrl, String origin) {
+        this.baseUrl = baseUrl;
+        this.authenticator = new SoftwareAuthenticator(origin);
+    }
+
+    /**
+     * 階段一：回傳 RestResult.data（publicKey、userId、ceremonyToken）
+     */
+    public CompletableFuture<JsonNode> register(String username) {
+        ObjectNode body = JSON.createObjectNode()
+                .put("username", username)
+                .put("display", username);
+        return post("/api/register", body).thenApply(result -> result.get("data"));
+    }
+
+    /**
+     * 階段二：以軟體認證器回應 challenge，回傳 RestResult.data（FinishRegistrationResponse）
+     */
+    public CompletableFuture<JsonNode> finish(String username, JsonNode registration) {
+        return post("/api/finishauth", finishBody(username, registration)).thenApply(result -> result.get("data"));
+    }
+
+    /**
+     * /api/finishauth 的 request body，供直接呼叫 RegistrationService 的測試使用
+     */
+    public ObjectNode finishBody(String username, JsonNode registration) {
+        ObjectNode body = JSON.createObjectNode()
+                .put("username", username)
+                .put("credname", "software");
+        body.set("credential", authenticator.create(registration.get("publicKey")));
+        body.set("ceremonyToken", registration.get("ceremonyToken"));
+        return body;
+    }
+
+    public JsonNode registerAndFinish(String username) {
+        return register(username).thenCompose(registration -> finish(username, registration)).join();
+    }
+
+    private CompletableFuture<JsonNode> post(String path, JsonNode body) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+        return http.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException(path + " returned " + response.statusCode() + ": " + response.body());
+                    }
+                    try {
+                        return JSON.readTree(response.body());
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+    }
+}
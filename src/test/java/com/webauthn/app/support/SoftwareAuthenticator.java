@@ -0,0 +1,109 @@
+package com.webauthn.app.support;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.upokecenter.cbor.CBORObject;
+
+/**
+ * 測試用的軟體認證器，依 /api/register 回傳的 publicKey options 產生 "none" attestation
+ * 讓測試與壓測不需瀏覽器即可走完 /api/finishauth
+ */
+public class SoftwareAuthenticator {
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+    private static final SecureRandom RANDOM = new SecureRandom();
+    // UP | UV | AT
+    private static final int FLAGS = 0x01 | 0x04 | 0x40;
+
+    private final String origin;
+
+    public SoftwareAuthenticator(String origin) {
+        this.origin = origin;
+    }
+
+    /**
+     * @param publicKey /api/register 回傳的 data.publicKey
+     * @return 可直接放進 FinishRegisrationRequest.credential 的 JSON
+     */
+    public ObjectNode create(JsonNode publicKey) {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            KeyPair keyPair = generator.generateKeyPair();
+            byte[] credentialId = new byte[32];
+            RANDOM.nextBytes(credentialId);
+
+            ObjectNode clientData = JSON.createObjectNode()
+                    .put("type", "webauthn.create")
+                    .put("challenge", publicKey.get("challenge").asText())
+                    .put("origin", origin)
+                    .put("crossOrigin", false);
+            byte[] clientDataJson = JSON.writeValueAsBytes(clientData);
+
+            byte[] authData = authenticatorData(publicKey.get("rp").get("id").asText(), credentialId,
+                    (ECPublicKey) keyPair.getPublic());
+            CBORObject attestation = CBORObject.NewMap()
+                    .Add("fmt", "none")
+                    .Add("attStmt", CBORObject.NewMap())
+                    .Add("authData", authData);
+
+            ObjectNode response = JSON.createObjectNode()
+                    .put("attestationObject", BASE64URL.encodeToString(attestation.EncodeToBytes()))
+                    .put("clientDataJSON", BASE64URL.encodeToString(clientDataJson));
+            ObjectNode credential = JSON.createObjectNode()
+                    .put("id", BASE64URL.encodeToString(credentialId))
+                    .put("type", "public-key");
+            credential.set("response", response);
+            credential.set("clientExtensionResults", JSON.createObjectNode());
+            return credential;
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to create credential", e);
+        }
+    }
+
+    private static byte[] authenticatorData(String rpId, byte[] credentialId, ECPublicKey publicKey) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(MessageDigest.getInstance("SHA-256").digest(rpId.getBytes(StandardCharsets.UTF_8)));
+        out.write(FLAGS);
+        out.write(ByteBuffer.allocate(4).putInt(0).array());
+        out.write(new byte[16]); // aaguid
+        out.write(ByteBuffer.allocate(2).putShort((short) credentialId.length).array());
+        out.write(credentialId);
+        out.write(coseKey(publicKey));
+        return out.toByteArray();
+    }
+
+    private static byte[] coseKey(ECPublicKey publicKey) {
+        return CBORObject.NewMap()
+                .Add(1, 2)   // kty: EC2
+                .Add(3, -7)  // alg: ES256
+                .Add(-1, 1)  // crv: P-256
+                .Add(-2, unsigned(publicKey.getW().getAffineX()))
+                .Add(-3, unsigned(publicKey.getW().getAffineY()))
+                .EncodeToBytes();
+    }
+
+    private static byte[] unsigned(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length == 32) {
+            return bytes;
+        }
+        byte[] fixed = new byte[32];
+        int length = Math.min(bytes.length, 32);
+        System.arraycopy(bytes, bytes.length - length, fixed, 32 - length, length);
+        return fixed;
+    }
+}
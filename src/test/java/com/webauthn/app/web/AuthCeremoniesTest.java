@@ -0,0 +1,54 @@
+package com.webauthn.app.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.webauthn.app.rq.FinishLoginRequest;
+import com.webauthn.app.rs.FinishLoginResponse;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * finishLogin 欄位缺漏時回傳一般的登入失敗，不會碰到 ceremony 暫存或 RelyingParty
+ */
+class AuthCeremoniesTest {
+    private final AuthCeremonies ceremonies = new AuthCeremonies(null, null, null, null, null);
+
+    @Test
+    void finishLoginWithoutUsernameFails() {
+        FinishLoginRequest request = request();
+        request.setUsername(null);
+
+        assertFailed(request);
+    }
+
+    @Test
+    void finishLoginWithoutRequestIdFails() {
+        FinishLoginRequest request = request();
+        request.setRequestId(null);
+
+        assertFailed(request);
+    }
+
+    @Test
+    void finishLoginWithoutCredentialFails() {
+        FinishLoginRequest request = request();
+        request.setCredential(" ");
+
+        assertFailed(request);
+    }
+
+    private void assertFailed(FinishLoginRequest request) {
+        FinishLoginResponse response = ceremonies.finishLogin(request).getData();
+
+        assertThat(response.isLoginSuccess()).isFalse();
+        assertThat(response.getMessage()).isEqualTo("Authentication failed");
+    }
+
+    private static FinishLoginRequest request() {
+        FinishLoginRequest request = new FinishLoginRequest();
+        request.setUsername("alice");
+        request.setRequestId("request-id");
+        request.setCredential("{}");
+        return request;
+    }
+}
@@ -0,0 +1,145 @@
+package com.webauthn.app.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.webauthn.app.configuration.KeycloakProperties;
+import com.webauthn.app.infrastructure.repository.RegistrationRepository;
+import com.webauthn.app.rq.FinishRegisrationRequest;
+import com.webauthn.app.service.RegistrationService;
+import com.webauthn.app.support.FakeKeycloak;
+import com.webauthn.app.support.LatencyDistribution;
+import com.webauthn.app.support.RegistrationClient;
+import com.webauthn.app.user.AppUser;
+import com.webauthn.app.user.RegistrationStatus;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import reactor.core.Disposable;
+
+/**
+ * /api/finishauth 完整流程：軟體認證器 + 測試用 Keycloak，阻塞與非阻塞兩種模式結果須一致
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class FinishRegistrationFlowTest {
+    private static final FakeKeycloak keycloak = FakeKeycloak.start();
+
+    @DynamicPropertySource
+    static void keycloakProperties(DynamicPropertyRegistry registry) {
+        registry.add("keycloak.server-url", keycloak::url);
+    }
+
+    @AfterAll
+    static void stopKeycloak() {
+        keycloak.close();
+    }
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private KeycloakProperties keycloakProperties;
+    @Autowired
+    private RegistrationRepository registrationRepository;
+    @Autowired
+    private RegistrationService registrationService;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private RegistrationClient client;
+
+    @BeforeEach
+    void setUp() {
+        client = new RegistrationClient("http://localhost:" + port, "http://localhost:4200");
+    }
+
+    @AfterEach
+    void restoreMode() {
+        keycloakProperties.setNonBlocking(true);
+        keycloak.setRoleMappingFailure(false);
+        keycloak.setLatency(LatencyDistribution.fixed(Duration.ZERO));
+    }
+
+    @Test
+    void nonBlockingRegistrationCreatesKeycloakUserWithDefaultRoles() {
+        keycloakProperties.setNonBlocking(true);
+
+        assertCompleted("flow-non-blocking");
+    }
+
+    @Test
+    void blockingRegistrationCreatesKeycloakUserWithDefaultRoles() {
+        keycloakProperties.setNonBlocking(false);
+
+        assertCompleted("flow-blocking");
+    }
+
+    @Test
+    void failedRoleAssignmentRemovesOnlyTheAccountItCreated() {
+        keycloak.setRoleMappingFailure(true);
+
+        for (boolean nonBlocking : new boolean[] {false, true}) {
+            keycloakProperties.setNonBlocking(nonBlocking);
+            // Keycloak 已有的帳號（409）不是這次建立的，不可刪除
+            String existingName = "flow-existing-" + nonBlocking;
+            String existing = keycloak.createUser(existingName);
+            String createdName = "flow-created-" + nonBlocking;
+
+            assertThat(client.registerAndFinish(existingName).path("registerSuccess").asBoolean()).isFalse();
+            assertThat(client.registerAndFinish(createdName).path("registerSuccess").asBoolean()).isFalse();
+
+            assertThat(keycloak.userId(existingName)).isEqualTo(existing);
+            assertThat(keycloak.hasUser(createdName)).isFalse();
+        }
+    }
+
+    @Test
+    void cancelledNonBlockingRegistrationStillCompletes() throws Exception {
+        JsonNode registration = client.register("flow-cancelled").join();
+        FinishRegisrationRequest request = objectMapper.treeToValue(client.finishBody("flow-cancelled", registration), FinishRegisrationRequest.class);
+        keycloak.setLatency(LatencyDistribution.fixed(Duration.ofMillis(300)));
+        int posts = keycloak.calls("POST /users");
+
+        // 用戶端在 Keycloak 回應前中斷連線
+        Disposable subscription = registrationService.completeRegistrationAsync(request).subscribe();
+        await(() -> keycloak.calls("POST /users") > posts);
+        subscription.dispose();
+
+        await(() -> registrationRepository.getUserRepo().findByUsername("flow-cancelled").getRegistrationStatus() == RegistrationStatus.COMPLETED);
+        AppUser user = registrationRepository.getUserRepo().findByUsername("flow-cancelled");
+        assertThat(user.getKeycloakUserId()).isEqualTo(keycloak.userId("flow-cancelled"));
+        assertThat(registrationRepository.getCredentialIdsForUsername("flow-cancelled")).hasSize(1);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Timed out");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private void assertCompleted(String username) {
+        JsonNode result = client.registerAndFinish(username);
+
+        assertThat(result.get("registerSuccess").asBoolean()).as(result.toString()).isTrue();
+        AppUser user = registrationRepository.getUserRepo().findByUsername(username);
+        assertThat(user.getRegistrationStatus()).isEqualTo(RegistrationStatus.COMPLETED);
+        assertThat(user.getKeycloakUserId()).isEqualTo(keycloak.userId(username));
+        assertThat(keycloak.roleMappings(user.getKeycloakUserId())).hasSize(1);
+        assertThat(registrationRepository.getCredentialIdsForUsername(username)).hasSize(1);
+    }
+}
@@ -0,0 +1,93 @@
+package com.webauthn.app.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import com.webauthn.app.infrastructure.outbox.KeycloakOutbox;
+import com.webauthn.app.infrastructure.outbox.OutboxStatus;
+import com.webauthn.app.infrastructure.repository.RegistrationRepository;
+import com.webauthn.app.service.KeycloakCircuitBreaker;
+import com.webauthn.app.service.KeycloakProvisioningWorker;
+import com.webauthn.app.service.ReactiveKeycloakService;
+import com.webauthn.app.support.FakeKeycloak;
+import com.webauthn.app.support.RegistrationClient;
+import com.webauthn.app.user.AppUser;
+import com.webauthn.app.user.RegistrationStatus;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+/**
+ * circuit breaker 在一批處理中途開啟時，其餘資料解除鎖定且不計入重試次數，下一批不再取出
+ * 使用獨立的 H2 資料庫，避免快取中其他 outbox 測試的 context 取走資料
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:outbox-circuit-breaker",
+        "keycloak.outbox.enabled=true",
+        "keycloak.outbox.poll-interval=1h",
+        "keycloak.outbox.batch-size=3",
+        "keycloak.outbox.workers=1",
+        "keycloak.outbox.max-attempts=1",
+        "keycloak.retry.max-attempts=1",
+        "keycloak.circuit-breaker.window-size=2",
+        "keycloak.circuit-breaker.minimum-calls=2",
+        "keycloak.circuit-breaker.wait-duration-in-open-state=1h"
+})
+class OutboxCircuitBreakerTest {
+    private static final FakeKeycloak keycloak = FakeKeycloak.start();
+
+    @DynamicPropertySource
+    static void keycloakProperties(DynamicPropertyRegistry registry) {
+        registry.add("keycloak.server-url", keycloak::url);
+    }
+
+    @AfterAll
+    static void stopKeycloak() {
+        keycloak.close();
+    }
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private KeycloakProvisioningWorker worker;
+    @Autowired
+    private KeycloakCircuitBreaker circuitBreaker;
+    @Autowired
+    private ReactiveKeycloakService keycloakService;
+    @Autowired
+    private KeycloakOutbox keycloakOutbox;
+    @Autowired
+    private RegistrationRepository registrationRepository;
+
+    @Test
+    void tasksRejectedByOpenCircuitAreReleasedWithoutUsingAttempts() throws Exception {
+        // 先取得 admin token，之後只有經過 circuit breaker 的 Admin API 呼叫失敗
+        keycloakService.getAdminToken().block();
+        keycloak.setAvailable(false);
+        RegistrationClient client = new RegistrationClient("http://localhost:" + port, "http://localhost:4200");
+        List<String> usernames = List.of("breaker-1", "breaker-2", "breaker-3");
+        for (String username : usernames) {
+            assertThat(client.registerAndFinish(username).get("registerSuccess").asBoolean()).isTrue();
+        }
+
+        worker.drain();
+
+        assertThat(circuitBreaker.getState()).isEqualTo(KeycloakCircuitBreaker.State.OPEN);
+        AppUser last = registrationRepository.getUserRepo().findByUsername("breaker-3");
+        OutboxStatus released = keycloakOutbox.find(last.getId()).orElseThrow();
+        assertThat(released.getAttempts()).isZero();
+        assertThat(last.getRegistrationStatus()).isEqualTo(RegistrationStatus.PROVISIONING);
+
+        // circuit 開啟期間下一輪 drain 不取出、不呼叫 Keycloak
+        int calls = keycloak.calls("POST /users");
+        assertThat(worker.drain()).isZero();
+        assertThat(keycloak.calls("POST /users")).isEqualTo(calls);
+        assertThat(keycloakOutbox.claim(10)).extracting(task -> task.getUsername()).contains("breaker-3");
+    }
+}
@@ -0,0 +1,140 @@
+package com.webauthn.app.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.webauthn.app.infrastructure.outbox.KeycloakOutbox;
+import com.webauthn.app.infrastructure.repository.RegistrationRepository;
+import com.webauthn.app.rs.RegistrationStatusResponse;
+import com.webauthn.app.support.FakeKeycloak;
+import com.webauthn.app.support.LatencyDistribution;
+import com.webauthn.app.support.RegistrationClient;
+import com.webauthn.app.user.AppUser;
+import com.webauthn.app.user.RegistrationStatus;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+/**
+ * keycloak.outbox.enabled：finishauth 不等待 Keycloak，由背景 worker 建立帳號
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "keycloak.outbox.enabled=true",
+        "keycloak.outbox.poll-interval=50ms",
+        "keycloak.outbox.initial-backoff=50ms",
+        "keycloak.outbox.max-backoff=200ms"
+})
+class OutboxProvisioningTest {
+    private static final FakeKeycloak keycloak = FakeKeycloak.start();
+
+    @DynamicPropertySource
+    static void keycloakProperties(DynamicPropertyRegistry registry) {
+        registry.add("keycloak.server-url", keycloak::url);
+    }
+
+    @AfterAll
+    static void stopKeycloak() {
+        keycloak.close();
+    }
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private AuthController authController;
+    @Autowired
+    private RegistrationRepository registrationRepository;
+    @Autowired
+    private KeycloakOutbox keycloakOutbox;
+
+    @AfterEach
+    void restoreKeycloak() {
+        keycloak.setAvailable(true);
+        keycloak.setLatency(LatencyDistribution.fixed(Duration.ZERO));
+    }
+
+    @Test
+    void workerCompletesRegistrationInBackground() throws Exception {
+        JsonNode result = client().registerAndFinish("outbox-user");
+
+        assertThat(result.get("registerSuccess").asBoolean()).isTrue();
+        RegistrationStatusResponse status = awaitStatus("outbox-user", s -> s.getRegistrationStatus() == RegistrationStatus.COMPLETED);
+        assertThat(status.getProvisioningAttempts()).isNull();
+        AppUser user = registrationRepository.getUserRepo().findByUsername("outbox-user");
+        assertThat(user.getKeycloakUserId()).isEqualTo(keycloak.userId("outbox-user"));
+        assertThat(keycloak.roleMappings(user.getKeycloakUserId())).hasSize(1);
+    }
+
+    @Test
+    void registrationSucceedsWhileKeycloakIsDownAndCompletesAfterRecovery() throws Exception {
+        keycloak.setAvailable(false);
+
+        JsonNode result = client().registerAndFinish("outbox-retry");
+
+        assertThat(result.get("registerSuccess").asBoolean()).isTrue();
+        RegistrationStatusResponse failing = awaitStatus("outbox-retry",
+                s -> s.getProvisioningAttempts() != null && s.getProvisioningAttempts() >= 2);
+        assertThat(failing.getRegistrationStatus()).isEqualTo(RegistrationStatus.PROVISIONING);
+        assertThat(failing.getLastError()).isNotBlank();
+        assertThat(failing.getNextAttemptAt()).isNotNull();
+
+        keycloak.setAvailable(true);
+        awaitStatus("outbox-retry", s -> s.getRegistrationStatus() == RegistrationStatus.COMPLETED);
+        assertThat(keycloak.hasUser("outbox-retry")).isTrue();
+    }
+
+    @Test
+    void userDeletedDuringProvisioningKeepsPreExistingKeycloakAccount() throws Exception {
+        String existing = keycloak.createUser("outbox-existing");
+        int posts = keycloak.calls("POST /users");
+        keycloak.setLatency(LatencyDistribution.fixed(Duration.ofMillis(300)));
+        JsonNode result = client().registerAndFinish("outbox-existing");
+        assertThat(result.get("registerSuccess").asBoolean()).isTrue();
+        AppUser user = registrationRepository.getUserRepo().findByUsername("outbox-existing");
+
+        // worker 收到 409 後查詢既有帳號期間刪除本地用戶
+        await(() -> keycloak.calls("POST /users") > posts);
+        registrationRepository.deleteUser(user);
+        await(() -> keycloakOutbox.find(user.getId()).isEmpty());
+        Thread.sleep(500);
+
+        assertThat(keycloak.userId("outbox-existing")).isEqualTo(existing);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Timed out");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private RegistrationClient client() {
+        return new RegistrationClient("http://localhost:" + port, "http://localhost:4200");
+    }
+
+    private RegistrationStatusResponse awaitStatus(String username, Predicate<RegistrationStatusResponse> condition) throws InterruptedException {
+        Long userId = registrationRepository.getUserRepo().findByUsername(username).getId();
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        RegistrationStatusResponse status;
+        do {
+            status = authController.registrationStatus(userId).getData();
+            if (condition.test(status)) {
+                return status;
+            }
+            Thread.sleep(20);
+        } while (System.nanoTime() < deadline);
+        throw new AssertionError("Timed out waiting for " + username + ", last status: " + status);
+    }
+}
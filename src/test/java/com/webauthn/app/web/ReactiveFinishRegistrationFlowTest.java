@@ -0,0 +1,94 @@
+package com.webauthn.app.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.webauthn.app.configuration.KeycloakProperties;
+import com.webauthn.app.infrastructure.repository.RegistrationRepository;
+import com.webauthn.app.support.FakeKeycloak;
+import com.webauthn.app.support.RegistrationClient;
+import com.webauthn.app.user.AppUser;
+import com.webauthn.app.user.RegistrationStatus;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+/**
+ * reactive profile：同一組 /api 端點改由 ReactiveAuthController 在 Netty 上提供，結果須與 MVC 版本一致
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("reactive")
+class ReactiveFinishRegistrationFlowTest {
+    private static final FakeKeycloak keycloak = FakeKeycloak.start();
+
+    @DynamicPropertySource
+    static void keycloakProperties(DynamicPropertyRegistry registry) {
+        registry.add("keycloak.server-url", keycloak::url);
+    }
+
+    @AfterAll
+    static void stopKeycloak() {
+        keycloak.close();
+    }
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private ApplicationContext context;
+    @Autowired
+    private KeycloakProperties keycloakProperties;
+    @Autowired
+    private RegistrationRepository registrationRepository;
+
+    private RegistrationClient client;
+
+    @BeforeEach
+    void setUp() {
+        client = new RegistrationClient("http://localhost:" + port, "http://localhost:4200");
+    }
+
+    @AfterEach
+    void restoreMode() {
+        keycloakProperties.setNonBlocking(true);
+    }
+
+    @Test
+    void onlyTheReactiveControllerIsRegistered() {
+        assertThat(context.getBeanNamesForType(ReactiveAuthController.class)).hasSize(1);
+        assertThat(context.getBeanNamesForType(AuthController.class)).isEmpty();
+    }
+
+    @Test
+    void nonBlockingRegistrationCreatesKeycloakUserWithDefaultRoles() {
+        keycloakProperties.setNonBlocking(true);
+
+        assertCompleted("reactive-non-blocking");
+    }
+
+    @Test
+    void blockingRegistrationCreatesKeycloakUserWithDefaultRoles() {
+        keycloakProperties.setNonBlocking(false);
+
+        assertCompleted("reactive-blocking");
+    }
+
+    private void assertCompleted(String username) {
+        JsonNode result = client.registerAndFinish(username);
+
+        assertThat(result.get("registerSuccess").asBoolean()).as(result.toString()).isTrue();
+        AppUser user = registrationRepository.getUserRepo().findByUsername(username);
+        assertThat(user.getRegistrationStatus()).isEqualTo(RegistrationStatus.COMPLETED);
+        assertThat(user.getKeycloakUserId()).isEqualTo(keycloak.userId(username));
+        assertThat(keycloak.roleMappings(user.getKeycloakUserId())).hasSize(1);
+        assertThat(registrationRepository.getCredentialIdsForUsername(username)).hasSize(1);
+    }
+}
@@ -0,0 +1,75 @@
+package com.webauthn.app.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.webauthn.app.support.FakeKeycloak;
+import com.webauthn.app.support.LatencyDistribution;
+import com.webauthn.app.support.RegistrationClient;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+/**
+ * reactive profile：blocking scheduler 排隊已滿時 finishauth 回應 503，而不是 200 + UNKNOWN
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "keycloak.non-blocking=false",
+        "authn.reactive.blocking-threads=1",
+        "authn.reactive.blocking-queue-size=1"
+})
+@ActiveProfiles("reactive")
+class ReactiveOverloadTest {
+    private static final FakeKeycloak keycloak = FakeKeycloak.start();
+
+    @DynamicPropertySource
+    static void keycloakProperties(DynamicPropertyRegistry registry) {
+        registry.add("keycloak.server-url", keycloak::url);
+    }
+
+    @AfterAll
+    static void stopKeycloak() {
+        keycloak.close();
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    void finishRegistrationRespondsServiceUnavailableWhenBlockingQueueIsFull() {
+        RegistrationClient client = new RegistrationClient("http://localhost:" + port, "http://localhost:4200");
+        List<String> usernames = List.of("overload-1", "overload-2", "overload-3", "overload-4");
+        List<JsonNode> registrations = new ArrayList<>();
+        for (String username : usernames) {
+            registrations.add(client.register(username).join());
+        }
+
+        // 一個在執行、一個在排隊，其餘被拒絕
+        keycloak.setLatency(LatencyDistribution.fixed(Duration.ofMillis(500)));
+        List<CompletableFuture<JsonNode>> finishes = new ArrayList<>();
+        for (int i = 0; i < usernames.size(); i++) {
+            finishes.add(client.finish(usernames.get(i), registrations.get(i)));
+        }
+
+        List<String> rejected = new ArrayList<>();
+        for (CompletableFuture<JsonNode> finish : finishes) {
+            try {
+                finish.join();
+            } catch (CompletionException e) {
+                rejected.add(e.getCause().getMessage());
+            }
+        }
+        assertThat(rejected).isNotEmpty().allMatch(message -> message.startsWith("/api/finishauth returned 503"));
+    }
+}